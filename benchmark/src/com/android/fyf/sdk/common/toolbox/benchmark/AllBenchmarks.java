@@ -0,0 +1,26 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.IOException;
+
+/**
+ * Runs every toolbox benchmark, use -Dbench.results to save the results and
+ * -Dbench.baseline to compare them with an earlier run
+ */
+public class AllBenchmarks {
+
+    public static void main(String[] args) throws IOException {
+        StringUtilsBenchmark.run();
+        MapUtilsBenchmark.run();
+        URLParserBenchmark.run();
+        ListUtilsBenchmark.run();
+        SerializeUtilsBenchmark.run();
+        SerializeCodecBenchmark.run();
+        FileUtilsBenchmark.run();
+        FileReadScalingBenchmark.run();
+        FileTransferBenchmark.run();
+        FileHasherBenchmark.run();
+        RecordStoreBenchmark.run();
+        BulkLoaderBenchmark.run();
+        BenchmarkRunner.finish();
+    }
+}
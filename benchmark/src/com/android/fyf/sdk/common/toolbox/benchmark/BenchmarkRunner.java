@@ -0,0 +1,299 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal JVM micro benchmark harness: warm up, then run timed iterations and
+ * report the mean time and the bytes allocated per operation.
+ * <p>
+ * Settings are read from system properties:
+ * <ul>
+ * <li>bench.warmup warm up time in millis, default 1000</li>
+ * <li>bench.iterations count of timed iterations, default 5</li>
+ * <li>bench.time time of one iteration in millis, default 1000</li>
+ * <li>bench.filter regular expression, only benchmarks whose name contains a
+ * match are run</li>
+ * <li>bench.results file the results are written to by {@link #finish()}</li>
+ * <li>bench.baseline results file of an earlier run, every result is compared
+ * to it</li>
+ * <li>bench.threshold change in percent reported as a regression or an
+ * improvement, default 10</li>
+ * </ul>
+ */
+public final class BenchmarkRunner {
+
+    private static final long WARMUP_NANOS = Long.getLong("bench.warmup", 1000) * 1000 * 1000;
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    private static final long ITERATION_NANOS = Long.getLong("bench.time", 1000) * 1000 * 1000;
+    private static final Pattern FILTER = System.getProperty("bench.filter") == null ? null : Pattern.compile(System
+            .getProperty("bench.filter"));
+    private static final double THRESHOLD = Double.parseDouble(System.getProperty("bench.threshold", "10"));
+    /** time after which a batch of operations checks the clock **/
+    private static final long BATCH_NANOS = 1000 * 1000L;
+
+    private static final AllocationCounter ALLOCATION = new AllocationCounter();
+    private static final List<Result> RESULTS = new ArrayList<Result>();
+    private static Map<String, Result> sBaseline;
+
+    private static volatile Object sink;
+    /** never equal to a result, read on every operation so results are used **/
+    private static volatile Object sNotResult1 = new Object();
+    private static volatile Object sNotResult2 = new Object();
+
+    /**
+     * One benchmarked operation, the result is consumed so the JIT can not drop
+     * the work
+     */
+    public interface Operation {
+        Object run();
+    }
+
+    /**
+     * Measurement of one benchmark
+     */
+    public static final class Result {
+        public final String name;
+        public final double nanosPerOp;
+        public final double errorNanos;
+        /** -1 if the JVM can not count allocated bytes **/
+        public final double bytesPerOp;
+
+        Result(String name, double nanosPerOp, double errorNanos, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.errorNanos = errorNanos;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * @param name
+     * @param operation
+     * @return mean nanoseconds per operation, -1 if skipped by bench.filter
+     */
+    public static double run(String name, Operation operation) {
+        if (FILTER != null && !FILTER.matcher(name).find()) {
+            return -1;
+        }
+        loop(operation, WARMUP_NANOS, null);
+        double[] nanos = new double[ITERATIONS];
+        long[] allocation = new long[2];
+        long totalOps = 0;
+        long totalBytes = 0;
+        double total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            nanos[i] = loop(operation, ITERATION_NANOS, allocation);
+            total += nanos[i];
+            totalOps += allocation[0];
+            totalBytes += allocation[1];
+        }
+        double mean = total / ITERATIONS;
+        double variance = 0;
+        for (double n : nanos) {
+            variance += (n - mean) * (n - mean);
+        }
+        double error = ITERATIONS > 1 ? Math.sqrt(variance / (ITERATIONS - 1)) : 0;
+        double bytesPerOp = ALLOCATION.isSupported() ? (double) totalBytes / totalOps : -1;
+        Result result = new Result(name, mean, error, bytesPerOp);
+        RESULTS.add(result);
+        System.out.println(format(result) + compare(result));
+        return mean;
+    }
+
+    /**
+     * write results of benchmarks run so far to bench.results if set
+     */
+    public static void finish() {
+        String path = System.getProperty("bench.results");
+        if (path != null) {
+            try {
+                writeResults(new File(path), RESULTS);
+                System.out.println("results written to " + path);
+            } catch (IOException e) {
+                System.err.println("write results failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * @return results of benchmarks run so far
+     */
+    public static List<Result> getResults() {
+        return new ArrayList<Result>(RESULTS);
+    }
+
+    /**
+     * results file: lines of name, ns/op, error, bytes/op separated by tabs,
+     * lines starting with # are comments
+     */
+    public static void writeResults(File file, List<Result> results) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("# " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + ", java "
+                    + System.getProperty("java.version") + ", " + System.getProperty("os.name") + " "
+                    + System.getProperty("os.arch") + ", " + Runtime.getRuntime().availableProcessors() + " cpus\n");
+            out.write("# name\tns/op\terror\tbytes/op\n");
+            for (Result result : results) {
+                out.write(result.name + "\t"
+                        + String.format(Locale.US, "%.1f\t%.1f\t%.0f", result.nanosPerOp, result.errorNanos,
+                                result.bytesPerOp) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static Map<String, Result> readResults(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().length() == 0) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 4) {
+                    continue;
+                }
+                results.put(fields[0], new Result(fields[0], Double.parseDouble(fields[1]), Double
+                        .parseDouble(fields[2]), Double.parseDouble(fields[3])));
+            }
+        } finally {
+            in.close();
+        }
+        return results;
+    }
+
+    private static String format(Result result) {
+        String allocation = result.bytesPerOp < 0 ? "" : String.format("  %12.0f B/op", result.bytesPerOp);
+        return String.format("%-56s %14s ns/op +- %-10s", result.name, String.format("%.1f", result.nanosPerOp),
+                String.format("%.1f", result.errorNanos))
+                + allocation;
+    }
+
+    private static String compare(Result result) {
+        Map<String, Result> baseline = baseline();
+        Result base = baseline == null ? null : baseline.get(result.name);
+        if (base == null || base.nanosPerOp <= 0) {
+            return "";
+        }
+        double change = (result.nanosPerOp - base.nanosPerOp) * 100 / base.nanosPerOp;
+        String verdict = change > THRESHOLD ? "  REGRESSION" : change < -THRESHOLD ? "  IMPROVED" : "";
+        return String.format("  %+.1f%% vs baseline", change) + verdict;
+    }
+
+    private static synchronized Map<String, Result> baseline() {
+        String path = System.getProperty("bench.baseline");
+        if (sBaseline == null && path != null) {
+            try {
+                sBaseline = readResults(new File(path));
+            } catch (IOException e) {
+                System.err.println("read baseline failed: " + e);
+                sBaseline = new LinkedHashMap<String, Result>();
+            }
+        }
+        return sBaseline;
+    }
+
+    /**
+     * run operation in batches until duration passes, a batch grows until it
+     * takes {@link #BATCH_NANOS}, so slow operations are not run more often
+     * than needed and fast ones do not spend their time reading the clock
+     *
+     * @param allocation if not null, receives count of operations and bytes
+     *            allocated by them
+     * @return nanos per operation
+     */
+    private static double loop(Operation operation, long durationNanos, long[] allocation) {
+        long bytesBefore = ALLOCATION.get();
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        long ops = 0;
+        int batch = 1;
+        long now = start;
+        Object last = null;
+        do {
+            long batchStart = now;
+            for (int i = 0; i < batch; i++) {
+                last = operation.run();
+                if (last == sNotResult1 && last == sNotResult2) {
+                    sink = last;
+                }
+            }
+            ops += batch;
+            now = System.nanoTime();
+            if (now - batchStart < BATCH_NANOS && batch < (1 << 20)) {
+                batch <<= 1;
+            }
+        } while (now < deadline);
+        long bytesAfter = ALLOCATION.get();
+        sink = last;
+        if (allocation != null) {
+            allocation[0] = ops;
+            allocation[1] = bytesAfter - bytesBefore;
+        }
+        return (double) (now - start) / ops;
+    }
+
+    /**
+     * Bytes allocated by the current thread, read through
+     * com.sun.management.ThreadMXBean when the JVM has it
+     */
+    private static final class AllocationCounter {
+        private final Object bean;
+        private final Method allocatedBytes;
+
+        AllocationCounter() {
+            Object b = null;
+            Method m = null;
+            try {
+                b = ManagementFactory.getThreadMXBean();
+                Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+                if (type.isInstance(b)) {
+                    m = type.getMethod("getThreadAllocatedBytes", long.class);
+                    type.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(b, true);
+                }
+            } catch (Exception e) {
+                m = null;
+            }
+            bean = b;
+            allocatedBytes = m;
+        }
+
+        boolean isSupported() {
+            return allocatedBytes != null;
+        }
+
+        long get() {
+            if (allocatedBytes == null) {
+                return 0;
+            }
+            try {
+                return (Long) allocatedBytes.invoke(bean, Thread.currentThread().getId());
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.android.fyf.sdk.common.toolbox.BulkLoader;
+import com.android.fyf.sdk.common.toolbox.SerializeUtils;
+
+/**
+ * Restoring 300 small cache files of 10 models: one by one with
+ * {@link SerializeUtils#deserialization(String)}, and with
+ * {@link BulkLoader} on its default executor
+ */
+public class BulkLoaderBenchmark {
+
+    private static final int FILES = 300;
+    private static final int MODELS = 10;
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        final List<String> paths = new ArrayList<String>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            File file = File.createTempFile("bench-bulk-", ".obj");
+            file.deleteOnExit();
+            SerializeUtils.serialization(file.getAbsolutePath(), Inputs.models(MODELS));
+            paths.add(file.getAbsolutePath());
+        }
+        String suffix = " (" + FILES + " files)";
+        BenchmarkRunner.run("deserialization one by one" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                List<Object> values = new ArrayList<Object>(FILES);
+                for (String path : paths) {
+                    values.add(SerializeUtils.deserialization(path));
+                }
+                return values;
+            }
+        });
+        BenchmarkRunner.run("BulkLoader.load" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                try {
+                    return BulkLoader.getDefault().load(paths);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        for (String path : paths) {
+            new File(path).delete();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.android.fyf.sdk.common.toolbox.FileHasher;
+import com.android.fyf.sdk.common.toolbox.FileWalker;
+
+/**
+ * {@link FileHasher#hash(File, FileHasher.Algorithm)} for each algorithm, the
+ * parallel CRC32 and, for comparison, MD5 through the stream loop callers
+ * used to write, on files of 1KB to 100MB
+ */
+public class FileHasherBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        for (int size : Inputs.FILE_SIZES) {
+            final File file = Inputs.textFile(size);
+            String suffix = " (" + Inputs.sizeName(size) + ")";
+            for (final FileHasher.Algorithm algorithm : FileHasher.Algorithm.values()) {
+                if (!FileHasher.isSupported(algorithm)) {
+                    continue;
+                }
+                BenchmarkRunner.run("FileHasher.hash " + algorithm + suffix, new BenchmarkRunner.Operation() {
+
+                    @Override
+                    public Object run() {
+                        try {
+                            return FileHasher.hash(file, algorithm);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            }
+            BenchmarkRunner.run("FileHasher.hash CRC32 parallel" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    try {
+                        return FileHasher.hash(file, FileHasher.Algorithm.CRC32, FileWalker.getDefaultExecutor());
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            BenchmarkRunner.run("stream MD5" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    try {
+                        return streamMd5(file);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            file.delete();
+        }
+    }
+
+    private static byte[] streamMd5(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,60 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.android.fyf.sdk.common.toolbox.FileUtils;
+
+/**
+ * {@link FileUtils#readFile(String, String)} over growing files, reports the
+ * time per byte of each size, which stays flat when reading is linear.
+ * <p>
+ * 1MB to 16MB by default, up to 512MB with -Dbench.large=true, which needs a
+ * heap of about 4GB:
+ *
+ * <pre>
+ * java -Xmx4g -Dbench.large=true -cp out com.android.fyf.sdk.common.toolbox.benchmark.FileReadScalingBenchmark
+ * </pre>
+ */
+public class FileReadScalingBenchmark {
+
+    private static final int[] SIZES = Inputs.large() ? new int[] { Inputs.MB, 16 * Inputs.MB, 64 * Inputs.MB,
+            256 * Inputs.MB, 512 * Inputs.MB } : new int[] { Inputs.MB, 4 * Inputs.MB, 16 * Inputs.MB };
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        double first = -1;
+        double last = -1;
+        for (int size : SIZES) {
+            File file = Inputs.textFile(size);
+            final String path = file.getAbsolutePath();
+            long length = file.length();
+            double nanos = BenchmarkRunner.run("FileUtils.readFile scaling (" + Inputs.sizeName(size) + ")",
+                    new BenchmarkRunner.Operation() {
+
+                        @Override
+                        public Object run() {
+                            return FileUtils.readFile(path, "UTF-8");
+                        }
+                    });
+            file.delete();
+            if (nanos < 0) {
+                continue;
+            }
+            double nanosPerByte = nanos / length;
+            System.out.println(String.format("    %.3f ns/byte, %.1f MB/s", nanosPerByte, 1e9 / nanosPerByte
+                    / Inputs.MB));
+            if (first < 0) {
+                first = nanosPerByte;
+            }
+            last = nanosPerByte;
+        }
+        if (first > 0) {
+            System.out.println(String.format("ns/byte of the largest file is %.2fx of the smallest", last / first));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import com.android.fyf.sdk.common.toolbox.FileUtils;
+
+/**
+ * {@link FileUtils#writeFile(String, InputStream)} from a memory stream, as a
+ * download is, and from a file, and {@link FileUtils#copyFile(String, String)}
+ * on 1KB to 100MB of data
+ */
+public class FileTransferBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        File target = File.createTempFile("bench-transfer-", ".bin");
+        target.deleteOnExit();
+        final String targetPath = target.getAbsolutePath();
+        for (int size : Inputs.FILE_SIZES) {
+            final byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            File source = Inputs.textFile(size);
+            final String sourcePath = source.getAbsolutePath();
+            String suffix = " (" + Inputs.sizeName(size) + ")";
+            BenchmarkRunner.run("FileUtils.writeFile stream" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return FileUtils.writeFile(targetPath, new ByteArrayInputStream(data));
+                }
+            });
+            BenchmarkRunner.run("FileUtils.writeFile file stream" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    try {
+                        return FileUtils.writeFile(targetPath, new FileInputStream(sourcePath));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            BenchmarkRunner.run("FileUtils.copyFile" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return FileUtils.copyFile(sourcePath, targetPath);
+                }
+            });
+            source.delete();
+        }
+        target.delete();
+    }
+}
@@ -0,0 +1,109 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.android.fyf.sdk.common.toolbox.FileMetadataCache;
+import com.android.fyf.sdk.common.toolbox.FileUtils;
+import com.android.fyf.sdk.common.toolbox.LineReader;
+
+/**
+ * {@link FileUtils#readFile(String, String)}, its line separator preserving
+ * variant, {@link FileUtils#readFileToList(String, String)} and
+ * {@link FileUtils#forEachLine(String, String, LineReader.Visitor)} on text
+ * files of 1KB to 100MB. Files are read from the page cache after the first
+ * run, so this measures decoding and copying rather than the storage device.
+ * <p>
+ * Also the metadata helpers {@link FileUtils#isFileExist(String)} and
+ * {@link FileUtils#getFileSize(File)}, on an existing and a missing file, with
+ * and without a {@link FileMetadataCache}.
+ */
+public class FileUtilsBenchmark {
+
+    private static final LineReader.Visitor COUNT_CHARS = new LineReader.Visitor() {
+        private int chars;
+
+        @Override
+        public boolean visitLine(CharSequence line, int lineNumber) {
+            chars += line.length();
+            return true;
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        for (int size : Inputs.FILE_SIZES) {
+            File file = Inputs.textFile(size);
+            final String path = file.getAbsolutePath();
+            String suffix = " (" + Inputs.sizeName(size) + ")";
+            BenchmarkRunner.run("FileUtils.readFile" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return FileUtils.readFile(path, "UTF-8");
+                }
+            });
+            BenchmarkRunner.run("FileUtils.readFile keep separators" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return FileUtils.readFile(path, "UTF-8", true);
+                }
+            });
+            BenchmarkRunner.run("FileUtils.readFileToList" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return FileUtils.readFileToList(path, "UTF-8");
+                }
+            });
+            BenchmarkRunner.run("FileUtils.forEachLine" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return FileUtils.forEachLine(path, "UTF-8", COUNT_CHARS);
+                }
+            });
+            file.delete();
+        }
+        runMetadata("");
+        FileUtils.setMetadataCache(new FileMetadataCache(1000, 64));
+        try {
+            runMetadata(" cached");
+        } finally {
+            FileUtils.setMetadataCache(null);
+        }
+    }
+
+    private static void runMetadata(String suffix) throws IOException {
+        final File file = Inputs.textFile(Inputs.FILE_SIZES[0]);
+        final String path = file.getAbsolutePath();
+        final String missing = path + ".missing";
+        BenchmarkRunner.run("FileUtils.isFileExist" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return FileUtils.isFileExist(path);
+            }
+        });
+        BenchmarkRunner.run("FileUtils.isFileExist missing" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return FileUtils.isFileExist(missing);
+            }
+        });
+        BenchmarkRunner.run("FileUtils.getFileSize(File)" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return FileUtils.getFileSize(file);
+            }
+        });
+        file.delete();
+    }
+}
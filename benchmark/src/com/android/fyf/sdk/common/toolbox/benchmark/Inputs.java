@@ -0,0 +1,246 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible benchmark inputs, every generator uses a fixed seed so two runs
+ * measure the same data
+ */
+public final class Inputs {
+
+    public static final int KB = 1024;
+    public static final int MB = 1024 * 1024;
+
+    /** lengths of short and long strings **/
+    public static final int[] STRING_LENGTHS = { 16, 256, 16 * KB };
+    /** sizes of lists, 100k only with -Dbench.large=true **/
+    public static final int[] LIST_SIZES = large() ? new int[] { 10, 1000, 10000, 100000 } : new int[] { 10, 1000,
+            10000 };
+    /** sizes of files, 16MB and 100MB only with -Dbench.large=true **/
+    public static final int[] FILE_SIZES = large() ? new int[] { KB, 64 * KB, MB, 16 * MB, 100 * MB } : new int[] {
+            KB, 64 * KB, MB };
+
+    private static final long SEED = 20131112L;
+    private static final String CJK = "日志文件序列化工具字符串解析网络存储图片资源包管理时间";
+
+    private Inputs() {
+    }
+
+    /**
+     * @return whether -Dbench.large=true asks for the large inputs, which take
+     *         minutes with quadratic implementations
+     */
+    public static boolean large() {
+        return Boolean.getBoolean("bench.large");
+    }
+
+    public static Random random() {
+        return new Random(SEED);
+    }
+
+    /**
+     * @param length
+     * @return letters and digits
+     */
+    public static String ascii(int length) {
+        Random random = random();
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(62);
+            sb.append((char) (r < 10 ? '0' + r : r < 36 ? 'a' + r - 10 : 'A' + r - 36));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param length
+     * @return ascii words, spaces, punctuation and Chinese characters, as in
+     *         user visible text
+     */
+    public static String mixed(int length) {
+        Random random = random();
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            int r = random.nextInt(10);
+            if (r < 5) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            } else if (r < 6) {
+                sb.append(' ');
+            } else if (r < 7) {
+                sb.append("&amp;,.!?".charAt(random.nextInt(9)));
+            } else {
+                sb.append(CJK.charAt(random.nextInt(CJK.length())));
+            }
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    /**
+     * @param length
+     * @return full width letters, digits and spaces
+     */
+    public static String fullWidth(int length) {
+        Random random = random();
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextInt(8) == 0 ? (char) 12288 : (char) (65281 + random.nextInt(94)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param size
+     * @param distinct count of distinct values, values repeat in random order
+     * @return
+     */
+    public static List<String> stringList(int size, int distinct) {
+        Random random = random();
+        List<String> list = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            list.add("item-" + random.nextInt(Math.max(1, distinct)));
+        }
+        return list;
+    }
+
+    /**
+     * @param pairs
+     * @return "key0:value0, key1:value1" with spaces around pairs
+     */
+    public static String keyValuePairs(int pairs) {
+        Random random = random();
+        StringBuilder sb = new StringBuilder(pairs * 24);
+        for (int i = 0; i < pairs; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(" key").append(i).append(':').append(ascii(4 + random.nextInt(12))).append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param params
+     * @return http url with params query parameters
+     */
+    public static String url(int params) {
+        Random random = random();
+        StringBuilder sb = new StringBuilder("http://api.tv.sohu.com/v4/video/info/1234567.json");
+        for (int i = 0; i < params; i++) {
+            sb.append(i == 0 ? '?' : '&').append("param").append(i).append('=').append(random.nextInt(1000000));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param entries
+     * @return serializable map of string lists, similar to a cached response
+     */
+    public static HashMap<String, ArrayList<String>> objectGraph(int entries) {
+        Random random = random();
+        HashMap<String, ArrayList<String>> map = new HashMap<String, ArrayList<String>>();
+        for (int i = 0; i < entries; i++) {
+            ArrayList<String> values = new ArrayList<String>();
+            for (int j = 0; j < 4; j++) {
+                values.add(mixed(8 + random.nextInt(24)));
+            }
+            map.put("entry" + i, values);
+        }
+        return map;
+    }
+
+    /**
+     * @param count
+     * @return list of models like a cached feed
+     */
+    public static ArrayList<Model> models(int count) {
+        Random random = random();
+        ArrayList<Model> models = new ArrayList<Model>(count);
+        for (int i = 0; i < count; i++) {
+            Model model = new Model();
+            model.id = 1000000L + random.nextInt(1000000);
+            model.title = mixed(16 + random.nextInt(32));
+            model.url = "http://example.com/item/" + model.id + "?from=feed";
+            model.count = random.nextInt(10000);
+            model.read = random.nextBoolean();
+            model.score = random.nextDouble();
+            model.updated = 1380000000000L + random.nextInt(1000000000);
+            model.tags = new ArrayList<String>();
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                model.tags.add(ascii(4 + random.nextInt(8)));
+            }
+            models.add(model);
+        }
+        return models;
+    }
+
+    /**
+     * Item of a cached feed
+     */
+    public static class Model implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long id;
+        String title;
+        String url;
+        int count;
+        boolean read;
+        double score;
+        long updated;
+        ArrayList<String> tags;
+    }
+
+    /**
+     * create a text file of lines about 80 characters long, deleted on exit
+     *
+     * @param size bytes
+     * @return
+     * @throws IOException
+     */
+    public static File textFile(long size) throws IOException {
+        File file = File.createTempFile("bench-" + size + "-", ".txt");
+        file.deleteOnExit();
+        Random random = random();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 64 * KB);
+        try {
+            String[] lines = new String[64];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = mixed(40 + random.nextInt(60)) + "\n";
+            }
+            long written = 0;
+            int i = 0;
+            while (written < size) {
+                String line = lines[i++ & 63];
+                out.write(line);
+                written += line.getBytes("UTF-8").length;
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * @param bytes
+     * @return 1KB, 64KB, 1MB and so on
+     */
+    public static String sizeName(long bytes) {
+        if (bytes >= MB) {
+            return bytes / MB + "MB";
+        }
+        if (bytes >= KB) {
+            return bytes / KB + "KB";
+        }
+        return bytes + "B";
+    }
+}
@@ -0,0 +1,52 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.android.fyf.sdk.common.toolbox.ListUtils;
+
+/**
+ * {@link ListUtils#distinctList(List)} on lists of 10 to 100k elements with
+ * few and many duplicates. The list is modified in place, so every operation
+ * works on a fresh copy and includes the cost of copying it.
+ */
+public class ListUtilsBenchmark {
+
+    public static void main(String[] args) {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() {
+        for (int size : Inputs.LIST_SIZES) {
+            distinct(size, "unique", size);
+            distinct(size, "10% distinct", Math.max(1, size / 10));
+            final List<String> list = Inputs.stringList(size, size);
+            BenchmarkRunner.run("ListUtils.join (" + size + " elements)", new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return ListUtils.join(list);
+                }
+            });
+        }
+    }
+
+    private static void distinct(int size, String kind, int distinct) {
+        final List<String> source = Inputs.stringList(size, distinct);
+        if (distinct == size) {
+            // stringList draws at random, make every element unique
+            for (int i = 0; i < size; i++) {
+                source.set(i, "item-" + i);
+            }
+        }
+        BenchmarkRunner.run("ListUtils.distinctList " + kind + " (" + size + " elements)",
+                new BenchmarkRunner.Operation() {
+
+                    @Override
+                    public Object run() {
+                        return ListUtils.distinctList(new ArrayList<String>(source));
+                    }
+                });
+    }
+}
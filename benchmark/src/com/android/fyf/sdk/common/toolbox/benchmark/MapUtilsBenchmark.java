@@ -0,0 +1,29 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import com.android.fyf.sdk.common.toolbox.MapUtils;
+
+/**
+ * {@link MapUtils#parseKeyAndValueToMap(String)} with few and many pairs
+ */
+public class MapUtilsBenchmark {
+
+    private static final int[] PAIRS = { 4, 64, 1024 };
+
+    public static void main(String[] args) {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() {
+        for (int pairs : PAIRS) {
+            final String source = Inputs.keyValuePairs(pairs);
+            BenchmarkRunner.run("MapUtils.parseKeyAndValueToMap (" + pairs + " pairs)", new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return MapUtils.parseKeyAndValueToMap(source);
+                }
+            });
+        }
+    }
+}
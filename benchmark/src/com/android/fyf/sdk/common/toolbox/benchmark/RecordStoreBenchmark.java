@@ -0,0 +1,92 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.android.fyf.sdk.common.toolbox.RecordStore;
+import com.android.fyf.sdk.common.toolbox.SerializeUtils;
+
+/**
+ * Reading one model of a persisted list of 100 to 10000: the whole list with
+ * {@link SerializeUtils#deserialization(String)}, against opening a
+ * {@link RecordStore} of the same models and reading one record, and reading
+ * a record of a store already open
+ */
+public class RecordStoreBenchmark {
+
+    private static final int[] COUNTS = { 100, 10000 };
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        for (final int count : COUNTS) {
+            ArrayList<Inputs.Model> models = Inputs.models(count);
+            File file = File.createTempFile("bench-list-", ".obj");
+            file.deleteOnExit();
+            final String path = file.getAbsolutePath();
+            SerializeUtils.serialization(path, models);
+            final File storeFile = File.createTempFile("bench-store-", ".rs");
+            storeFile.delete();
+            new File(storeFile.getPath() + RecordStore.INDEX_SUFFIX).deleteOnExit();
+            storeFile.deleteOnExit();
+            RecordStore store = new RecordStore(storeFile);
+            for (int i = 0; i < count; i++) {
+                store.put(String.valueOf(i), models.get(i));
+            }
+            store.close();
+            String suffix = " (" + count + " models)";
+            BenchmarkRunner.run("deserialization list, get one" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return ((ArrayList<?>) SerializeUtils.deserialization(path)).get(count / 2);
+                }
+            });
+            BenchmarkRunner.run("RecordStore open, get one" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    RecordStore opened = null;
+                    try {
+                        opened = new RecordStore(storeFile);
+                        return opened.get(String.valueOf(count / 2));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        close(opened);
+                    }
+                }
+            });
+            final RecordStore open = new RecordStore(storeFile);
+            BenchmarkRunner.run("RecordStore.get" + suffix, new BenchmarkRunner.Operation() {
+                private int next;
+
+                @Override
+                public Object run() {
+                    try {
+                        next = (next + 7919) % count;
+                        return open.getAt(next);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            open.close();
+            file.delete();
+        }
+    }
+
+    private static void close(RecordStore store) {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.android.fyf.sdk.common.toolbox.BinaryCodec;
+import com.android.fyf.sdk.common.toolbox.CompressedCodec;
+import com.android.fyf.sdk.common.toolbox.SerializeUtils;
+
+/**
+ * {@link BinaryCodec} and {@link CompressedCodec} against Java serialization
+ * on lists of 1 to 10000 models: a round trip through bytes, and
+ * {@link SerializeUtils} to and from a file with each codec set. Payload sizes
+ * are printed too.
+ */
+public class SerializeCodecBenchmark {
+
+    private static final int[] COUNTS = { 1, 100, 10000 };
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        BinaryCodec binary = new BinaryCodec().register(1, Inputs.Model.class);
+        SerializeUtils.Codec[] codecs = { SerializeUtils.JAVA_CODEC, binary, CompressedCodec.deflate(null, 1),
+                CompressedCodec.deflate(null, CompressedCodec.DEFAULT_LEVEL), CompressedCodec.lz(null),
+                CompressedCodec.lz(binary) };
+        String[] names = { "java", "binary", "java+deflate1", "java+deflate6", "java+lz", "binary+lz" };
+        try {
+            for (int count : COUNTS) {
+                final ArrayList<Inputs.Model> models = Inputs.models(count);
+                final File file = File.createTempFile("bench-codec-", ".obj");
+                file.deleteOnExit();
+                final String path = file.getAbsolutePath();
+                String suffix = " (" + count + " models)";
+                for (int i = 0; i < codecs.length; i++) {
+                    final SerializeUtils.Codec codec = codecs[i];
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    codec.encode(models, bytes);
+                    System.out.println("payload " + names[i] + suffix + ": " + bytes.size() + " bytes");
+                    BenchmarkRunner.run("codec round trip " + names[i] + suffix, new BenchmarkRunner.Operation() {
+
+                        @Override
+                        public Object run() {
+                            try {
+                                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                                codec.encode(models, out);
+                                return codec.decode(new ByteArrayInputStream(out.toByteArray()));
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    });
+                    SerializeUtils.setCodec(codec);
+                    BenchmarkRunner.run("SerializeUtils.serialization " + names[i] + suffix,
+                            new BenchmarkRunner.Operation() {
+
+                                @Override
+                                public Object run() {
+                                    SerializeUtils.serialization(path, models);
+                                    return path;
+                                }
+                            });
+                    BenchmarkRunner.run("SerializeUtils.deserialization " + names[i] + suffix,
+                            new BenchmarkRunner.Operation() {
+
+                                @Override
+                                public Object run() {
+                                    return SerializeUtils.deserialization(path);
+                                }
+                            });
+                }
+                file.delete();
+            }
+        } finally {
+            SerializeUtils.setCodec(null);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+import com.android.fyf.sdk.common.toolbox.SerializeUtils;
+
+/**
+ * {@link SerializeUtils} to and from Base64 strings and files, with small and
+ * large object graphs
+ */
+public class SerializeUtilsBenchmark {
+
+    private static final int[] ENTRIES = { 1, 100, 10000 };
+
+    public static void main(String[] args) throws IOException {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() throws IOException {
+        for (int entries : ENTRIES) {
+            final Serializable object = Inputs.objectGraph(entries);
+            final String data = SerializeUtils.getSerializableString(object);
+            final File file = File.createTempFile("bench-serialize-", ".obj");
+            file.deleteOnExit();
+            final String path = file.getAbsolutePath();
+            SerializeUtils.serialization(path, object);
+            String suffix = " (" + entries + " entries)";
+            BenchmarkRunner.run("SerializeUtils.getSerializableString" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return SerializeUtils.getSerializableString(object);
+                }
+            });
+            BenchmarkRunner.run("SerializeUtils.getSerializableObject" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return SerializeUtils.getSerializableObject(data);
+                }
+            });
+            BenchmarkRunner.run("SerializeUtils.serialization" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    SerializeUtils.serialization(path, object);
+                    return path;
+                }
+            });
+            BenchmarkRunner.run("SerializeUtils.deserialization" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return SerializeUtils.deserialization(path);
+                }
+            });
+        }
+    }
+}
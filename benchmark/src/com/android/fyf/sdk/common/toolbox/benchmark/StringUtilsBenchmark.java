@@ -0,0 +1,94 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import com.android.fyf.sdk.common.toolbox.StringUtils;
+
+/**
+ * {@link StringUtils} on short and long ascii and mixed Chinese text
+ */
+public class StringUtilsBenchmark {
+
+    public static void main(String[] args) {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() {
+        for (int length : Inputs.STRING_LENGTHS) {
+            final String ascii = Inputs.ascii(length);
+            final String mixed = Inputs.mixed(length);
+            final String fullWidth = Inputs.fullWidth(length);
+            final String html = "<a href=\"http://tv.sohu.com\">" + mixed + "</a>";
+            String suffix = " (" + length + " chars)";
+            BenchmarkRunner.run("StringUtils.isBlank" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.isBlank(ascii);
+                }
+            });
+            BenchmarkRunner.run("StringUtils.utf8Encode ascii" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.utf8Encode(ascii);
+                }
+            });
+            BenchmarkRunner.run("StringUtils.utf8Encode mixed" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.utf8Encode(mixed);
+                }
+            });
+            BenchmarkRunner.run("StringUtils.fullWidthToHalfWidth" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.fullWidthToHalfWidth(fullWidth);
+                }
+            });
+            BenchmarkRunner.run("StringUtils.halfWidthToFullWidth" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.halfWidthToFullWidth(ascii);
+                }
+            });
+            BenchmarkRunner.run("StringUtils.htmlEscapeCharsToString" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.htmlEscapeCharsToString(mixed);
+                }
+            });
+            BenchmarkRunner.run("StringUtils.getHrefInnerHtml" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.getHrefInnerHtml(html);
+                }
+            });
+            BenchmarkRunner.run("StringUtils.replaceBlank" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return StringUtils.replaceBlank(mixed);
+                }
+            });
+        }
+        BenchmarkRunner.run("StringUtils.compareVersion", new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return StringUtils.compareVersion("5.2.1.10", "5.2.10");
+            }
+        });
+        BenchmarkRunner.run("StringUtils.checkEmailUserName", new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return StringUtils.checkEmailUserName("someone.name@sohu-inc.com");
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import com.android.fyf.sdk.common.toolbox.CallSite;
+import com.android.fyf.sdk.common.toolbox.LogUtils;
+
+/**
+ * {@link LogUtils#getTraceInfo()} before and after {@link CallSite}, called
+ * from a shallow stack and from a stack as deep as a typical Android UI
+ * callback.
+ */
+public class TraceInfoBenchmark {
+
+    private static final int DEEP_STACK = 60;
+
+    public static void main(String[] args) {
+        LogUtils.setDebugMode(true);
+        System.out.println("StackWalker used: " + CallSite.isStackWalkerUsed());
+        runAtDepth(0);
+        runAtDepth(DEEP_STACK);
+        BenchmarkRunner.finish();
+    }
+
+    private static void runAtDepth(final int depth) {
+        if (depth > 0) {
+            recurse(depth, depth);
+            return;
+        }
+        measure(0);
+    }
+
+    private static void recurse(int remaining, int depth) {
+        if (remaining == 0) {
+            measure(depth);
+            return;
+        }
+        recurse(remaining - 1, depth);
+    }
+
+    private static void measure(int depth) {
+        String suffix = " (stack +" + depth + ")";
+        BenchmarkRunner.run("legacy Throwable getTraceInfo" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return legacyGetTraceInfo();
+            }
+        });
+        CallSite.setSampleRate(1);
+        BenchmarkRunner.run("LogUtils.getTraceInfo" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return LogUtils.getTraceInfo();
+            }
+        });
+        CallSite.setSampleRate(16);
+        BenchmarkRunner.run("LogUtils.getTraceInfo sampled 1/16" + suffix, new BenchmarkRunner.Operation() {
+
+            @Override
+            public Object run() {
+                return LogUtils.getTraceInfo();
+            }
+        });
+        CallSite.setSampleRate(1);
+    }
+
+    /**
+     * LogUtils.getTraceInfo() as it was before CallSite
+     */
+    private static String legacyGetTraceInfo() {
+        StringBuffer sb = new StringBuffer();
+        StackTraceElement[] stacks = new Throwable().getStackTrace();
+        sb.append("[file:").append(stacks[1].getFileName()).append(",line:").append(stacks[1].getLineNumber())
+                .append(",method:").append(stacks[1].getMethodName() + "];");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.android.fyf.sdk.common.toolbox.benchmark;
+
+import com.android.fyf.sdk.common.toolbox.URLParser;
+
+/**
+ * {@link URLParser} parsing a url and building it again with an added
+ * parameter
+ */
+public class URLParserBenchmark {
+
+    private static final int[] PARAMS = { 0, 4, 32 };
+
+    public static void main(String[] args) {
+        run();
+        BenchmarkRunner.finish();
+    }
+
+    public static void run() {
+        for (int params : PARAMS) {
+            final String url = Inputs.url(params);
+            String suffix = " (" + params + " params)";
+            BenchmarkRunner.run("URLParser.<init>" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    return new URLParser(url);
+                }
+            });
+            BenchmarkRunner.run("URLParser.addParam+getUrl" + suffix, new BenchmarkRunner.Operation() {
+
+                @Override
+                public Object run() {
+                    URLParser parser = new URLParser(url);
+                    parser.addParam("uid", 123456789L);
+                    return parser.getUrl();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for android.content.Context, only what the toolbox calls
+ */
+public abstract class Context {
+
+    public abstract File getFilesDir();
+
+    public abstract File getExternalFilesDir(String type);
+
+    public abstract Context getApplicationContext();
+}
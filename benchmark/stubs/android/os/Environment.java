@@ -0,0 +1,19 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for android.os.Environment, external storage is java.io.tmpdir
+ */
+public class Environment {
+
+    public static final String MEDIA_MOUNTED = "mounted";
+
+    public static File getExternalStorageDirectory() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public static String getExternalStorageState() {
+        return MEDIA_MOUNTED;
+    }
+}
@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * JVM stand-in for android.os.Process
+ */
+public class Process {
+
+    public static int myPid() {
+        return 1;
+    }
+
+    public static int myTid() {
+        return (int) Thread.currentThread().getId();
+    }
+}
@@ -0,0 +1,28 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for android.os.StatFs backed by {@link File} space queries,
+ * with a block size of 1
+ */
+public class StatFs {
+
+    private final File path;
+
+    public StatFs(String path) {
+        this.path = new File(path);
+    }
+
+    public int getBlockSize() {
+        return 1;
+    }
+
+    public int getAvailableBlocks() {
+        return (int) Math.min(Integer.MAX_VALUE, path.getUsableSpace());
+    }
+
+    public int getBlockCount() {
+        return (int) Math.min(Integer.MAX_VALUE, path.getTotalSpace());
+    }
+}
@@ -0,0 +1,64 @@
+package android.util;
+
+/**
+ * JVM stand-in for android.util.Base64 on java.util.Base64. DEFAULT wraps
+ * lines at 76 characters with '\n' and ends with '\n', like the platform.
+ */
+public class Base64 {
+
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int CRLF = 4;
+    public static final int URL_SAFE = 8;
+
+    private static final byte[] LINE_SEPARATOR = { '\n' };
+
+    public static byte[] encode(byte[] input, int flags) {
+        java.util.Base64.Encoder encoder;
+        if ((flags & NO_WRAP) != 0) {
+            encoder = (flags & URL_SAFE) != 0 ? java.util.Base64.getUrlEncoder() : java.util.Base64.getEncoder();
+        } else {
+            encoder = java.util.Base64.getMimeEncoder(76, LINE_SEPARATOR);
+        }
+        if ((flags & NO_PADDING) != 0) {
+            encoder = encoder.withoutPadding();
+        }
+        byte[] encoded = encoder.encode(input);
+        if ((flags & NO_WRAP) != 0 || encoded.length == 0) {
+            return encoded;
+        }
+        byte[] terminated = new byte[encoded.length + 1];
+        System.arraycopy(encoded, 0, terminated, 0, encoded.length);
+        terminated[encoded.length] = '\n';
+        return terminated;
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        return new String(encode(input, flags), java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    public static byte[] decode(byte[] input, int flags) {
+        if ((flags & URL_SAFE) != 0) {
+            return java.util.Base64.getUrlDecoder().decode(strip(input));
+        }
+        return java.util.Base64.getMimeDecoder().decode(input);
+    }
+
+    public static byte[] decode(String str, int flags) {
+        return decode(str.getBytes(java.nio.charset.StandardCharsets.US_ASCII), flags);
+    }
+
+    private static byte[] strip(byte[] input) {
+        int n = 0;
+        byte[] out = new byte[input.length];
+        for (byte b : input) {
+            if (b != '\n' && b != '\r') {
+                out[n++] = b;
+            }
+        }
+        byte[] result = new byte[n];
+        System.arraycopy(out, 0, result, 0, n);
+        return result;
+    }
+}
@@ -0,0 +1,12 @@
+package android.util;
+
+import java.util.regex.Pattern;
+
+/**
+ * JVM stand-in for android.util.Patterns, same expression as the platform
+ */
+public class Patterns {
+
+    public static final Pattern EMAIL_ADDRESS = Pattern.compile("[a-zA-Z0-9\\+\\.\\_\\%\\-\\+]{1,256}" + "\\@"
+            + "[a-zA-Z0-9][a-zA-Z0-9\\-]{0,64}" + "(" + "\\." + "[a-zA-Z0-9][a-zA-Z0-9\\-]{0,25}" + ")+");
+}
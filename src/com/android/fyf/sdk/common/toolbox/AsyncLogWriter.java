@@ -0,0 +1,526 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log file writer
+ * <ul>
+ * <li>{@link #append(String, String)} put a line into a {@link LogRingBuffer}
+ * , never touch the disk on caller's thread</li>
+ * <li>one background thread drains the buffer in batches to a long-lived
+ * {@link FileChannel}</li>
+ * <li>{@link #flush()} wait until every line appended before is written</li>
+ * <li>{@link #shutdown()} write what is left in the buffer and stop</li>
+ * </ul>
+ * What happens when the buffer is full is decided by {@link OverflowPolicy}.
+ */
+public class AsyncLogWriter {
+    private static final String TAG = "AsyncLogWriter";
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int BATCH_SIZE = 256;
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = 200 * 1000 * 1000L;
+    private static final long BLOCK_PARK_NANOS = 100 * 1000L;
+    private static final long FLUSH_WAIT_MILLIS = 10;
+
+    /**
+     * What to do when a line is appended to a full buffer
+     */
+    public enum OverflowPolicy {
+        /** wait until the writer makes room **/
+        BLOCK,
+        /** drop the oldest buffered line to make room **/
+        DROP_OLDEST,
+        /** drop the line being appended **/
+        DROP_NEWEST
+    }
+
+    private static final class Entry {
+        final String fileName;
+        final String line;
+
+        Entry(String fileName, String line) {
+            this.fileName = fileName;
+            this.line = line;
+        }
+    }
+
+    private final File dir;
+    private final boolean mapped;
+    private final OverflowPolicy policy;
+    private final LogRingBuffer<Entry> buffer;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Object flushLock = new Object();
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+    private volatile long writtenCount;
+    private volatile boolean writerParked;
+    private volatile LogRotator rotator;
+
+    // only touched by writer thread
+    private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final HourlyFileName hourFileName = new HourlyFileName(".txt");
+    private final HourlyFileName mappedFileName = new HourlyFileName(MappedLogFile.FILE_EXTENSION);
+    private String lastHourFileName;
+    private MappedLogFile mappedFile;
+    private long mappedFileModified;
+    private String channelFileName;
+    private FileChannel channel;
+    private long channelSize;
+    /** lines encoded into byteBuffer since it was last written **/
+    private int bufferedLines;
+    private long channelModified;
+
+    /** guards the rotator the open files are set active with, and their names **/
+    private final Object activeLock = new Object();
+    private LogRotator activeRotator;
+    private final List<String> activeNames = new ArrayList<String>(2);
+
+    /**
+     * @see #AsyncLogWriter(File, int, OverflowPolicy, boolean)
+     */
+    public AsyncLogWriter(File dir, int capacity, OverflowPolicy policy) {
+        this(dir, capacity, policy, false);
+    }
+
+    /**
+     * @param dir directory of log files
+     * @param capacity max count of buffered lines
+     * @param policy
+     * @param mapped if true, lines of the current hour are written to a
+     *            {@link MappedLogFile} named yyyy-MM-dd-HH.mlog
+     */
+    public AsyncLogWriter(File dir, int capacity, OverflowPolicy policy, boolean mapped) {
+        this.dir = dir;
+        this.mapped = mapped;
+        this.policy = policy == null ? OverflowPolicy.DROP_NEWEST : policy;
+        this.buffer = new LogRingBuffer<Entry>(capacity);
+        this.writerThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, TAG);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * append a line
+     *
+     * @param fileName name of file in log directory, if null, write to the
+     *            file of current hour, named yyyy-MM-dd-HH.txt or
+     *            yyyy-MM-dd-HH.mlog
+     * @param line without line separator
+     * @return false if the line is dropped or writer is shut down
+     */
+    public boolean append(String fileName, String line) {
+        if (!running || line == null) {
+            return false;
+        }
+        Entry entry = new Entry(fileName, line);
+        boolean accepted = true;
+        switch (policy) {
+            case BLOCK:
+                while (!buffer.offer(entry)) {
+                    if (buffer.isClosed()) {
+                        return false;
+                    }
+                    LockSupport.unpark(writerThread);
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+                break;
+            case DROP_OLDEST:
+                while (!buffer.offer(entry)) {
+                    if (buffer.isClosed()) {
+                        return false;
+                    }
+                    if (buffer.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                break;
+            default:
+                if (!buffer.offer(entry)) {
+                    if (buffer.isClosed()) {
+                        return false;
+                    }
+                    droppedCount.incrementAndGet();
+                    accepted = false;
+                }
+                break;
+        }
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+        return accepted;
+    }
+
+    /**
+     * block until every line appended before this call is handed to the file
+     * system, or the writer is shut down
+     */
+    public void flush() {
+        long target = buffer.producedCount();
+        while (writtenCount < target && writerThread.isAlive()) {
+            LockSupport.unpark(writerThread);
+            synchronized (flushLock) {
+                if (writtenCount < target) {
+                    try {
+                        flushLock.wait(FLUSH_WAIT_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * stop accepting lines, write what is left in the buffer and close the
+     * file
+     *
+     * @param timeoutMillis max time to wait for the writer, 0 means forever
+     */
+    public void shutdown(long timeoutMillis) {
+        // producers are fenced off first, the writer then drains the buffer
+        // to empty and no line can come after
+        buffer.close();
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @see #shutdown(long)
+     */
+    public void shutdown() {
+        shutdown(0);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * roll over log files with rotator, null to disable rotation
+     * 
+     * @param rotator
+     */
+    public void setRotator(LogRotator rotator) {
+        synchronized (activeLock) {
+            this.rotator = rotator;
+            // the open files move to the new rotator at once, before it trims
+            if (rotator != activeRotator) {
+                for (String name : activeNames) {
+                    if (activeRotator != null) {
+                        activeRotator.setActive(name, false);
+                    }
+                    if (rotator != null) {
+                        rotator.setActive(name, true);
+                    }
+                }
+                activeRotator = rotator;
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return count of lines dropped because the buffer was full or their
+     *         file could not be opened or written
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return count of lines waiting in the buffer
+     */
+    public int getPendingCount() {
+        return buffer.size();
+    }
+
+    private void drainLoop() {
+        List<Entry> batch = new ArrayList<Entry>(BATCH_SIZE);
+        for (;;) {
+            boolean stopping = buffer.isClosed();
+            if (buffer.drainTo(batch, BATCH_SIZE) > 0) {
+                for (int i = 0; i < batch.size(); i++) {
+                    write(batch.get(i));
+                }
+                batch.clear();
+            }
+            writeBytes();
+            writtenCount = buffer.consumedCount();
+            synchronized (flushLock) {
+                flushLock.notifyAll();
+            }
+            if (!buffer.isEmpty()) {
+                continue;
+            }
+            if (stopping) {
+                break;
+            }
+            writerParked = true;
+            if (buffer.isEmpty() && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+        closeChannel();
+        closeMappedFile();
+    }
+
+    private void write(Entry entry) {
+        long now = System.currentTimeMillis();
+        if (entry.fileName == null && mapped) {
+            writeMapped(entry.line, now);
+            return;
+        }
+        String fileName = entry.fileName;
+        if (fileName == null) {
+            fileName = hourFileName.get(now);
+            retireLastHour(fileName);
+        }
+        if (!fileName.equals(channelFileName)) {
+            writeBytes();
+            closeChannel();
+            openChannel(fileName);
+        }
+        if (channel == null) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        LogRotator r = rotator;
+        if (r != null && r.shouldRotate(channelSize + byteBuffer.position(), channelModified, now)) {
+            writeBytes();
+            closeChannel();
+            r.rotate(new File(dir, fileName));
+            openChannel(fileName);
+            if (channel == null) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+        }
+        encode(CharBuffer.wrap(entry.line));
+        encode(CharBuffer.wrap("\n"));
+        bufferedLines++;
+    }
+
+    private void writeMapped(String line, long now) {
+        String fileName = mappedFileName.get(now);
+        retireLastHour(fileName);
+        if (mappedFile == null || !mappedFile.getFile().getName().equals(fileName)) {
+            closeMappedFile();
+            openMappedFile(fileName);
+        }
+        if (mappedFile == null) {
+            return;
+        }
+        LogRotator r = rotator;
+        // a file still open by the synchronous writer is rotated once it is
+        // closed, at the latest when the hour changes
+        if (r != null && !mappedFile.isShared() && r.shouldRotate(mappedFile.length(), mappedFileModified, now)) {
+            closeMappedFile();
+            r.rotate(new File(dir, fileName));
+            openMappedFile(fileName);
+            if (mappedFile == null) {
+                return;
+            }
+        }
+        try {
+            long length = mappedFile.length();
+            mappedFile.append(line);
+            mappedFileModified = now;
+            if (r != null) {
+                r.onWritten(mappedFile.length() - length);
+            }
+        } catch (IOException e) {
+            LogUtils.e(TAG, "write mapped log failed", e);
+            closeMappedFile();
+        }
+    }
+
+    /**
+     * hand over the file of last hour to rotator when hour changes
+     */
+    private void retireLastHour(String fileName) {
+        String last = lastHourFileName;
+        if (fileName.equals(last)) {
+            return;
+        }
+        lastHourFileName = fileName;
+        LogRotator r = rotator;
+        if (last == null || r == null) {
+            return;
+        }
+        if (last.equals(channelFileName)) {
+            writeBytes();
+            closeChannel();
+        }
+        if (mappedFile != null && last.equals(mappedFile.getFile().getName())) {
+            closeMappedFile();
+        }
+        r.retire(new File(dir, last));
+    }
+
+    private void encode(CharBuffer chars) {
+        encoder.reset();
+        for (;;) {
+            CoderResult result = encoder.encode(chars, byteBuffer, true);
+            if (result.isOverflow()) {
+                writeBytes();
+                continue;
+            }
+            while (encoder.flush(byteBuffer).isOverflow()) {
+                writeBytes();
+            }
+            return;
+        }
+    }
+
+    private void writeBytes() {
+        if (byteBuffer.position() == 0) {
+            return;
+        }
+        if (channel == null) {
+            // the channel failed while the lines were encoded, nothing of them
+            // reaches the file, so the file size and rotation stay as they are
+            discardBytes();
+            return;
+        }
+        byteBuffer.flip();
+        int length = byteBuffer.remaining();
+        try {
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            channelSize += length;
+            channelModified = System.currentTimeMillis();
+            LogRotator r = rotator;
+            if (r != null) {
+                r.onWritten(length);
+            }
+        } catch (IOException e) {
+            LogUtils.e(TAG, "write log failed", e);
+            closeChannel();
+            discardBytes();
+            return;
+        }
+        bufferedLines = 0;
+        byteBuffer.clear();
+    }
+
+    private void discardBytes() {
+        droppedCount.addAndGet(bufferedLines);
+        bufferedLines = 0;
+        byteBuffer.clear();
+    }
+
+    private void openChannel(String fileName) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File file = new File(dir, fileName);
+        try {
+            channel = new FileOutputStream(file, true).getChannel();
+            channelSize = channel.size();
+            channelModified = file.lastModified();
+            channelFileName = fileName;
+            setActive(fileName, true);
+        } catch (IOException e) {
+            LogUtils.e(TAG, "open log file failed: " + fileName, e);
+            closeChannel();
+        }
+    }
+
+    private void openMappedFile(String fileName) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File file = new File(dir, fileName);
+        try {
+            mappedFileModified = file.lastModified();
+            mappedFile = MappedLogFile.open(file);
+            setActive(fileName, true);
+        } catch (IOException e) {
+            LogUtils.e(TAG, "open mapped log file failed: " + fileName, e);
+        }
+    }
+
+    private void closeMappedFile() {
+        if (mappedFile != null) {
+            setActive(mappedFile.getFile().getName(), false);
+            try {
+                mappedFile.close();
+            } catch (IOException e) {
+                LogUtils.e(TAG, "close mapped log file failed", e);
+            }
+        }
+        mappedFile = null;
+    }
+
+    private void setActive(String fileName, boolean active) {
+        synchronized (activeLock) {
+            if (active) {
+                activeNames.add(fileName);
+            } else {
+                activeNames.remove(fileName);
+            }
+            if (activeRotator != null) {
+                activeRotator.setActive(fileName, active);
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channelFileName != null) {
+            setActive(channelFileName, false);
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LogUtils.e(TAG, "close log file failed", e);
+            }
+        }
+        channel = null;
+        channelFileName = null;
+    }
+}
@@ -0,0 +1,528 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaces a file as a whole, a crash leaves either the old or the new
+ * content, never a part of it
+ * <ul>
+ * <li>{@link #write(File, Content, boolean)} write to a temp file next to the
+ * target, sync it and rename it over the target</li>
+ * <li>{@link #recover(File)} delete temp files left by a crash, done for
+ * each directory before its first write of the process</li>
+ * <li>{@link GroupCommit} share the sync cost of many small writes</li>
+ * <li>{@link #setGroupCommit(GroupCommit)} route {@link #write(File, Content)}
+ * through a group commit</li>
+ * <li>{@link #setEnabled(boolean)} make
+ * {@link FileUtils#writeFile(String, String, boolean)} and
+ * {@link SerializeUtils#serialization(String, Object)} replace files this
+ * way</li>
+ * </ul>
+ * The rename is durable only when the directory is synced too. Java can sync a
+ * directory only through java.nio.file, so it is done when the runtime has it
+ * (Android 8.0+, JVM 7+) and skipped otherwise.
+ */
+public final class AtomicFileWriter {
+    private static final String TAG = "AtomicFileWriter";
+
+    /** suffix of temp files, they start with '.' and the target name **/
+    public static final String TEMP_SUFFIX = ".atomic-tmp";
+    /**
+     * temp files not modified for this time are stale, younger ones may be
+     * written by another process of the app
+     **/
+    public static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static volatile boolean sEnabled = false;
+    private static volatile boolean sSyncDirectory = false;
+    private static volatile GroupCommit sGroupCommit;
+
+    private static final DirectorySync DIRECTORY_SYNC = new DirectorySync();
+
+    /** directories whose stale temp files were deleted in this process **/
+    private static final ConcurrentHashMap<String, Boolean> RECOVERED = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Writes the new content of a file
+     */
+    public interface Content {
+
+        /**
+         * @param out buffered, closed by the caller
+         * @throws IOException
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private AtomicFileWriter() {
+    }
+
+    /**
+     * @param enabled whether {@link FileUtils#writeFile(String, String, boolean)}
+     *            and the other whole file writes of {@link FileUtils} and
+     *            {@link SerializeUtils} go through {@link #write(File, Content)},
+     *            false by default. Appending writes stay in place.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @param syncDirectory whether {@link #write(File, Content)} also syncs
+     *            the directory, false by default
+     */
+    public static void setSyncDirectory(boolean syncDirectory) {
+        sSyncDirectory = syncDirectory;
+    }
+
+    public static boolean isSyncDirectory() {
+        return sSyncDirectory;
+    }
+
+    /**
+     * @param groupCommit used by {@link #write(File, Content)}, null to sync
+     *            every write on its own
+     */
+    public static void setGroupCommit(GroupCommit groupCommit) {
+        sGroupCommit = groupCommit;
+    }
+
+    public static GroupCommit getGroupCommit() {
+        return sGroupCommit;
+    }
+
+    /**
+     * replace target with content, through the group commit if one is set,
+     * syncing the directory if {@link #setSyncDirectory(boolean)} says so
+     *
+     * @param target
+     * @param content
+     * @throws IOException if content could not be written, target is not
+     *             changed then
+     */
+    public static void write(File target, Content content) throws IOException {
+        GroupCommit groupCommit = sGroupCommit;
+        if (groupCommit != null) {
+            groupCommit.write(target, content);
+        } else {
+            write(target, content, sSyncDirectory);
+        }
+    }
+
+    /**
+     * replace target with content
+     *
+     * @param target
+     * @param content
+     * @param syncDirectory whether to also sync the directory, so the rename
+     *            survives a power loss
+     * @throws IOException if content could not be written, target is not
+     *             changed then
+     */
+    public static void write(File target, Content content, boolean syncDirectory) throws IOException {
+        File temp = createTemp(target);
+        FileOutputStream out = writeTemp(temp, content);
+        try {
+            out.getFD().sync();
+        } catch (IOException e) {
+            closeQuietly(out);
+            temp.delete();
+            throw e;
+        }
+        out.close();
+        rename(temp, target);
+        if (syncDirectory) {
+            syncDirectory(target.getAbsoluteFile().getParentFile());
+        }
+    }
+
+    /**
+     * delete temp files left in directory by writes which did not finish, only
+     * those older than {@link #STALE_TEMP_MILLIS}, so temp files of writes
+     * going on in another process, e.g. a :remote service, are kept. Writes do
+     * it for each directory before the first temp file of the process is
+     * created there, call it to clean a directory not written.
+     *
+     * @param directory
+     * @return count of temp files deleted
+     */
+    public static int recover(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(".") && name.endsWith(TEMP_SUFFIX) && file.isFile()
+                    && file.lastModified() < staleBefore) {
+                if (file.delete()) {
+                    count++;
+                } else {
+                    LogUtils.w(TAG, "delete stale temp file failed: " + file);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * sync directory, so files created or renamed in it survive a power loss
+     *
+     * @param directory
+     * @return false if the runtime can not sync a directory
+     * @throws IOException
+     */
+    public static boolean syncDirectory(File directory) throws IOException {
+        return DIRECTORY_SYNC.sync(directory);
+    }
+
+    private static File createTemp(File target) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        recoverOnce(parent);
+        return File.createTempFile("." + target.getName() + "-", TEMP_SUFFIX, parent);
+    }
+
+    /**
+     * recover directory unless done before. Only the first writer of a
+     * directory lists it, other writers do not wait: temp files they create
+     * meanwhile are young and never taken for stale ones.
+     */
+    private static void recoverOnce(File directory) {
+        if (directory == null) {
+            return;
+        }
+        if (RECOVERED.putIfAbsent(directory.getPath(), Boolean.TRUE) == null) {
+            int count = recover(directory);
+            if (count > 0) {
+                LogUtils.i(TAG, "deleted " + count + " stale temp files in " + directory);
+            }
+        }
+    }
+
+    /**
+     * sync temp written and closed before, a new descriptor of the file syncs
+     * what any descriptor wrote
+     */
+    private static void syncTemp(File temp) throws IOException {
+        FileOutputStream out = new FileOutputStream(temp, true);
+        try {
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return stream of temp with content written and flushed, not synced
+     */
+    private static FileOutputStream writeTemp(File temp, Content content) throws IOException {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+            content.writeTo(buffered);
+            buffered.flush();
+            return out;
+        } catch (IOException e) {
+            closeQuietly(out);
+            temp.delete();
+            throw e;
+        } catch (RuntimeException e) {
+            closeQuietly(out);
+            temp.delete();
+            throw e;
+        }
+    }
+
+    private static void rename(File temp, File target) throws IOException {
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("rename " + temp + " to " + target + " failed");
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // already failed
+            }
+        }
+    }
+
+    /**
+     * Writers of many small files in a burst share the sync cost: each writer
+     * writes and closes its temp file on its own thread and waits, a committer
+     * thread opens the waiting temp files to sync them back to back, renames
+     * them and syncs each directory once per batch. No file stays open while
+     * its writer waits.
+     */
+    public static final class GroupCommit {
+        private final long maxDelayMillis;
+        private final int maxBatch;
+        private final boolean syncDirectory;
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+        private final Thread committer;
+        private volatile boolean shutdown;
+        private volatile long batchCount;
+        private volatile long writeCount;
+
+        /**
+         * @param maxDelayMillis longest time a batch waits for more writes, 0
+         *            commits what is queued at once, writes coming during a
+         *            commit then form the next batch
+         * @param maxBatch most writes committed together
+         * @param syncDirectory whether to sync directories of a batch
+         */
+        public GroupCommit(long maxDelayMillis, int maxBatch, boolean syncDirectory) {
+            this.maxDelayMillis = maxDelayMillis;
+            this.maxBatch = maxBatch < 1 ? 1 : maxBatch;
+            this.syncDirectory = syncDirectory;
+            committer = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    commitLoop();
+                }
+            }, TAG + "-GroupCommit");
+            committer.setDaemon(true);
+            committer.start();
+        }
+
+        /**
+         * replace target with content, returns when it is durable
+         *
+         * @param target
+         * @param content
+         * @throws IOException if content could not be written, target is not
+         *             changed then
+         */
+        public void write(File target, Content content) throws IOException {
+            if (shutdown) {
+                throw new IOException("group commit shut down");
+            }
+            File temp = createTemp(target);
+            FileOutputStream out = writeTemp(temp, content);
+            try {
+                out.close();
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            Pending pending = new Pending(temp, target);
+            queue.add(pending);
+            if (shutdown && queue.remove(pending)) {
+                pending.abort(new IOException("group commit shut down"));
+            }
+            boolean interrupted = false;
+            for (;;) {
+                try {
+                    pending.done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (pending.error != null) {
+                throw pending.error;
+            }
+        }
+
+        /**
+         * @return count of batches committed
+         */
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        /**
+         * @return count of writes committed
+         */
+        public long getWriteCount() {
+            return writeCount;
+        }
+
+        /**
+         * commit waiting writes and stop, later writes fail
+         */
+        public void shutdown() {
+            shutdown = true;
+            committer.interrupt();
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void commitLoop() {
+            List<Pending> batch = new ArrayList<Pending>();
+            while (!shutdown || !queue.isEmpty()) {
+                try {
+                    Pending first = shutdown ? queue.poll() : queue.take();
+                    if (first == null) {
+                        break;
+                    }
+                    batch.add(first);
+                    long deadline = System.currentTimeMillis() + maxDelayMillis;
+                    while (batch.size() < maxBatch) {
+                        long wait = deadline - System.currentTimeMillis();
+                        Pending next = wait > 0 && !shutdown ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue
+                                .poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    // shutdown, commit what is queued
+                }
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                    batch.clear();
+                }
+            }
+        }
+
+        private void commit(List<Pending> batch) {
+            for (Pending pending : batch) {
+                try {
+                    syncTemp(pending.temp);
+                } catch (IOException e) {
+                    pending.temp.delete();
+                    pending.error = e;
+                }
+            }
+            Set<File> directories = new LinkedHashSet<File>();
+            for (Pending pending : batch) {
+                if (pending.error != null) {
+                    continue;
+                }
+                try {
+                    rename(pending.temp, pending.target);
+                    directories.add(pending.target.getAbsoluteFile().getParentFile());
+                } catch (IOException e) {
+                    pending.error = e;
+                }
+            }
+            if (syncDirectory) {
+                for (File directory : directories) {
+                    try {
+                        syncDirectory(directory);
+                    } catch (IOException e) {
+                        LogUtils.w(TAG, "sync directory failed: " + directory, e);
+                    }
+                }
+            }
+            batchCount++;
+            writeCount += batch.size();
+            for (Pending pending : batch) {
+                pending.done.countDown();
+            }
+        }
+    }
+
+    private static final class Pending {
+        final File temp;
+        final File target;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile IOException error;
+
+        Pending(File temp, File target) {
+            this.temp = temp;
+            this.target = target;
+        }
+
+        void abort(IOException e) {
+            temp.delete();
+            error = e;
+            done.countDown();
+        }
+    }
+
+    /**
+     * Syncs a directory through FileChannel.open(Path, OpenOption...), called
+     * by reflection as java.nio.file is missing on older Android
+     */
+    private static final class DirectorySync {
+        private final Method toPath;
+        private final Method open;
+        private final Object options;
+
+        DirectorySync() {
+            Method p = null;
+            Method o = null;
+            Object opts = null;
+            try {
+                p = File.class.getMethod("toPath");
+                Class<?> pathClass = Class.forName("java.nio.file.Path");
+                Class<?> optionClass = Class.forName("java.nio.file.OpenOption");
+                Class<?> standardClass = Class.forName("java.nio.file.StandardOpenOption");
+                o = FileChannel.class.getMethod("open", pathClass, Array.newInstance(optionClass, 0)
+                        .getClass());
+                opts = Array.newInstance(optionClass, 1);
+                Array.set(opts, 0, standardClass.getField("READ").get(null));
+            } catch (Exception e) {
+                p = null;
+                o = null;
+            }
+            toPath = p;
+            open = o;
+            options = opts;
+        }
+
+        boolean sync(File directory) throws IOException {
+            if (open == null) {
+                return false;
+            }
+            FileChannel channel;
+            try {
+                channel = (FileChannel) open.invoke(null, toPath.invoke(directory), options);
+            } catch (Exception e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                // e.g. a file system which can not open directories
+                return false;
+            }
+            try {
+                channel.force(true);
+            } catch (IOException e) {
+                // some file systems refuse to sync a directory
+                return false;
+            } finally {
+                channel.close();
+            }
+            return true;
+        }
+    }
+}
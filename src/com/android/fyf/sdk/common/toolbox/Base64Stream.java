@@ -0,0 +1,502 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+/**
+ * Base64 as streams, so bytes are encoded straight into text and decoded
+ * straight from it, without holding all bytes in an array
+ * <ul>
+ * <li>{@link Encoder} an output stream writing Base64 to a
+ * {@link StringBuilder} or a {@link Writer}</li>
+ * <li>{@link Decoder} an input stream reading Base64 from a
+ * {@link CharSequence} or a {@link Reader}</li>
+ * <li>{@link #encodeToString(byte[], int, int, boolean)} bytes to a string
+ * sized exactly</li>
+ * <li>{@link #encodedLength(long)} length of the text for a count of bytes</li>
+ * </ul>
+ * The text is the same as android.util.Base64 with {@code Base64.DEFAULT}:
+ * padded, a '\n' after every 76 characters and at the end. Decoding skips
+ * characters not in the alphabet, like android.util.Base64 does.
+ */
+public final class Base64Stream {
+
+    /** characters in a line of wrapped text, the '\n' excluded **/
+    public static final int LINE_LENGTH = 76;
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .toCharArray();
+
+    private static final int SKIP = -1;
+    private static final int EQUALS = -2;
+    private static final int[] DECODE = new int[128];
+    static {
+        for (int i = 0; i < DECODE.length; i++) {
+            DECODE[i] = SKIP;
+        }
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = i;
+        }
+        DECODE['='] = EQUALS;
+    }
+
+    private static final int BUFFER_CHARS = 1024;
+
+    private Base64Stream() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param byteCount
+     * @param wrap whether lines are wrapped like {@code Base64.DEFAULT}
+     * @return length of the Base64 text of byteCount bytes
+     */
+    public static long encodedLength(long byteCount, boolean wrap) {
+        long length = (byteCount + 2) / 3 * 4;
+        if (wrap && length > 0) {
+            length += (length + LINE_LENGTH - 1) / LINE_LENGTH;
+        }
+        return length;
+    }
+
+    /**
+     * @param byteCount
+     * @return length of the wrapped Base64 text of byteCount bytes
+     */
+    public static long encodedLength(long byteCount) {
+        return encodedLength(byteCount, true);
+    }
+
+    /**
+     * encode bytes into a string of exactly {@link #encodedLength(long, boolean)}
+     * characters, built once without growing
+     *
+     * @param src
+     * @param off
+     * @param len
+     * @param wrap whether lines are wrapped like {@code Base64.DEFAULT}
+     * @return Base64 text of the bytes
+     */
+    public static String encodeToString(byte[] src, int off, int len, boolean wrap) {
+        if ((off | len) < 0 || len > src.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        long length = encodedLength(len, wrap);
+        if (length > Integer.MAX_VALUE) {
+            throw new OutOfMemoryError("Base64 text of " + len + " bytes too long");
+        }
+        // ASCII bytes, a String is built from them with a single copy
+        byte[] text = new byte[(int) length];
+        int at = 0;
+        int lineLength = 0;
+        int end = off + len;
+        for (; end - off >= 3; off += 3) {
+            int bits = ((src[off] & 0xFF) << 16) | ((src[off + 1] & 0xFF) << 8) | (src[off + 2] & 0xFF);
+            text[at] = (byte) ALPHABET[(bits >> 18) & 0x3F];
+            text[at + 1] = (byte) ALPHABET[(bits >> 12) & 0x3F];
+            text[at + 2] = (byte) ALPHABET[(bits >> 6) & 0x3F];
+            text[at + 3] = (byte) ALPHABET[bits & 0x3F];
+            at += 4;
+            if (wrap && (lineLength += 4) == LINE_LENGTH) {
+                text[at++] = '\n';
+                lineLength = 0;
+            }
+        }
+        if (off < end) {
+            int significant = end - off + 1;
+            int bits = (src[off] & 0xFF) << 16;
+            if (significant == 3) {
+                bits |= (src[off + 1] & 0xFF) << 8;
+            }
+            for (int i = 0; i < 4; i++) {
+                text[at++] = (byte) (i < significant ? ALPHABET[(bits >> (18 - 6 * i)) & 0x3F] : '=');
+            }
+            lineLength += 4;
+        }
+        if (wrap && lineLength > 0) {
+            text[at++] = '\n';
+        }
+        try {
+            return new String(text, 0, at, "US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Encodes the bytes written to Base64 text. {@link #close()} writes the
+     * padding and the last line end, it does not close the writer.
+     */
+    public static final class Encoder extends OutputStream {
+
+        private final StringBuilder builder;
+        private final Writer writer;
+        private final boolean wrap;
+        private final char[] chars = new char[BUFFER_CHARS];
+        private int charCount;
+        private int lineLength;
+        private int tail;
+        private int tailCount;
+        private boolean closed;
+
+        /**
+         * @param builder text is appended to it
+         */
+        public Encoder(StringBuilder builder) {
+            this(builder, null, true);
+        }
+
+        /**
+         * @param writer text is written to it, in blocks
+         */
+        public Encoder(Writer writer) {
+            this(null, writer, true);
+        }
+
+        /**
+         * @param builder text is appended to it
+         * @param wrap whether lines are wrapped like {@code Base64.DEFAULT}
+         */
+        public Encoder(StringBuilder builder, boolean wrap) {
+            this(builder, null, wrap);
+        }
+
+        /**
+         * @param writer text is written to it, in blocks
+         * @param wrap whether lines are wrapped like {@code Base64.DEFAULT}
+         */
+        public Encoder(Writer writer, boolean wrap) {
+            this(null, writer, wrap);
+        }
+
+        private Encoder(StringBuilder builder, Writer writer, boolean wrap) {
+            if (builder == null && writer == null) {
+                throw new NullPointerException("no target for the text");
+            }
+            this.builder = builder;
+            this.writer = writer;
+            this.wrap = wrap;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkOpen();
+            tail = (tail << 8) | (b & 0xFF);
+            if (++tailCount == 3) {
+                writeGroup(tail);
+                tail = 0;
+                tailCount = 0;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            int end = off + len;
+            while (tailCount != 0 && off < end) {
+                write(b[off++]);
+            }
+            for (; end - off >= 3; off += 3) {
+                writeGroup(((b[off] & 0xFF) << 16) | ((b[off + 1] & 0xFF) << 8) | (b[off + 2] & 0xFF));
+            }
+            while (off < end) {
+                write(b[off++]);
+            }
+        }
+
+        /**
+         * write the text so far to the target, and flush the writer
+         */
+        @Override
+        public void flush() throws IOException {
+            drain();
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        /**
+         * write the last bytes with padding and the line end, the target is
+         * not closed
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (tailCount == 1) {
+                writeLast(tail << 16, 2);
+            } else if (tailCount == 2) {
+                writeLast(tail << 8, 3);
+            }
+            if (wrap && lineLength > 0) {
+                chars[charCount++] = '\n';
+                lineLength = 0;
+            }
+            closed = true;
+            flush();
+        }
+
+        private void writeGroup(int bits) throws IOException {
+            if (charCount > chars.length - 5) {
+                drain();
+            }
+            char[] c = chars;
+            int n = charCount;
+            c[n] = ALPHABET[(bits >> 18) & 0x3F];
+            c[n + 1] = ALPHABET[(bits >> 12) & 0x3F];
+            c[n + 2] = ALPHABET[(bits >> 6) & 0x3F];
+            c[n + 3] = ALPHABET[bits & 0x3F];
+            charCount = n + 4;
+            endGroup();
+        }
+
+        private void writeLast(int bits, int significant) throws IOException {
+            if (charCount > chars.length - 5) {
+                drain();
+            }
+            for (int i = 0; i < 4; i++) {
+                chars[charCount++] = i < significant ? ALPHABET[(bits >> (18 - 6 * i)) & 0x3F] : '=';
+            }
+            endGroup();
+        }
+
+        private void endGroup() {
+            if (wrap) {
+                lineLength += 4;
+                if (lineLength == LINE_LENGTH) {
+                    chars[charCount++] = '\n';
+                    lineLength = 0;
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            if (charCount == 0) {
+                return;
+            }
+            if (builder != null) {
+                builder.append(chars, 0, charCount);
+            } else {
+                writer.write(chars, 0, charCount);
+            }
+            charCount = 0;
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("encoder closed");
+            }
+        }
+    }
+
+    /**
+     * Decodes Base64 text to the bytes read. Text after the padding is
+     * ignored.
+     *
+     * @throws IllegalArgumentException from read if the padding is misplaced,
+     *             like android.util.Base64
+     */
+    public static final class Decoder extends InputStream {
+
+        private final CharSequence text;
+        private final Reader reader;
+        private final char[] chars;
+        private int charPosition;
+        private int charLimit;
+        private final byte[] pending = new byte[3];
+        private int pendingPosition;
+        private int pendingLimit;
+        private boolean end;
+        private int markCharPosition;
+        private final byte[] markPending = new byte[3];
+        private int markPendingPosition;
+        private int markPendingLimit;
+        private boolean markEnd;
+
+        /**
+         * @param text read from its first character, not copied
+         */
+        public Decoder(CharSequence text) {
+            this.text = text;
+            this.reader = null;
+            this.chars = null;
+            this.charLimit = text.length();
+        }
+
+        /**
+         * @param reader read in blocks, not closed
+         */
+        public Decoder(Reader reader) {
+            if (reader == null) {
+                throw new NullPointerException("reader");
+            }
+            this.text = null;
+            this.reader = reader;
+            this.chars = new char[BUFFER_CHARS];
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pendingPosition == pendingLimit) {
+                pendingPosition = 0;
+                pendingLimit = readGroup(pending, 0);
+                if (pendingLimit == 0) {
+                    return -1;
+                }
+            }
+            return pending[pendingPosition++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int start = off;
+            int limit = off + len;
+            while (pendingPosition < pendingLimit && off < limit) {
+                b[off++] = pending[pendingPosition++];
+            }
+            while (limit - off >= 3) {
+                int count = readGroup(b, off);
+                off += count;
+                if (count < 3) {
+                    break;
+                }
+            }
+            if (off < limit && !end) {
+                // fewer than 3 bytes of room left, decode the group aside
+                pendingPosition = 0;
+                pendingLimit = readGroup(pending, 0);
+                while (pendingPosition < pendingLimit && off < limit) {
+                    b[off++] = pending[pendingPosition++];
+                }
+            }
+            return off == start ? -1 : off - start;
+        }
+
+        @Override
+        public int available() {
+            return pendingLimit - pendingPosition;
+        }
+
+        /**
+         * @return true when reading a {@link CharSequence}
+         */
+        @Override
+        public boolean markSupported() {
+            return reader == null;
+        }
+
+        /**
+         * @param readlimit ignored, the whole text is kept anyway
+         */
+        @Override
+        public void mark(int readlimit) {
+            if (reader != null) {
+                return;
+            }
+            markCharPosition = charPosition;
+            System.arraycopy(pending, 0, markPending, 0, pending.length);
+            markPendingPosition = pendingPosition;
+            markPendingLimit = pendingLimit;
+            markEnd = end;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            if (reader != null) {
+                throw new IOException("mark not supported");
+            }
+            charPosition = markCharPosition;
+            System.arraycopy(markPending, 0, pending, 0, pending.length);
+            pendingPosition = markPendingPosition;
+            pendingLimit = markPendingLimit;
+            end = markEnd;
+        }
+
+        /**
+         * the reader is not closed
+         */
+        @Override
+        public void close() {
+            end = true;
+            pendingPosition = pendingLimit;
+        }
+
+        /**
+         * decode the next group of 4 characters
+         *
+         * @return count of bytes decoded to dst, less than 3 only at the end
+         */
+        private int readGroup(byte[] dst, int off) throws IOException {
+            if (end) {
+                return 0;
+            }
+            int bits = 0;
+            int count = 0;
+            while (count < 4) {
+                int c = nextChar();
+                if (c < 0) {
+                    break;
+                }
+                int value = c < 128 ? DECODE[c] : SKIP;
+                if (value >= 0) {
+                    bits = (bits << 6) | value;
+                    count++;
+                } else if (value == EQUALS) {
+                    break;
+                }
+            }
+            if (count == 4) {
+                dst[off] = (byte)(bits >> 16);
+                dst[off + 1] = (byte)(bits >> 8);
+                dst[off + 2] = (byte)bits;
+                return 3;
+            }
+            end = true;
+            switch (count) {
+                case 0:
+                    return 0;
+                case 2:
+                    dst[off] = (byte)(bits >> 4);
+                    return 1;
+                case 3:
+                    dst[off] = (byte)(bits >> 10);
+                    dst[off + 1] = (byte)(bits >> 2);
+                    return 2;
+                default:
+                    throw new IllegalArgumentException("bad base-64");
+            }
+        }
+
+        private int nextChar() throws IOException {
+            if (charPosition == charLimit) {
+                if (reader == null) {
+                    return -1;
+                }
+                int count;
+                do {
+                    count = reader.read(chars, 0, chars.length);
+                } while (count == 0);
+                if (count < 0) {
+                    return -1;
+                }
+                charPosition = 0;
+                charLimit = count;
+            }
+            return reader == null ? text.charAt(charPosition++) : chars[charPosition++];
+        }
+    }
+}
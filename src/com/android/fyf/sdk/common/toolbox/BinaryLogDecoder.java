@@ -0,0 +1,162 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Turns binary log segments written by {@link BinaryLogWriter} back into text,
+ * runs on a plain JVM:
+ * 
+ * <pre>
+ * java -cp toolbox.jar com.android.fyf.sdk.common.toolbox.BinaryLogDecoder
+ *         [-from "yyyy-MM-dd HH:mm:ss"] [-to "yyyy-MM-dd HH:mm:ss"] [-level D] [-tag TAG]... file...
+ * </pre>
+ * 
+ * Every line looks like [MM-dd HH:mm:ss.SSS]\tD/tag(pid/tid):message
+ * <p>
+ * A file whose last record is cut off or torn is decoded up to that record,
+ * {@link #isTruncated()} tells it after {@link #decode(File, Writer)}.
+ */
+public class BinaryLogDecoder {
+
+    private static final String LEVELS = "??VDIWEA";
+    private static final String TIME_ARGUMENT_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private int minLevel;
+    private Set<String> tags;
+    private boolean truncated;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("[MM-dd HH:mm:ss.SSS]");
+
+    /**
+     * @param from only records at or after this time in millis
+     * @param to only records before this time in millis
+     * @return this
+     */
+    public BinaryLogDecoder setTimeRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * @param minLevel only records at or above this level
+     * @return this
+     */
+    public BinaryLogDecoder setMinLevel(int minLevel) {
+        this.minLevel = minLevel;
+        return this;
+    }
+
+    /**
+     * @param tag only records of added tags, all tags if none is added
+     * @return this
+     */
+    public BinaryLogDecoder addTag(String tag) {
+        if (tags == null) {
+            tags = new HashSet<String>();
+        }
+        tags.add(tag);
+        return this;
+    }
+
+    public boolean accept(BinaryLogReader.Record record) {
+        return record.time >= from && record.time < to && record.level >= minLevel
+                && (tags == null || tags.contains(record.tag));
+    }
+
+    /**
+     * decode a binary log file to text
+     * 
+     * @param file
+     * @param out
+     * @return count of records written
+     * @throws IOException if file is not a binary log
+     */
+    public int decode(File file, Writer out) throws IOException {
+        BinaryLogReader reader = new BinaryLogReader(new FileInputStream(file));
+        int count = 0;
+        truncated = false;
+        try {
+            BinaryLogReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (accept(record)) {
+                    out.write(format(record));
+                    out.write('\n');
+                    count++;
+                }
+            }
+            truncated = reader.isTruncated();
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * @return whether the last file decoded ended with a record cut off or
+     *         torn, the records before it were decoded
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public String format(BinaryLogReader.Record record) {
+        char level = record.level >= 0 && record.level < LEVELS.length() ? LEVELS.charAt(record.level) : '?';
+        return new StringBuilder(64 + record.message.length()).append(timeFormat.format(new Date(record.time)))
+                .append('\t').append(level).append('/').append(record.tag).append('(').append(record.pid)
+                .append('/').append(record.tid).append("):").append(record.message).toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        BinaryLogDecoder decoder = new BinaryLogDecoder();
+        SimpleDateFormat argumentFormat = new SimpleDateFormat(TIME_ARGUMENT_FORMAT);
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        int files = 0;
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-from".equals(arg) && i + 1 < args.length) {
+                    from = argumentFormat.parse(args[++i]).getTime();
+                } else if ("-to".equals(arg) && i + 1 < args.length) {
+                    to = argumentFormat.parse(args[++i]).getTime();
+                } else if ("-level".equals(arg) && i + 1 < args.length) {
+                    int level = LEVELS.indexOf(Character.toUpperCase(args[++i].charAt(0)));
+                    decoder.setMinLevel(level < 0 ? 0 : level);
+                } else if ("-tag".equals(arg) && i + 1 < args.length) {
+                    decoder.addTag(args[++i]);
+                } else {
+                    decoder.setTimeRange(from, to);
+                    decoder.decode(new File(arg), out);
+                    if (decoder.isTruncated()) {
+                        out.flush();
+                        System.err.println(arg + ": last record cut off or torn, skipped");
+                    }
+                    files++;
+                }
+            }
+        } catch (ParseException e) {
+            System.err.println("time must be " + TIME_ARGUMENT_FORMAT + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            out.flush();
+        }
+        if (files == 0) {
+            System.err.println("usage: BinaryLogDecoder [-from \"" + TIME_ARGUMENT_FORMAT + "\"] [-to \""
+                    + TIME_ARGUMENT_FORMAT + "\"] [-level V|D|I|W|E|A] [-tag TAG]... file...");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads records written by {@link BinaryLogWriter}. A record cut off at the
+ * end of the stream, e.g. by a killed process, ends the stream, and so does
+ * data that can not be a record once a segment started, such as the torn tail
+ * of a full disk. The records before it are returned, {@link #isTruncated()}
+ * tells that the rest was skipped.
+ */
+public class BinaryLogReader {
+
+    /**
+     * One decoded log record
+     */
+    public static class Record {
+        public long time;
+        public int level;
+        public String tag;
+        public int pid;
+        public int tid;
+        public String message;
+    }
+
+    private final InputStream in;
+    private final List<String> tags = new ArrayList<String>();
+    private byte[] bytes = new byte[256];
+    private long time;
+    private boolean inSegment;
+    private boolean truncated;
+
+    public BinaryLogReader(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024);
+    }
+
+    /**
+     * @return next record, null at the end of stream or of the readable
+     *         records
+     * @throws IOException if the stream is not a binary log
+     */
+    public Record next() throws IOException {
+        if (truncated) {
+            return null;
+        }
+        try {
+            for (;;) {
+                int type = in.read();
+                if (type < 0) {
+                    return null;
+                }
+                if (type == BinaryLogWriter.MAGIC >>> 24) {
+                    readSegmentHeader();
+                } else if (!inSegment) {
+                    throw new StreamCorruptedException("not a binary log");
+                } else if (type == BinaryLogWriter.TYPE_TAG) {
+                    long id = readVarint();
+                    String tag = readUtf8();
+                    if (id < tags.size()) {
+                        tags.set((int) id, tag);
+                    } else if (id == tags.size()) {
+                        tags.add(tag);
+                    } else {
+                        // ids are given in order, a gap is not written by the writer
+                        throw new StreamCorruptedException("bad tag id " + id);
+                    }
+                } else if (type == BinaryLogWriter.TYPE_RECORD) {
+                    return readRecord();
+                } else {
+                    throw new StreamCorruptedException("unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            truncated = inSegment;
+            return null;
+        } catch (StreamCorruptedException e) {
+            if (!inSegment) {
+                throw e;
+            }
+            truncated = true;
+            return null;
+        }
+    }
+
+    /**
+     * @return whether reading stopped at a record cut off or not readable,
+     *         rather than at the end of the last record
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readSegmentHeader() throws IOException {
+        int magic = (BinaryLogWriter.MAGIC >>> 24) << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        if (magic != BinaryLogWriter.MAGIC) {
+            throw new StreamCorruptedException("not a binary log");
+        }
+        int version = readByte();
+        if (version != BinaryLogWriter.VERSION) {
+            throw new IOException("unsupported binary log version " + version);
+        }
+        long base = 0;
+        for (int i = 0; i < 8; i++) {
+            base = base << 8 | readByte();
+        }
+        time = base;
+        tags.clear();
+        inSegment = true;
+    }
+
+    private Record readRecord() throws IOException {
+        long zigzag = readVarint();
+        time += (zigzag >>> 1) ^ -(zigzag & 1);
+        Record record = new Record();
+        record.time = time;
+        record.level = readByte();
+        int tagId = (int) readVarint();
+        record.tag = tagId < tags.size() ? tags.get(tagId) : null;
+        record.pid = (int) readVarint();
+        record.tid = (int) readVarint();
+        record.message = readUtf8();
+        return record;
+    }
+
+    private String readUtf8() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("bad length " + length);
+        }
+        int n = (int) length;
+        int offset = 0;
+        while (offset < n) {
+            if (offset == bytes.length) {
+                // grown as bytes come, a length read from a torn record runs
+                // into the end of stream instead of allocating it all
+                byte[] grown = new byte[(int) Math.min(n, bytes.length * 2L)];
+                System.arraycopy(bytes, 0, grown, 0, offset);
+                bytes = grown;
+            }
+            int read = in.read(bytes, offset, Math.min(n, bytes.length) - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return new String(bytes, 0, n, "UTF-8");
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("bad varint");
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
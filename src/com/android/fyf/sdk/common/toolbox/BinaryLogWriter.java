@@ -0,0 +1,255 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes log records in a compact binary format, decoded offline by
+ * {@link BinaryLogDecoder}
+ * <ul>
+ * <li>segment header: int magic, byte version, long base time in millis</li>
+ * <li>tag definition: byte 1, varint tag id, varint length, UTF-8 tag</li>
+ * <li>log record: byte 2, zigzag varint time delta to the previous record,
+ * byte level, varint tag id, varint pid, varint tid, varint length, UTF-8
+ * message</li>
+ * </ul>
+ * Every writer starts a new segment, so a file may hold several segments one
+ * after another. A tag is written once per segment and then referred to by id.
+ * Records are buffered and handed to the file when the buffer is full, when
+ * {@link #FLUSH_INTERVAL_MILLIS} passed since the last flush, or on
+ * {@link #flush()}. A writer that stops getting records is flushed by
+ * {@link #flushIfDue()}, which {@link LogUtils} runs on its logging thread
+ * twice an interval, so records never wait in the buffer for the next write.
+ */
+public class BinaryLogWriter {
+
+    public static final String FILE_EXTENSION = ".blog";
+
+    static final int MAGIC = 0x53424C47;
+    static final int VERSION = 1;
+    static final int TYPE_TAG = 1;
+    static final int TYPE_RECORD = 2;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int MAX_VARINT_SIZE = 10;
+
+    private final File file;
+    private final OutputStream out;
+    private final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private long lastTime;
+    private long lastFlushTime;
+    private long bytesWritten;
+    private boolean closed;
+
+    /**
+     * open file for append and start a new segment
+     *
+     * @param file
+     * @throws IOException
+     */
+    public BinaryLogWriter(File file) throws IOException {
+        this.file = file;
+        this.out = new FileOutputStream(file, true);
+        lastTime = System.currentTimeMillis();
+        lastFlushTime = lastTime;
+        putInt(MAGIC);
+        buffer[count++] = (byte) VERSION;
+        putLong(lastTime);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return bytes handed to the file, not include buffered ones
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * write a record
+     *
+     * @param time in millis
+     * @param level {@link LogUtils#VERBOSE} to {@link LogUtils#ASSERT}
+     * @param tag
+     * @param pid
+     * @param tid
+     * @param message
+     * @throws IOException
+     */
+    public synchronized void write(long time, int level, String tag, int pid, int tid, CharSequence message)
+            throws IOException {
+        if (closed) {
+            throw new IOException("writer closed: " + file);
+        }
+        if (tag == null) {
+            tag = "";
+        }
+        if (message == null) {
+            message = "null";
+        }
+        Integer tagId = tagIds.get(tag);
+        if (tagId == null) {
+            tagId = tagIds.size();
+            tagIds.put(tag, tagId);
+            int length = utf8Length(tag);
+            ensureCapacity(1 + 2 * MAX_VARINT_SIZE + length);
+            buffer[count++] = TYPE_TAG;
+            putVarint(tagId);
+            putVarint(length);
+            putUtf8(tag);
+        }
+        int length = utf8Length(message);
+        ensureCapacity(2 + 6 * MAX_VARINT_SIZE + length);
+        buffer[count++] = TYPE_RECORD;
+        long delta = time - lastTime;
+        putVarint((delta << 1) ^ (delta >> 63));
+        lastTime = time;
+        buffer[count++] = (byte) level;
+        putVarint(tagId);
+        putVarint(pid);
+        putVarint(tid);
+        putVarint(length);
+        putUtf8(message);
+        if (time - lastFlushTime >= FLUSH_INTERVAL_MILLIS || time < lastFlushTime) {
+            flush();
+        }
+    }
+
+    /**
+     * hand buffered records to the file
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (count > 0 && !closed) {
+            out.write(buffer, 0, count);
+            bytesWritten += count;
+            count = 0;
+        }
+        lastFlushTime = System.currentTimeMillis();
+    }
+
+    /**
+     * hand buffered records to the file if the last flush was at least
+     * {@link #FLUSH_INTERVAL_MILLIS} ago, does nothing once closed
+     *
+     * @throws IOException
+     */
+    public synchronized void flushIfDue() throws IOException {
+        long now = System.currentTimeMillis();
+        if (count > 0 && !closed && (now - lastFlushTime >= FLUSH_INTERVAL_MILLIS || now < lastFlushTime)) {
+            flush();
+        }
+    }
+
+    /**
+     * flush and close
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        if (count + size <= buffer.length) {
+            return;
+        }
+        flush();
+        if (size > buffer.length) {
+            buffer = new byte[size];
+        }
+    }
+
+    private void putInt(int value) {
+        buffer[count++] = (byte) (value >>> 24);
+        buffer[count++] = (byte) (value >>> 16);
+        buffer[count++] = (byte) (value >>> 8);
+        buffer[count++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private static int utf8Length(CharSequence s) {
+        int length = 0;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * must write exactly {@link #utf8Length(CharSequence)} bytes, an unpaired
+     * surrogate is written as '?'
+     */
+    private void putUtf8(CharSequence s) {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (isSurrogate(c)) {
+                buffer[count++] = '?';
+            } else {
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Build;
+
+/**
+ * Deserializes many files in parallel
+ * <ul>
+ * <li>{@link #load(List)} read all files, results in the order of the paths</li>
+ * <li>{@link #load(List, int[])} the same, files of a higher priority read
+ * first</li>
+ * <li>{@link #start(List, int[])} start reading, {@link Batch#await(int)}
+ * waits for one file only</li>
+ * </ul>
+ * Files are read by at most the parallelism given of tasks of the executor,
+ * by default a pool of the loader's own that queues tasks when busy, so
+ * {@link #start(List, int[])} returns at once without reading on the calling
+ * thread. The tasks take files from a queue ordered by priority, then by
+ * position. A file that can not be read gives a {@link Result} with its
+ * error, the others are still read.
+ * <p>
+ * Waiting threads help: {@link Batch#await(int)} reads its file itself if it
+ * was not started yet, so a file needed at once never waits behind the queue,
+ * and {@link Batch#awaitAll()}, so also {@link #load(List)}, reads files of
+ * the queue on the calling thread until it is empty. A thread that must not
+ * decode, such as the main thread, calls {@link #start(List, int[])} and
+ * waits for the files it needs only.
+ * <p>
+ * Files are decoded with {@link SerializeUtils#decode(java.io.InputStream)},
+ * small files are read whole with one read first.
+ */
+public final class BulkLoader {
+    private static final String TAG = "BulkLoader";
+
+    /** priority of files needed for the first screen **/
+    public static final int PRIORITY_HIGH = 10;
+    public static final int PRIORITY_NORMAL = 0;
+
+    /** files up to this size are read whole before decoding **/
+    private static final int SMALL_FILE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_DEFAULT_PARALLELISM = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadLocal<byte[]> BYTES = new ThreadLocal<byte[]>();
+
+    private static volatile BulkLoader sDefault;
+
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * @param executor runs the reading tasks, null to read on the calling
+     *            thread only. It should queue tasks when busy, an executor
+     *            running them on the caller makes {@link #start(List, int[])}
+     *            read on the caller.
+     * @param parallelism most tasks reading at a time
+     */
+    public BulkLoader(Executor executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * loader with a pool of its own of parallelism threads, tasks wait in its
+     * queue when they are busy. Threads idle for 30 seconds end, before
+     * Android 2.3 they stay.
+     *
+     * @param parallelism
+     */
+    public BulkLoader(int parallelism) {
+        this(newPool(Math.max(1, parallelism)), parallelism);
+    }
+
+    /**
+     * @return loader with a pool of its own, up to one thread per processor
+     *         and at most 4
+     */
+    public static BulkLoader getDefault() {
+        if (sDefault == null) {
+            synchronized (BulkLoader.class) {
+                if (sDefault == null) {
+                    sDefault = new BulkLoader(Math.min(MAX_DEFAULT_PARALLELISM, Runtime.getRuntime()
+                            .availableProcessors()));
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return executor running the reading tasks, null if there is none
+     */
+    Executor getExecutor() {
+        return executor;
+    }
+
+    private static Executor newPool(int threads) {
+        // threads are started as tasks come and then wait for more, a pool of
+        // its own is never busy with other work and never runs on the caller
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, TAG + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            // idle threads end, a loader no longer used keeps no thread
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * read all files, waiting for them
+     *
+     * @param paths
+     * @return a result for each path, in the same order
+     * @throws InterruptedException
+     */
+    public List<Result> load(List<String> paths) throws InterruptedException {
+        return start(paths, null).awaitAll();
+    }
+
+    /**
+     * read all files, those of a higher priority first, waiting for them
+     *
+     * @param paths
+     * @param priorities priority of each path, {@link #PRIORITY_HIGH} or any
+     *            int, higher first, null for all {@link #PRIORITY_NORMAL}
+     * @return a result for each path, in the same order
+     * @throws InterruptedException
+     */
+    public List<Result> load(List<String> paths, int[] priorities) throws InterruptedException {
+        return start(paths, priorities).awaitAll();
+    }
+
+    /**
+     * start reading files, the results are got from the batch returned
+     *
+     * @param paths
+     * @param priorities priority of each path, higher first, null for all
+     *            {@link #PRIORITY_NORMAL}
+     * @return batch of the files
+     */
+    public Batch start(List<String> paths, int[] priorities) {
+        if (priorities != null && priorities.length != paths.size()) {
+            throw new IllegalArgumentException(priorities.length + " priorities for " + paths.size() + " paths");
+        }
+        Batch batch = new Batch(paths, priorities);
+        if (executor == null) {
+            return batch;
+        }
+        int tasks = Math.min(parallelism, paths.size());
+        for (int i = 0; i < tasks; i++) {
+            try {
+                executor.execute(batch);
+            } catch (RejectedExecutionException e) {
+                // a custom executor shut down or full, files left are read by
+                // the threads waiting for them
+                LogUtils.w(TAG, "reading task rejected: " + e);
+                break;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @param path
+     * @return object read from path
+     */
+    static Object read(String path) throws IOException, ClassNotFoundException {
+        File file = new File(path);
+        InputStream in = new FileInputStream(file);
+        try {
+            long length = file.length();
+            if (length > 0 && length <= SMALL_FILE_SIZE) {
+                byte[] bytes = BYTES.get();
+                if (bytes == null) {
+                    bytes = new byte[SMALL_FILE_SIZE];
+                } else {
+                    BYTES.set(null);
+                }
+                try {
+                    int count = readFully(in, bytes, (int) length);
+                    return SerializeUtils.decode(new ByteArrayInputStream(bytes, 0, count));
+                } finally {
+                    BYTES.set(bytes);
+                }
+            }
+            return SerializeUtils.decode(new BufferedInputStream(in, BUFFER_SIZE));
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LogUtils.e(TAG, "close " + path + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return bytes read, less than length only if the file got shorter
+     */
+    private static int readFully(InputStream in, byte[] bytes, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int n = in.read(bytes, count, length - count);
+            if (n < 0) {
+                if (count == 0) {
+                    throw new EOFException("file is empty");
+                }
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Object read from a file, or the error reading it
+     */
+    public static final class Result {
+        private final String path;
+        private final Object value;
+        private final Throwable error;
+
+        Result(String path, Object value, Throwable error) {
+            this.path = path;
+            this.value = value;
+            this.error = error;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return object read, null if there was an error
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * @return error reading the file, such as {@link java.io.FileNotFoundException}
+         *         or {@link ClassNotFoundException}, null if it was read
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return TAG + ".Result[" + path + (error == null ? "" : ",error=" + error) + "]";
+        }
+    }
+
+    /**
+     * Files being read, it is also the task reading them
+     */
+    public static final class Batch implements Runnable {
+        private final List<String> paths;
+        private final int[] priorities;
+        private final PriorityQueue<Integer> queue;
+        private final Result[] results;
+        /** true once a thread took the file **/
+        private final boolean[] taken;
+        private int done;
+
+        Batch(List<String> paths, int[] priorities) {
+            this.paths = new ArrayList<String>(paths);
+            this.priorities = priorities == null ? new int[paths.size()] : priorities.clone();
+            this.results = new Result[paths.size()];
+            this.taken = new boolean[paths.size()];
+            this.queue = new PriorityQueue<Integer>(Math.max(1, paths.size()), new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int pa = Batch.this.priorities[a];
+                    int pb = Batch.this.priorities[b];
+                    if (pa != pb) {
+                        return pa > pb ? -1 : 1;
+                    }
+                    return a.compareTo(b);
+                }
+            });
+            for (int i = 0; i < results.length; i++) {
+                queue.add(i);
+            }
+        }
+
+        /**
+         * read files from the queue until it is empty
+         */
+        @Override
+        public void run() {
+            int index;
+            while ((index = next()) >= 0) {
+                readAt(index);
+            }
+        }
+
+        /**
+         * @return count of files
+         */
+        public int size() {
+            return results.length;
+        }
+
+        /**
+         * @return whether all files were read
+         */
+        public synchronized boolean isDone() {
+            return done == results.length;
+        }
+
+        /**
+         * wait for one file, read it on this thread if it was not started
+         *
+         * @param index position of the file in the paths
+         * @return result of the file
+         * @throws InterruptedException
+         */
+        public Result await(int index) throws InterruptedException {
+            boolean claimed;
+            synchronized (this) {
+                claimed = !taken[index];
+                if (claimed) {
+                    taken[index] = true;
+                    queue.remove(Integer.valueOf(index));
+                }
+            }
+            if (claimed) {
+                readAt(index);
+            }
+            synchronized (this) {
+                while (results[index] == null) {
+                    wait();
+                }
+                return results[index];
+            }
+        }
+
+        /**
+         * wait for all files, reading files of the queue on this thread
+         * meanwhile
+         *
+         * @return a result for each path, in the same order
+         * @throws InterruptedException
+         */
+        public List<Result> awaitAll() throws InterruptedException {
+            run();
+            synchronized (this) {
+                while (done < results.length) {
+                    wait();
+                }
+                return Arrays.asList(results.clone());
+            }
+        }
+
+        private synchronized int next() {
+            Integer index = queue.poll();
+            if (index == null) {
+                return -1;
+            }
+            taken[index] = true;
+            return index;
+        }
+
+        private void readAt(int index) {
+            String path = paths.get(index);
+            Result result;
+            try {
+                result = new Result(path, read(path), null);
+            } catch (Exception e) {
+                result = new Result(path, null, e);
+            } catch (OutOfMemoryError e) {
+                result = new Result(path, null, e);
+            } catch (Error e) {
+                complete(index, new Result(path, null, e));
+                throw e;
+            }
+            complete(index, result);
+        }
+
+        private synchronized void complete(int index, Result result) {
+            results[index] = result;
+            done++;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link SerializeUtils.Codec} compressing what another codec writes
+ * <ul>
+ * <li>{@link #deflate(SerializeUtils.Codec, int)} deflate at a level, 1
+ * fastest to 9 smallest</li>
+ * <li>{@link #lz(SerializeUtils.Codec)} fast LZ of {@link LzStream}, larger
+ * than deflate but several times faster</li>
+ * <li>{@link #isCompressed(byte[], int)} whether data starts with the header
+ * of a compressed payload</li>
+ * </ul>
+ * A payload is a header of 4 bytes, 0xC5 0x1F, the method and its level, then
+ * the compressed payload of the codec wrapped. The codec streams into the
+ * compressor and the decompressor streams into the codec, so no array holds
+ * the whole payload. {@link SerializeUtils} detects the header, so compressed
+ * data is read whatever codec is set, and data written before compression was
+ * set is still read.
+ * <p>
+ * The {@link Deflater}, {@link Inflater} and buffers are kept per thread for
+ * the next call.
+ */
+public final class CompressedCodec implements SerializeUtils.Codec {
+
+    /** default level of deflate, 1 to 9 **/
+    public static final int DEFAULT_LEVEL = 6;
+
+    private static final byte MAGIC_0 = (byte) 0xC5;
+    private static final byte MAGIC_1 = (byte) 0x1F;
+    private static final int METHOD_DEFLATE = 1;
+    private static final int METHOD_LZ = 2;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final ThreadLocal<Zip> ZIPS = new ThreadLocal<Zip>();
+
+    private final SerializeUtils.Codec codec;
+    private final int method;
+    private final int level;
+
+    private CompressedCodec(SerializeUtils.Codec codec, int method, int level) {
+        this.codec = codec == null ? SerializeUtils.JAVA_CODEC : codec;
+        this.method = method;
+        this.level = level;
+    }
+
+    /**
+     * @param codec writes the objects, null for Java serialization
+     * @param level 1 fastest to 9 smallest
+     * @return codec deflating the payload of codec
+     */
+    public static CompressedCodec deflate(SerializeUtils.Codec codec, int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("deflate level out of 1..9: " + level);
+        }
+        return new CompressedCodec(codec, METHOD_DEFLATE, level);
+    }
+
+    /**
+     * @param codec writes the objects, null for Java serialization
+     * @return codec compressing the payload of codec with {@link LzStream}
+     */
+    public static CompressedCodec lz(SerializeUtils.Codec codec) {
+        return new CompressedCodec(codec, METHOD_LZ, 0);
+    }
+
+    /**
+     * @return codec writing the objects
+     */
+    public SerializeUtils.Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @param header first bytes of data
+     * @param length bytes in header
+     * @return whether data is a payload of a {@link CompressedCodec}, of any
+     *         method
+     */
+    public static boolean isCompressed(byte[] header, int length) {
+        return length >= 3 && header[0] == MAGIC_0 && header[1] == MAGIC_1
+                && (header[2] == METHOD_DEFLATE || header[2] == METHOD_LZ);
+    }
+
+    @Override
+    public boolean isEncoded(byte[] header, int length) {
+        return isCompressed(header, length);
+    }
+
+    @Override
+    public void encode(Object object, OutputStream out) throws IOException {
+        out.write(new byte[] { MAGIC_0, MAGIC_1, (byte) method, (byte) level });
+        if (method == METHOD_LZ) {
+            LzStream.Compressor lz = new LzStream.Compressor(out);
+            codec.encode(object, lz);
+            lz.finish();
+            return;
+        }
+        Zip zip = obtain();
+        try {
+            zip.deflater.setLevel(level);
+            DeflaterStream deflated = new DeflaterStream(out, zip);
+            codec.encode(object, deflated);
+            deflated.finish();
+        } finally {
+            recycle(zip);
+        }
+    }
+
+    @Override
+    public Object decode(InputStream in) throws IOException, ClassNotFoundException {
+        return decode(in, codec);
+    }
+
+    /**
+     * read a compressed payload of any method
+     *
+     * @param in
+     * @param codec tried first on the payload, then the codecs of
+     *            {@link SerializeUtils}
+     */
+    static Object decode(InputStream in, SerializeUtils.Codec codec) throws IOException, ClassNotFoundException {
+        byte[] header = new byte[4];
+        for (int i = 0; i < header.length; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("compressed header truncated");
+            }
+            header[i] = (byte) b;
+        }
+        if (!isCompressed(header, header.length)) {
+            throw new StreamCorruptedException("not a compressed payload");
+        }
+        if (header[2] == METHOD_LZ) {
+            LzStream.Decompressor lz = new LzStream.Decompressor(in);
+            try {
+                return SerializeUtils.decode(lz, codec);
+            } finally {
+                lz.release();
+            }
+        }
+        Zip zip = obtain();
+        try {
+            return SerializeUtils.decode(new InflaterStream(in, zip), codec);
+        } finally {
+            recycle(zip);
+        }
+    }
+
+    private static Zip obtain() {
+        Zip zip = ZIPS.get();
+        if (zip == null) {
+            return new Zip();
+        }
+        ZIPS.set(null);
+        zip.deflater.reset();
+        zip.inflater.reset();
+        return zip;
+    }
+
+    private static void recycle(Zip zip) {
+        ZIPS.set(zip);
+    }
+
+    /**
+     * Deflater, inflater and buffers of a thread
+     */
+    private static final class Zip {
+        final Deflater deflater = new Deflater(DEFAULT_LEVEL);
+        final Inflater inflater = new Inflater();
+        /** compressed bytes **/
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        /** bytes to deflate, or inflated **/
+        final byte[] input = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Deflates to a stream through the buffers of a {@link Zip}, small writes
+     * are gathered before they are passed to the deflater
+     */
+    private static final class DeflaterStream extends OutputStream {
+        private final OutputStream out;
+        private final Zip zip;
+        private int count;
+
+        DeflaterStream(OutputStream out, Zip zip) {
+            this.out = out;
+            this.zip = zip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == zip.input.length) {
+                deflateInput();
+            }
+            zip.input[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len > zip.input.length - count) {
+                deflateInput();
+                if (len >= zip.input.length) {
+                    deflate(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, zip.input, count, len);
+            count += len;
+        }
+
+        void finish() throws IOException {
+            deflateInput();
+            Deflater deflater = zip.deflater;
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain();
+            }
+        }
+
+        private void deflateInput() throws IOException {
+            if (count > 0) {
+                deflate(zip.input, 0, count);
+                count = 0;
+            }
+        }
+
+        private void deflate(byte[] b, int off, int len) throws IOException {
+            Deflater deflater = zip.deflater;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            int deflated = zip.deflater.deflate(zip.buffer, 0, zip.buffer.length);
+            if (deflated > 0) {
+                out.write(zip.buffer, 0, deflated);
+            }
+        }
+    }
+
+    /**
+     * Inflates from a stream through the buffers of a {@link Zip}, it ends at
+     * the end of the deflated data. Small reads are served from a block
+     * inflated ahead.
+     */
+    private static final class InflaterStream extends InputStream {
+        private final InputStream in;
+        private final Zip zip;
+        private int position;
+        private int limit;
+
+        InflaterStream(InputStream in, Zip zip) {
+            this.in = in;
+            this.zip = zip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return zip.input[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit) {
+                if (len >= zip.input.length) {
+                    return inflate(b, off, len);
+                }
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(zip.input, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        private boolean fill() throws IOException {
+            int count = inflate(zip.input, 0, zip.input.length);
+            position = 0;
+            limit = Math.max(count, 0);
+            return count > 0;
+        }
+
+        /**
+         * @return bytes inflated to b, -1 at the end of the deflated data
+         */
+        private int inflate(byte[] b, int off, int len) throws IOException {
+            Inflater inflater = zip.inflater;
+            try {
+                int count;
+                while ((count = inflater.inflate(b, off, len)) == 0) {
+                    if (inflater.finished()) {
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new StreamCorruptedException("deflated data needs a dictionary");
+                    }
+                    if (inflater.needsInput()) {
+                        int read = in.read(zip.buffer, 0, zip.buffer.length);
+                        if (read < 0) {
+                            throw new EOFException("deflated data truncated");
+                        }
+                        inflater.setInput(zip.buffer, 0, read);
+                    }
+                }
+                return count;
+            } catch (DataFormatException e) {
+                StreamCorruptedException corrupted = new StreamCorruptedException("deflated data corrupt");
+                corrupted.initCause(e);
+                throw corrupted;
+            }
+        }
+    }
+}
@@ -0,0 +1,687 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of files in a directory, bounded by their total size
+ * <ul>
+ * <li>{@link #get(String)} snapshot of an entry, null on a miss</li>
+ * <li>{@link #edit(String)} write an entry, one editor per entry at a time</li>
+ * <li>{@link #remove(String)} remove an entry</li>
+ * <li>{@link #getHitCount()}, {@link #getMissCount()},
+ * {@link #getEvictionCount()} metrics</li>
+ * </ul>
+ * An entry is stored in a file named by the SHA-256 of its key, see
+ * {@link #hashKey(String)}. The index is an append-only journal of text lines
+ * in the directory:
+ *
+ * <pre>
+ * CLEAN &lt;hash&gt; &lt;length&gt; &lt;key&gt;   an entry was written
+ * READ &lt;hash&gt;                     an entry was read, for the LRU order
+ * REMOVE &lt;hash&gt;                   an entry was removed or evicted
+ * </pre>
+ *
+ * CLEAN and REMOVE lines are written to the file at once, READ lines are
+ * buffered until the next one or {@link #flush()}. The journal is rewritten,
+ * atomically, when most of its lines are redundant.
+ * Least recently used entries are evicted when the total size is over the
+ * maximum.
+ * <p>
+ * An editor writes to a temp file which replaces the entry file on
+ * {@link Editor#commit()}. A snapshot holds the entry file open, so it can be
+ * read to the end even when the entry is replaced or evicted meanwhile.
+ */
+public final class DiskLruCache implements Closeable {
+    private static final String TAG = "DiskLruCache";
+
+    static final String JOURNAL_FILE = "journal";
+    static final String MAGIC = "com.android.fyf.sdk.common.toolbox.DiskLruCache";
+    static final String VERSION = "1";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final File journalFile;
+    private long maxSize;
+    private long size;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+    private Writer journal;
+    private int redundantOps;
+    private long hitCount;
+    private long missCount;
+    private long putCount;
+    private long evictionCount;
+
+    /**
+     * open the cache in directory, creating it if needed
+     *
+     * @param directory used by this cache only
+     * @param maxSize bytes
+     * @throws IOException
+     */
+    public DiskLruCache(File directory, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.directory = directory;
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.maxSize = maxSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can not create " + directory);
+        }
+        boolean clean = readJournal();
+        deleteUnknownFiles();
+        if (clean) {
+            journal = openJournal();
+        } else {
+            rebuildJournal();
+        }
+        trimToSize();
+    }
+
+    /**
+     * @param key
+     * @return lower case hex of the SHA-256 of key, used as file name
+     */
+    public static String hashKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8"));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param key
+     * @return snapshot of the entry, must be closed, or null if there is no
+     *         entry for key
+     * @throws IOException
+     */
+    public synchronized Snapshot get(String key) throws IOException {
+        checkNotClosed();
+        String hash = hashKey(key);
+        Entry entry = entries.get(hash);
+        if (entry == null || !entry.readable || !entry.key.equals(key)) {
+            missCount++;
+            return null;
+        }
+        InputStream in;
+        try {
+            in = new FileInputStream(entry.getCleanFile());
+        } catch (FileNotFoundException e) {
+            // deleted behind the cache's back
+            removeEntry(entry);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        // buffered, written with the next change or flush(), so a read costs
+        // no write under the lock; a READ line lost in a crash only ages the
+        // entry
+        journal.write(READ + ' ' + hash + '\n');
+        redundantOps++;
+        compactIfNeeded();
+        return new Snapshot(key, entry.length, in);
+    }
+
+    /**
+     * @param key
+     * @return editor of the entry, or null if another edit of it is in
+     *         progress
+     * @throws IOException
+     */
+    public synchronized Editor edit(String key) throws IOException {
+        checkNotClosed();
+        String hash = hashKey(key);
+        Entry entry = entries.get(hash);
+        if (entry != null && entry.editor != null) {
+            return null;
+        }
+        if (entry == null) {
+            entry = new Entry(key, hash);
+            entries.put(hash, entry);
+        } else if (!entry.key.equals(key)) {
+            // a hash collision, the new key takes the entry over
+            LogUtils.w(TAG, "key collision: " + entry.key + ", " + key);
+            if (entry.readable) {
+                removeEntry(entry);
+            }
+            entry = new Entry(key, hash);
+            entries.put(hash, entry);
+        }
+        entry.editor = new Editor(entry);
+        return entry.editor;
+    }
+
+    /**
+     * @param key
+     * @return false if there is no entry for key, or it is being edited
+     * @throws IOException
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        checkNotClosed();
+        Entry entry = entries.get(hashKey(key));
+        if (entry == null || !entry.readable || !entry.key.equals(key) || entry.editor != null) {
+            return false;
+        }
+        removeEntry(entry);
+        return true;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return bytes of the entries
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param maxSize bytes, entries are evicted at once if needed
+     * @throws IOException
+     */
+    public synchronized void setMaxSize(long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        trimToSize();
+    }
+
+    /**
+     * @return count of readable entries
+     */
+    public synchronized int getEntryCount() {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.readable) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return count of entries committed
+     */
+    public synchronized long getPutCount() {
+        return putCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * write buffered journal lines, e.g. READ lines of recent hits, to the
+     * file
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        checkNotClosed();
+        journal.flush();
+    }
+
+    /**
+     * close the journal, entries stay on disk. Editors still open can not
+     * commit.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        for (Entry entry : new ArrayList<Entry>(entries.values())) {
+            if (entry.editor != null) {
+                entry.editor.abortLocked();
+            }
+        }
+        journal.close();
+        journal = null;
+    }
+
+    /**
+     * close the cache and delete all of its files
+     *
+     * @throws IOException
+     */
+    public void delete() throws IOException {
+        close();
+        new FileWalker().delete(directory, false);
+    }
+
+    @Override
+    public synchronized String toString() {
+        int accesses = (int) (hitCount + missCount);
+        int hitPercent = accesses == 0 ? 0 : (int) (100 * hitCount / accesses);
+        return TAG + "[size=" + size + ",maxSize=" + maxSize + ",hits=" + hitCount + ",misses=" + missCount
+                + ",hitRate=" + hitPercent + "%,evictions=" + evictionCount + "]";
+    }
+
+    private void checkNotClosed() {
+        if (journal == null) {
+            throw new IllegalStateException("cache is closed");
+        }
+    }
+
+    /**
+     * @return false if the journal has to be rewritten
+     */
+    private boolean readJournal() throws IOException {
+        if (!journalFile.exists()) {
+            return false;
+        }
+        LineReader reader = new LineReader(journalFile, "UTF-8");
+        boolean clean = true;
+        int lines = 0;
+        try {
+            CharSequence magic = reader.readLine();
+            if (magic == null || !MAGIC.equals(magic.toString())) {
+                return false;
+            }
+            CharSequence version = reader.readLine();
+            if (version == null || !VERSION.equals(version.toString())) {
+                return false;
+            }
+            CharSequence line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                if (!readJournalLine(line.toString())) {
+                    clean = false;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            Entry entry = i.next();
+            if (entry.getCleanFile().isFile()) {
+                size += entry.length;
+            } else {
+                i.remove();
+                clean = false;
+            }
+        }
+        redundantOps = lines - entries.size();
+        return clean;
+    }
+
+    /**
+     * @return false if line is malformed, e.g. the last line cut by a crash
+     */
+    private boolean readJournalLine(String line) {
+        int first = line.indexOf(' ');
+        if (first < 0) {
+            return false;
+        }
+        String op = line.substring(0, first);
+        if (CLEAN.equals(op)) {
+            int second = line.indexOf(' ', first + 1);
+            int third = second < 0 ? -1 : line.indexOf(' ', second + 1);
+            if (third < 0) {
+                return false;
+            }
+            String hash = line.substring(first + 1, second);
+            long length;
+            try {
+                length = Long.parseLong(line.substring(second + 1, third));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            Entry entry = new Entry(unescape(line.substring(third + 1)), hash);
+            entry.length = length;
+            entry.readable = true;
+            entries.put(hash, entry);
+            return true;
+        }
+        String hash = line.substring(first + 1);
+        if (READ.equals(op)) {
+            entries.get(hash);
+            return true;
+        }
+        if (REMOVE.equals(op)) {
+            entries.remove(hash);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * delete temp files of unfinished edits and files not in the journal
+     */
+    private void deleteUnknownFiles() {
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        Set<String> known = new HashSet<String>();
+        known.add(JOURNAL_FILE);
+        for (String hash : entries.keySet()) {
+            known.add(hash);
+        }
+        for (String name : names) {
+            if (!known.contains(name)) {
+                File file = new File(directory, name);
+                if (file.isFile() && !file.delete()) {
+                    LogUtils.w(TAG, "delete unknown file failed: " + file);
+                }
+            }
+        }
+    }
+
+    private Writer openJournal() throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"));
+    }
+
+    /**
+     * write the journal again with only the live entries
+     */
+    private void rebuildJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        final List<Entry> live = new ArrayList<Entry>(entries.values());
+        AtomicFileWriter.write(journalFile, new AtomicFileWriter.Content() {
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                Writer writer = new OutputStreamWriter(out, "UTF-8");
+                writer.write(MAGIC + '\n' + VERSION + '\n');
+                for (Entry entry : live) {
+                    if (entry.readable) {
+                        writer.write(cleanLine(entry));
+                    }
+                }
+                writer.flush();
+            }
+        }, false);
+        journal = openJournal();
+        redundantOps = 0;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (redundantOps >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOps >= entries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private static String cleanLine(Entry entry) {
+        return CLEAN + ' ' + entry.hash + ' ' + entry.length + ' ' + escape(entry.key) + '\n';
+    }
+
+    private void removeEntry(Entry entry) throws IOException {
+        File file = entry.getCleanFile();
+        if (file.exists() && !file.delete()) {
+            LogUtils.w(TAG, "delete entry failed: " + file);
+        }
+        if (entry.readable) {
+            size -= entry.length;
+        }
+        entries.remove(entry.hash);
+        journal.write(REMOVE + ' ' + entry.hash + '\n');
+        journal.flush();
+        redundantOps += 2;
+        compactIfNeeded();
+    }
+
+    private void trimToSize() throws IOException {
+        if (size <= maxSize) {
+            return;
+        }
+        List<Entry> eldest = new ArrayList<Entry>();
+        long excess = size - maxSize;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.readable && entry.editor == null) {
+                eldest.add(entry);
+                excess -= entry.length;
+                if (excess <= 0) {
+                    break;
+                }
+            }
+        }
+        for (Entry entry : eldest) {
+            removeEntry(entry);
+            evictionCount++;
+        }
+    }
+
+    private static String escape(String key) {
+        StringBuilder s = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '\\') {
+                s.append("\\\\");
+            } else if (c == '\n') {
+                s.append("\\n");
+            } else if (c == '\r') {
+                s.append("\\r");
+            } else {
+                s.append(c);
+            }
+        }
+        return s.toString();
+    }
+
+    private static String unescape(String key) {
+        StringBuilder s = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '\\' && i + 1 < key.length()) {
+                char next = key.charAt(++i);
+                s.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                s.append(c);
+            }
+        }
+        return s.toString();
+    }
+
+    private final class Entry {
+        final String key;
+        final String hash;
+        long length;
+        /** true once committed **/
+        boolean readable;
+        Editor editor;
+
+        Entry(String key, String hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+
+        File getCleanFile() {
+            return new File(directory, hash);
+        }
+
+        File getTempFile() {
+            return new File(directory, hash + TEMP_SUFFIX);
+        }
+    }
+
+    /**
+     * Content of an entry as it was when {@link DiskLruCache#get(String)} was
+     * called
+     */
+    public static final class Snapshot implements Closeable {
+        private final String key;
+        private final long length;
+        private final InputStream in;
+
+        Snapshot(String key, long length, InputStream in) {
+            this.key = key;
+            this.length = length;
+            this.in = in;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return bytes of the entry
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return stream of the entry, closed by {@link #close()}
+         */
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes an entry, which is visible to {@link DiskLruCache#get(String)}
+     * once committed
+     */
+    public final class Editor {
+        private final Entry entry;
+        private boolean done;
+
+        Editor(Entry entry) {
+            this.entry = entry;
+        }
+
+        public String getKey() {
+            return entry.key;
+        }
+
+        /**
+         * @return stream to the new content, must be closed before
+         *         {@link #commit()}
+         * @throws IOException
+         */
+        public OutputStream newOutputStream() throws IOException {
+            return new FileOutputStream(entry.getTempFile());
+        }
+
+        /**
+         * @return file to write the new content to, e.g. by
+         *         {@link FileUtils#writeFile(String, InputStream)}
+         */
+        public File getFile() {
+            return entry.getTempFile();
+        }
+
+        /**
+         * publish the new content, evicting entries if the cache is full
+         *
+         * @throws IOException if nothing was written, the edit is aborted
+         *             then
+         */
+        public void commit() throws IOException {
+            synchronized (DiskLruCache.this) {
+                if (done) {
+                    throw new IllegalStateException("edit already finished");
+                }
+                checkNotClosed();
+                File temp = entry.getTempFile();
+                if (!temp.isFile()) {
+                    abortLocked();
+                    throw new IOException("nothing written for " + entry.key);
+                }
+                long length = temp.length();
+                if (!temp.renameTo(entry.getCleanFile())) {
+                    abortLocked();
+                    throw new IOException("rename " + temp + " failed");
+                }
+                done = true;
+                entry.editor = null;
+                if (entry.readable) {
+                    size -= entry.length;
+                }
+                entry.readable = true;
+                entry.length = length;
+                size += length;
+                putCount++;
+                // the access order may have moved it, it is the newest
+                entries.get(entry.hash);
+                journal.write(cleanLine(entry));
+                journal.flush();
+                redundantOps++;
+                trimToSize();
+                compactIfNeeded();
+            }
+        }
+
+        /**
+         * drop the new content, the entry keeps its old one
+         */
+        public void abort() {
+            synchronized (DiskLruCache.this) {
+                if (!done) {
+                    abortLocked();
+                }
+            }
+        }
+
+        void abortLocked() {
+            done = true;
+            entry.editor = null;
+            File temp = entry.getTempFile();
+            if (temp.exists() && !temp.delete()) {
+                LogUtils.w(TAG, "delete temp failed: " + temp);
+            }
+            if (!entry.readable && entries.get(entry.hash) == entry) {
+                entries.remove(entry.hash);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes a text file or stream in one pass, chunk by chunk
+ * <ul>
+ * <li>{@link #next()} decode the next chunk</li>
+ * <li>{@link #estimateChars()} expected count of chars, to size the result</li>
+ * </ul>
+ * Bytes are read through a {@link FileChannel}, or a channel over the stream,
+ * and decoded into a char buffer, both buffers are kept per thread and reused
+ * by the next decoder of the same thread. The byte buffer is a heap one, as
+ * {@link CharsetDecoder} decodes arrays much faster than direct buffers. Malformed input is replaced, as
+ * {@link java.io.InputStreamReader} does.
+ */
+final class FileDecoder {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>();
+
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final long size;
+    private final CharsetDecoder decoder;
+    private Buffers buffers;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private boolean endOfInput;
+    private boolean lastDecoded;
+    private boolean flushed;
+
+    /**
+     * @param file
+     * @param charset
+     * @throws IOException if file can not be opened
+     */
+    FileDecoder(File file, Charset charset) throws IOException {
+        this(new FileInputStream(file), charset);
+    }
+
+    /**
+     * @param in closed by {@link #close()}
+     * @param charset
+     * @throws IOException
+     */
+    FileDecoder(InputStream in, Charset charset) throws IOException {
+        this.in = in;
+        if (in instanceof FileInputStream) {
+            FileChannel fileChannel = ((FileInputStream) in).getChannel();
+            channel = fileChannel;
+            size = fileChannel.size() - fileChannel.position();
+        } else {
+            channel = Channels.newChannel(in);
+            // remaining length for asset streams, a guess for others
+            size = in.available();
+        }
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        buffers = BUFFERS.get();
+        if (buffers == null) {
+            buffers = new Buffers();
+        } else {
+            // taken by this decoder until it is closed
+            BUFFERS.set(null);
+        }
+        bytes = buffers.bytes;
+        chars = buffers.chars;
+        bytes.clear();
+        bytes.flip();
+    }
+
+    /**
+     * @return bytes to decode as known when opened
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return expected count of chars of the whole file, at most
+     *         {@link Integer#MAX_VALUE} - 8
+     */
+    int estimateChars() {
+        double chars = size * (double) decoder.averageCharsPerByte();
+        return (int) Math.min(Integer.MAX_VALUE - 8, (long) chars + 16);
+    }
+
+    /**
+     * decode the next chunk
+     *
+     * @return chars decoded, valid until the next call, or null at end of
+     *         file
+     * @throws IOException
+     */
+    CharBuffer next() throws IOException {
+        if (flushed) {
+            return null;
+        }
+        chars.clear();
+        for (;;) {
+            if (!endOfInput) {
+                if (decoder.decode(bytes, chars, false).isOverflow()) {
+                    break;
+                }
+                bytes.compact();
+                int read = channel.read(bytes);
+                bytes.flip();
+                if (read < 0) {
+                    endOfInput = true;
+                }
+                continue;
+            }
+            if (!lastDecoded) {
+                if (decoder.decode(bytes, chars, true).isOverflow()) {
+                    break;
+                }
+                lastDecoded = true;
+            }
+            if (decoder.flush(chars).isUnderflow()) {
+                flushed = true;
+            }
+            break;
+        }
+        chars.flip();
+        return flushed && !chars.hasRemaining() ? null : chars;
+    }
+
+    /**
+     * close the file and give the buffers back for reuse
+     */
+    void close() throws IOException {
+        if (buffers != null) {
+            BUFFERS.set(buffers);
+            buffers = null;
+        }
+        in.close();
+    }
+
+    private static final class Buffers {
+        final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    }
+}
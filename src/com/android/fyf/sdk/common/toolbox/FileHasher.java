@@ -0,0 +1,529 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Checksums of files, and duplicate files of a tree
+ * <ul>
+ * <li>{@link #hash(File, Algorithm)} hash a file</li>
+ * <li>{@link #hash(File, Algorithm, Executor)} hash a large file in parallel
+ * parts where the algorithm allows it</li>
+ * <li>{@link #toHex(byte[])} hash as lower case hex</li>
+ * <li>{@link #findDuplicates(File, Algorithm)} groups of files with equal
+ * content</li>
+ * </ul>
+ * Files of {@link #MAP_THRESHOLD} or more are hashed through memory mapped
+ * chunks, smaller ones through reads into a buffer reused by the thread. A
+ * mapping is released only when it is garbage collected, so mapping many small
+ * files in a row could use up the mappings a process may have, and it is no
+ * faster for them.
+ * <p>
+ * CRC32 and CRC32C of parts can be combined into the CRC of the whole file, so
+ * only they are hashed in parallel. MD5 and SHA-256 have to see the bytes in
+ * order and are hashed on the calling thread.
+ */
+public final class FileHasher {
+
+    /** files from this size on are memory mapped **/
+    public static final long MAP_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final long MAP_CHUNK = 16 * 1024 * 1024;
+    /** smallest part of a file hashed in parallel **/
+    private static final long MIN_PART = 8 * 1024 * 1024;
+    private static final int MAX_PARTS = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** bytes compared before a full hash by the duplicate finder **/
+    private static final int HEAD_SIZE = 4 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>();
+
+    /** CRC32C class and update(ByteBuffer) of checksums, missing on older runtimes **/
+    private static final Class<?> CRC32C_CLASS = findClass("java.util.zip.CRC32C");
+    private static final Method CRC32_UPDATE_BUFFER = findUpdateBuffer(CRC32.class);
+    private static final Method CRC32C_UPDATE_BUFFER = CRC32C_CLASS == null ? null : findUpdateBuffer(CRC32C_CLASS);
+
+    public enum Algorithm {
+        /** 4 bytes, CRC-32 of zip and png **/
+        CRC32(null, 0xEDB88320),
+        /** 4 bytes, CRC-32C (Castagnoli), where the runtime has it (Android 8.0+, JVM 9+) **/
+        CRC32C(null, 0x82F63B78),
+        /** 16 bytes **/
+        MD5("MD5", 0),
+        /** 32 bytes **/
+        SHA_256("SHA-256", 0);
+
+        private final String digestName;
+        /** reflected polynomial of a CRC **/
+        private final int polynomial;
+
+        private Algorithm(String digestName, int polynomial) {
+            this.digestName = digestName;
+            this.polynomial = polynomial;
+        }
+
+        /**
+         * @return whether parts hashed apart can be combined
+         */
+        public boolean isCombinable() {
+            return digestName == null;
+        }
+    }
+
+    private FileHasher() {
+    }
+
+    /**
+     * @param algorithm
+     * @return whether the runtime has algorithm
+     */
+    public static boolean isSupported(Algorithm algorithm) {
+        if (algorithm == Algorithm.CRC32C) {
+            return CRC32C_CLASS != null;
+        }
+        if (algorithm == Algorithm.CRC32) {
+            return true;
+        }
+        try {
+            MessageDigest.getInstance(algorithm.digestName);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * hash file on the calling thread
+     *
+     * @param file
+     * @param algorithm
+     * @return hash, a CRC as 4 bytes big endian
+     * @throws IOException
+     * @throws IllegalArgumentException if the runtime does not have algorithm
+     */
+    public static byte[] hash(File file, Algorithm algorithm) throws IOException {
+        return hash(file, algorithm, null);
+    }
+
+    /**
+     * hash file, a CRC of a large file is hashed in parts on executor and the
+     * parts combined
+     *
+     * @param file
+     * @param algorithm
+     * @param executor runs the parts, null to hash on the calling thread
+     * @return hash, a CRC as 4 bytes big endian
+     * @throws IOException
+     * @throws IllegalArgumentException if the runtime does not have algorithm
+     * @see FileWalker#getDefaultExecutor()
+     */
+    public static byte[] hash(File file, Algorithm algorithm, Executor executor) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (executor != null && algorithm.isCombinable() && size >= 2 * MIN_PART) {
+                return toBytes(parallelCrc(channel, size, algorithm, executor));
+            }
+            Hash hash = newHash(algorithm);
+            update(hash, channel, 0, size);
+            return hash.finish();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param hash
+     * @return lower case hex of hash
+     */
+    public static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * find files of equal content below root. Files are grouped by size first,
+     * then by their first bytes, only files still sharing a group are hashed.
+     * Empty files are skipped, so are links where the runtime has
+     * java.nio.file to tell them from their targets.
+     *
+     * @param root
+     * @param algorithm use SHA-256 unless a rare false match of a CRC is fine
+     * @return groups of two or more files with the same size and hash, sorted
+     *         by nothing in particular
+     * @throws IOException if a candidate file could not be read
+     */
+    public static List<List<File>> findDuplicates(File root, Algorithm algorithm) throws IOException {
+        final Map<Long, List<File>> bySize = new HashMap<Long, List<File>>();
+        new FileWalker(FileWalker.getDefaultExecutor()).walk(root, new FileWalker.Visitor() {
+
+            @Override
+            public boolean enterDirectory(File dir) {
+                return true;
+            }
+
+            @Override
+            public void visitFile(File file, long size) {
+                // links and other entries which are not regular files have
+                // size 0 too
+                if (size <= 0) {
+                    return;
+                }
+                synchronized (bySize) {
+                    List<File> files = bySize.get(size);
+                    if (files == null) {
+                        files = new ArrayList<File>(2);
+                        bySize.put(size, files);
+                    }
+                    files.add(file);
+                }
+            }
+
+            @Override
+            public void leaveDirectory(File dir) {
+            }
+
+            @Override
+            public void visitFailed(File dir) {
+            }
+        });
+
+        List<List<File>> duplicates = new ArrayList<List<File>>();
+        for (Map.Entry<Long, List<File>> sameSize : bySize.entrySet()) {
+            if (sameSize.getValue().size() < 2) {
+                continue;
+            }
+            for (List<File> sameHead : group(sameSize.getValue(), Algorithm.CRC32, HEAD_SIZE)) {
+                duplicates.addAll(group(sameHead, algorithm, -1));
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * @param limit bytes of each file hashed, -1 for all
+     * @return groups of two or more files with the same hash
+     */
+    private static List<List<File>> group(List<File> files, Algorithm algorithm, int limit) throws IOException {
+        Map<String, List<File>> byHash = new HashMap<String, List<File>>();
+        for (File file : files) {
+            String key = toHex(limit < 0 ? hash(file, algorithm) : hashHead(file, algorithm, limit));
+            List<File> same = byHash.get(key);
+            if (same == null) {
+                same = new ArrayList<File>(2);
+                byHash.put(key, same);
+            }
+            same.add(file);
+        }
+        List<List<File>> groups = new ArrayList<List<File>>();
+        for (List<File> same : byHash.values()) {
+            if (same.size() > 1) {
+                groups.add(same);
+            }
+        }
+        return groups;
+    }
+
+    private static byte[] hashHead(File file, Algorithm algorithm, int limit) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            Hash hash = newHash(algorithm);
+            update(hash, channel, 0, Math.min(limit, channel.size()));
+            return hash.finish();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * hash length bytes of channel from position
+     */
+    private static void update(Hash hash, FileChannel channel, long position, long length) throws IOException {
+        long end = position + length;
+        if (length >= MAP_THRESHOLD) {
+            for (long start = position; start < end; start += MAP_CHUNK) {
+                hash.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_CHUNK, end - start)));
+            }
+            return;
+        }
+        ByteBuffer buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        } else {
+            BUFFER.set(null);
+        }
+        try {
+            long read = position;
+            while (read < end) {
+                buffer.clear();
+                if (end - read < buffer.capacity()) {
+                    buffer.limit((int) (end - read));
+                }
+                int count = channel.read(buffer, read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+                buffer.flip();
+                hash.update(buffer);
+            }
+        } finally {
+            BUFFER.set(buffer);
+        }
+    }
+
+    /**
+     * CRC of parts of the file on executor, combined in order
+     */
+    private static long parallelCrc(final FileChannel channel, long size, final Algorithm algorithm,
+            Executor executor) throws IOException {
+        int parts = (int) Math.min(MAX_PARTS, size / MIN_PART);
+        final long partSize = (size + parts - 1) / parts;
+        final long[] crcs = new long[parts];
+        final IOException[] error = new IOException[1];
+        final CountDownLatch done = new CountDownLatch(parts);
+        for (int i = 0; i < parts; i++) {
+            final int part = i;
+            final long start = part * partSize;
+            final long length = Math.min(partSize, size - start);
+            Runnable task = new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        ChecksumHash hash = (ChecksumHash) newHash(algorithm);
+                        update(hash, channel, start, length);
+                        crcs[part] = hash.checksum.getValue();
+                    } catch (IOException e) {
+                        synchronized (error) {
+                            error[0] = e;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (error) {
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        long crc = crcs[0];
+        for (int i = 1; i < parts; i++) {
+            crc = combineCrc(crc, crcs[i], Math.min(partSize, size - i * partSize), algorithm.polynomial);
+        }
+        return crc;
+    }
+
+    /**
+     * CRC of two blocks joined from the CRCs of each, the zlib crc32_combine
+     * through 32x32 matrices over GF(2)
+     *
+     * @param crc1 CRC of the first block
+     * @param crc2 CRC of the second block
+     * @param length2 bytes of the second block
+     * @param polynomial reflected polynomial of the CRC
+     */
+    static long combineCrc(long crc1, long crc2, long length2, int polynomial) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // operator for one zero bit
+        odd[0] = polynomial & 0xFFFFFFFFL;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // two zero bits, then four
+        square(even, odd);
+        square(odd, even);
+        // apply a zero byte operator for each bit set in length2
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    private static byte[] toBytes(long crc) {
+        return new byte[] { (byte) (crc >>> 24), (byte) (crc >>> 16), (byte) (crc >>> 8), (byte) crc };
+    }
+
+    private static Hash newHash(Algorithm algorithm) {
+        switch (algorithm) {
+            case CRC32:
+                return new ChecksumHash(new CRC32(), CRC32_UPDATE_BUFFER);
+            case CRC32C:
+                if (CRC32C_CLASS == null) {
+                    throw new IllegalArgumentException("CRC32C is not supported by this runtime");
+                }
+                try {
+                    return new ChecksumHash((Checksum) CRC32C_CLASS.getConstructor().newInstance(), CRC32C_UPDATE_BUFFER);
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("CRC32C is not supported by this runtime", e);
+                }
+            default:
+                try {
+                    return new DigestHash(MessageDigest.getInstance(algorithm.digestName));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalArgumentException(algorithm + " is not supported by this runtime", e);
+                }
+        }
+    }
+
+    private static Class<?> findClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method findUpdateBuffer(Class<?> checksumClass) {
+        try {
+            return checksumClass.getMethod("update", ByteBuffer.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private interface Hash {
+
+        /**
+         * hash remaining bytes of buffer
+         */
+        void update(ByteBuffer buffer);
+
+        byte[] finish();
+    }
+
+    private static final class DigestHash implements Hash {
+        private final MessageDigest digest;
+
+        DigestHash(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public byte[] finish() {
+            return digest.digest();
+        }
+    }
+
+    private static final class ChecksumHash implements Hash {
+        final Checksum checksum;
+        private final Method updateBuffer;
+        private byte[] copy;
+
+        ChecksumHash(Checksum checksum, Method updateBuffer) {
+            this.checksum = checksum;
+            this.updateBuffer = updateBuffer;
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                checksum.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                return;
+            }
+            if (updateBuffer != null) {
+                try {
+                    updateBuffer.invoke(checksum, buffer);
+                    return;
+                } catch (Exception e) {
+                    // copy it below
+                }
+            }
+            if (copy == null) {
+                copy = new byte[BUFFER_SIZE];
+            }
+            while (buffer.hasRemaining()) {
+                int length = Math.min(copy.length, buffer.remaining());
+                buffer.get(copy, 0, length);
+                checksum.update(copy, 0, length);
+            }
+        }
+
+        @Override
+        public byte[] finish() {
+            return toBytes(checksum.getValue());
+        }
+    }
+}
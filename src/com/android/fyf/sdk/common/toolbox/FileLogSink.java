@@ -0,0 +1,92 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+
+/**
+ * Appends log lines ({@link LogRecord#TARGET_LOG}) as text lines to a file.
+ * Lines are buffered and handed to the file once per batch, so register it as
+ * a queued sink. It does not use
+ * android classes, so it also works on a plain JVM.
+ */
+public class FileLogSink implements LogSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final DateFormat timeFormat = new SimpleDateFormat(LogRecord.TIME_FORMAT);
+    private final StringBuilder line = new StringBuilder(256);
+    private Writer out;
+    private IOException lastError;
+
+    /**
+     * @param file created with its parent directories on first write
+     */
+    public FileLogSink(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return last error of writing the file, the file is opened again on the
+     *         next record
+     */
+    public synchronized IOException getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public synchronized void write(LogRecord record) {
+        if (record.getTarget() != LogRecord.TARGET_LOG) {
+            return;
+        }
+        try {
+            if (out == null) {
+                File parent = file.getParentFile();
+                if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                    return;
+                }
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"),
+                        BUFFER_SIZE);
+            }
+            line.setLength(0);
+            record.appendTo(line, timeFormat).append('\n');
+            out.append(line);
+        } catch (IOException e) {
+            lastError = e;
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                lastError = e;
+                close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Type, size and modification time of a file, read together
+ * <ul>
+ * <li>{@link #read(File)} attributes of a file, following links</li>
+ * <li>{@link #readNoFollowLinks(File)} attributes of a link itself</li>
+ * </ul>
+ * Where the runtime has java.nio.file (Android 8.0+, JVM 7+) the attributes
+ * come from one stat call, otherwise from the separate calls of {@link File}.
+ * Whether the file is readable is asked only when {@link #isReadable()} is
+ * called, as it is a separate access check of the file system.
+ * <p>
+ * A metadata is a snapshot, it does not change with the file.
+ */
+public final class FileMetadata {
+
+    private static final Reader READER = Reader.create();
+
+    private static final int READABLE_UNKNOWN = 0;
+    private static final int READABLE_YES = 1;
+    private static final int READABLE_NO = 2;
+
+    private final File file;
+    private final boolean exists;
+    private final boolean directory;
+    private final boolean regularFile;
+    private final long size;
+    private final long lastModified;
+    private volatile int readable = READABLE_UNKNOWN;
+
+    FileMetadata(File file, boolean exists, boolean directory, boolean regularFile, long size, long lastModified) {
+        this.file = file;
+        this.exists = exists;
+        this.directory = directory;
+        this.regularFile = regularFile;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param file
+     * @return metadata, {@link #exists()} is false if file is missing
+     */
+    public static FileMetadata read(File file) {
+        return READER.read(file, true);
+    }
+
+    /**
+     * @param file
+     * @return metadata of a link itself rather than of its target
+     */
+    public static FileMetadata readNoFollowLinks(File file) {
+        return READER.read(file, false);
+    }
+
+    /**
+     * @return whether a single stat call is used
+     */
+    public static boolean isStatUsed() {
+        return READER instanceof NioReader;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return whether it is a regular file, as {@link File#isFile()}
+     */
+    public boolean isFile() {
+        return regularFile;
+    }
+
+    /**
+     * @return bytes, 0 for a missing file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return millis since the epoch, 0 for a missing file
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return whether the app can read the file, asked once
+     */
+    public boolean isReadable() {
+        int state = readable;
+        if (state == READABLE_UNKNOWN) {
+            state = exists && file.canRead() ? READABLE_YES : READABLE_NO;
+            readable = state;
+        }
+        return state == READABLE_YES;
+    }
+
+    @Override
+    public String toString() {
+        return file + (exists ? (directory ? " dir" : regularFile ? " file" : " other") + ", " + size + " bytes, "
+                + lastModified : " missing");
+    }
+
+    private static class Reader {
+
+        static Reader create() {
+            try {
+                return new NioReader();
+            } catch (Exception e) {
+                return new Reader();
+            } catch (LinkageError e) {
+                return new Reader();
+            }
+        }
+
+        FileMetadata read(File file, boolean followLinks) {
+            long lastModified = file.lastModified();
+            if (lastModified == 0 && !file.exists()) {
+                return new FileMetadata(file, false, false, false, 0, 0);
+            }
+            boolean directory = file.isDirectory();
+            boolean regularFile = !directory && file.isFile();
+            return new FileMetadata(file, true, directory, regularFile, regularFile ? file.length() : 0,
+                    lastModified);
+        }
+    }
+
+    /**
+     * Reads through Files.readAttributes(Path, Class, LinkOption...), called
+     * by reflection as java.nio.file is missing on older Android
+     */
+    private static final class NioReader extends Reader {
+        private final Method toPath;
+        private final Method readAttributes;
+        private final Class<?> attributesClass;
+        private final Object followLinks;
+        private final Object noFollowLinks;
+        private final Method isDirectory;
+        private final Method isRegularFile;
+        private final Method size;
+        private final Method lastModifiedTime;
+        private final Method toMillis;
+
+        NioReader() throws Exception {
+            Class<?> files = Class.forName("java.nio.file.Files");
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> linkOption = Class.forName("java.nio.file.LinkOption");
+            attributesClass = Class.forName("java.nio.file.attribute.BasicFileAttributes");
+            toPath = File.class.getMethod("toPath");
+            readAttributes = files.getMethod("readAttributes", path, Class.class, Array.newInstance(linkOption, 0)
+                    .getClass());
+            followLinks = Array.newInstance(linkOption, 0);
+            noFollowLinks = Array.newInstance(linkOption, 1);
+            Array.set(noFollowLinks, 0, linkOption.getField("NOFOLLOW_LINKS").get(null));
+            isDirectory = attributesClass.getMethod("isDirectory");
+            isRegularFile = attributesClass.getMethod("isRegularFile");
+            size = attributesClass.getMethod("size");
+            lastModifiedTime = attributesClass.getMethod("lastModifiedTime");
+            toMillis = Class.forName("java.nio.file.attribute.FileTime").getMethod("toMillis");
+            // fail here rather than on every read
+            read(new File("."), true);
+        }
+
+        @Override
+        FileMetadata read(File file, boolean follow) {
+            Object attributes;
+            try {
+                attributes = readAttributes.invoke(null, toPath.invoke(file), attributesClass, follow ? followLinks
+                        : noFollowLinks);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause != null && "java.nio.file.NoSuchFileException".equals(cause.getClass().getName())) {
+                    // missing, told by the same stat call
+                    return new FileMetadata(file, false, false, false, 0, 0);
+                }
+                // e.g. an entry which can not be read or a path which is not
+                // valid, ask as File does
+                return super.read(file, follow);
+            } catch (IllegalAccessException e) {
+                return super.read(file, follow);
+            }
+            try {
+                boolean directory = (Boolean) isDirectory.invoke(attributes);
+                boolean regularFile = (Boolean) isRegularFile.invoke(attributes);
+                long length = regularFile ? (Long) size.invoke(attributes) : 0;
+                long lastModified = (Long) toMillis.invoke(lastModifiedTime.invoke(attributes));
+                return new FileMetadata(file, true, directory, regularFile, length, lastModified);
+            } catch (Exception e) {
+                return super.read(file, follow);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps {@link FileMetadata} for a short time, for code which asks about the
+ * same files again and again, e.g. a list of downloads polled for their size
+ * <ul>
+ * <li>{@link #get(File)} metadata of a file, read again when older than the
+ * ttl</li>
+ * <li>{@link #list(File)} metadata of all entries of a directory, read in one
+ * batch and kept for later {@link #get(File)}</li>
+ * <li>{@link #invalidate(File)} forget a file after changing it</li>
+ * <li>{@link #invalidateTree(File)} forget a directory and what is below it
+ * after deleting them</li>
+ * </ul>
+ * The cache does not watch the files, a change made meanwhile is seen only
+ * after the ttl or an invalidate. The writes, deletes and mkdirs of
+ * {@link FileUtils} invalidate what they change. The least recently used entries are dropped
+ * above the max entries. Thread safe, files are read outside the lock.
+ *
+ * @see FileUtils#setMetadataCache(FileMetadataCache)
+ */
+public final class FileMetadataCache {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<String, Cached> entries;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param ttlMillis how long metadata is used without reading it again
+     * @param maxEntries most files kept
+     */
+    public FileMetadataCache(long ttlMillis, int maxEntries) {
+        this.ttlNanos = ttlMillis * 1000000L;
+        this.maxEntries = maxEntries < 1 ? 1 : maxEntries;
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > FileMetadataCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param file
+     * @return metadata, at most ttl old
+     */
+    public FileMetadata get(File file) {
+        String key = file.getAbsolutePath();
+        long now = System.nanoTime();
+        synchronized (this) {
+            Cached entry = entries.get(key);
+            if (entry != null && now - entry.readTime < ttlNanos) {
+                hitCount++;
+                return entry.metadata;
+            }
+            missCount++;
+        }
+        FileMetadata metadata = FileMetadata.read(file);
+        synchronized (this) {
+            entries.put(key, new Cached(metadata, now));
+        }
+        return metadata;
+    }
+
+    /**
+     * read metadata of all entries of dir, all of them are cached with the
+     * same read time
+     *
+     * @param dir
+     * @return metadata of entries, null if dir could not be listed
+     */
+    public List<FileMetadata> list(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        List<FileMetadata> result = new ArrayList<FileMetadata>(files.length);
+        long now = System.nanoTime();
+        for (File file : files) {
+            result.add(FileMetadata.read(file));
+        }
+        synchronized (this) {
+            for (FileMetadata metadata : result) {
+                entries.put(metadata.getFile().getAbsolutePath(), new Cached(metadata, now));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * forget file, the next {@link #get(File)} reads it
+     *
+     * @param file
+     */
+    public synchronized void invalidate(File file) {
+        entries.remove(file.getAbsolutePath());
+    }
+
+    /**
+     * forget dir and all files below it, call it after deleting them
+     *
+     * @param dir
+     */
+    public synchronized void invalidateTree(File dir) {
+        String key = dir.getAbsolutePath();
+        entries.remove(key);
+        String prefix = key.endsWith(File.separator) ? key : key + File.separator;
+        for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();) {
+            if (i.next().startsWith(prefix)) {
+                i.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static final class Cached {
+        final FileMetadata metadata;
+        final long readTime;
+
+        Cached(FileMetadata metadata, long readTime) {
+            this.metadata = metadata;
+            this.readTime = readTime;
+        }
+    }
+}
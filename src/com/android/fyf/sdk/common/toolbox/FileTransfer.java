@@ -0,0 +1,262 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Moves bytes into a file with as few copies and system calls as the source
+ * allows
+ * <ul>
+ * <li>{@link #transfer(InputStream, File, long, ProgressListener)} from a
+ * stream, a {@link FileInputStream} is transferred channel to channel</li>
+ * <li>{@link #transfer(ReadableByteChannel, File, long, ProgressListener)}
+ * from a channel, such as a socket channel</li>
+ * <li>{@link #copy(File, File, ProgressListener)} from a file</li>
+ * </ul>
+ * File sources use {@link FileChannel#transferTo}, which the kernel may do
+ * without copying through the process, and a buffered copy if it stops making
+ * progress before the end. Other channels go through a direct
+ * buffer and other streams through a byte array, both of {@link #BUFFER_SIZE}
+ * and reused by the next transfer of the same thread.
+ * <p>
+ * When the expected size is given, the target gets that length before the
+ * first write and is cut to the bytes really transferred at the end.
+ */
+public final class FileTransfer {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /** bytes per transferTo call, so progress is reported while copying **/
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+    /** transferTo calls moving nothing before the end, then the copy is buffered **/
+    private static final int MAX_EMPTY_TRANSFERS = 3;
+
+    private static final ThreadLocal<byte[]> BYTES = new ThreadLocal<byte[]>();
+    private static final ThreadLocal<ByteBuffer> DIRECT = new ThreadLocal<ByteBuffer>();
+
+    /**
+     * Told about the progress of a transfer, on the thread doing it
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param transferred bytes written so far
+         * @param total expected bytes, -1 if not known
+         */
+        void onProgress(long transferred, long total);
+    }
+
+    private FileTransfer() {
+    }
+
+    /**
+     * write stream to file, the file is overwritten and the stream is read to
+     * its end but not closed
+     *
+     * @param in
+     * @param target
+     * @param expectedSize bytes expected, to size the file up front, -1 if not
+     *            known
+     * @param listener may be null
+     * @return bytes written
+     * @throws IOException
+     */
+    public static long transfer(InputStream in, File target, long expectedSize, ProgressListener listener)
+            throws IOException {
+        if (in instanceof FileInputStream) {
+            FileChannel source = ((FileInputStream) in).getChannel();
+            long position = source.position();
+            long total = expectedSize >= 0 ? expectedSize : source.size() - position;
+            long written = transfer(source, position, target, total, listener);
+            source.position(position + written);
+            return written;
+        }
+
+        RandomAccessFile out = open(target, expectedSize);
+        byte[] buffer = BYTES.get();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        } else {
+            BYTES.set(null);
+        }
+        long written = 0;
+        try {
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+                written += length;
+                if (listener != null) {
+                    listener.onProgress(written, expectedSize);
+                }
+            }
+            finish(out, expectedSize, written);
+        } finally {
+            BYTES.set(buffer);
+            out.close();
+        }
+        return written;
+    }
+
+    /**
+     * write channel to file, the file is overwritten and the channel is read
+     * to its end but not closed
+     *
+     * @param in
+     * @param target
+     * @param expectedSize bytes expected, to size the file up front, -1 if not
+     *            known
+     * @param listener may be null
+     * @return bytes written
+     * @throws IOException
+     */
+    public static long transfer(ReadableByteChannel in, File target, long expectedSize, ProgressListener listener)
+            throws IOException {
+        if (in instanceof FileChannel) {
+            FileChannel source = (FileChannel) in;
+            long position = source.position();
+            long total = expectedSize >= 0 ? expectedSize : source.size() - position;
+            long written = transfer(source, position, target, total, listener);
+            source.position(position + written);
+            return written;
+        }
+
+        RandomAccessFile out = open(target, expectedSize);
+        ByteBuffer buffer = DIRECT.get();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            DIRECT.set(null);
+        }
+        long written = 0;
+        try {
+            FileChannel channel = out.getChannel();
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+                buffer.clear();
+                if (listener != null) {
+                    listener.onProgress(written, expectedSize);
+                }
+            }
+            finish(out, expectedSize, written);
+        } finally {
+            DIRECT.set(buffer);
+            out.close();
+        }
+        return written;
+    }
+
+    /**
+     * copy file, target is overwritten
+     *
+     * @param source
+     * @param target
+     * @param listener may be null
+     * @return bytes copied
+     * @throws IOException
+     */
+    public static long copy(File source, File target, ProgressListener listener) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileChannel channel = in.getChannel();
+            return transfer(channel, 0, target, channel.size(), listener);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * transfer from position of source until its end
+     */
+    private static long transfer(FileChannel source, long position, File target, long total,
+            ProgressListener listener) throws IOException {
+        RandomAccessFile out = open(target, total);
+        long written = 0;
+        try {
+            FileChannel channel = out.getChannel();
+            int empty = 0;
+            for (;;) {
+                long count = empty < MAX_EMPTY_TRANSFERS ? source.transferTo(position + written, TRANSFER_CHUNK,
+                        channel) : readAt(source, position + written, channel);
+                if (count < 0) {
+                    break;
+                }
+                if (count == 0) {
+                    // transferTo returns 0 at end of file, check as it may
+                    // also return 0 before, and then keep doing so
+                    if (position + written >= source.size()) {
+                        break;
+                    }
+                    empty++;
+                    continue;
+                }
+                written += count;
+                if (listener != null) {
+                    listener.onProgress(written, total);
+                }
+            }
+            finish(out, total, written);
+        } finally {
+            out.close();
+        }
+        return written;
+    }
+
+    /**
+     * copy one buffer of source from position, for when transferTo makes no
+     * progress
+     *
+     * @return bytes copied, -1 at end of source
+     */
+    private static long readAt(FileChannel source, long position, FileChannel target) throws IOException {
+        ByteBuffer buffer = DIRECT.get();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            DIRECT.set(null);
+        }
+        try {
+            buffer.clear();
+            int count = source.read(buffer, position);
+            if (count <= 0) {
+                return count;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            return count;
+        } finally {
+            DIRECT.set(buffer);
+        }
+    }
+
+    private static RandomAccessFile open(File target, long expectedSize) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+        try {
+            out.setLength(expectedSize > 0 ? expectedSize : 0);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        return out;
+    }
+
+    /**
+     * cut the file if fewer bytes came than expected
+     */
+    private static void finish(RandomAccessFile out, long expectedSize, long written) throws IOException {
+        if (expectedSize > 0 && expectedSize != written) {
+            out.setLength(written);
+        }
+    }
+}
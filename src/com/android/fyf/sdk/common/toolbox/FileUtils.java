@@ -1,6 +1,7 @@
 package com.android.fyf.sdk.common.toolbox;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -8,10 +9,12 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,10 +25,19 @@ import android.text.TextUtils;
  * FileUtils
  * <ul>
  * Read or write file
- * <li>{@link #readFile(String)} read file</li>
- * <li>{@link #readFileToList(String)} read file to string list</li>
+ * <li>{@link #readFile(String, String)} read file</li>
+ * <li>{@link #readFile(String, String, boolean)} read file, keep line
+ * separators</li>
+ * <li>{@link #readFileToList(String, String)} read file to string list</li>
+ * <li>{@link #readLines(String, String)} read file line by line</li>
+ * <li>{@link #forEachLine(String, String, LineReader.Visitor)} visit lines of
+ * file</li>
  * <li>{@link #writeFile(String, String, boolean)} write file</li>
  * <li>{@link #writeFile(String, InputStream)} write file</li>
+ * <li>{@link #writeFileAtomic(String, String)} write file atomically</li>
+ * <li>{@link #copyFile(String, String)} copy file</li>
+ * <li>{@link #readRange(File, long, int, ByteBuffer)} read a range of file</li>
+ * <li>{@link #writeAt(File, long, ByteBuffer)} write at a position of file</li>
  * </ul>
  * <ul>
  * Operate file
@@ -36,6 +48,9 @@ import android.text.TextUtils;
  * <li>{@link #deleteFile(String)}</li>
  * <li>{@link #isFileExist(String)}</li>
  * <li>{@link #isFolderExist(String)}</li>
+ * <li>{@link #getMetadata(File)}</li>
+ * <li>{@link #getFileHash(String, FileHasher.Algorithm)}</li>
+ * <li>{@link #findDuplicateFiles(String)}</li>
  * <li>{@link #makeFolders(String)}</li>
  * <li>{@link #makeDirs(String)}</li>
  * </ul>
@@ -48,41 +63,93 @@ public class FileUtils {
 
     public final static String FILE_EXTENSION_SEPARATOR = ".";
 
+    private static volatile FileMetadataCache sMetadataCache;
+
     /**
-     * read file
+     * read file, lines are joined by "\r\n", the line separator at the end of
+     * file is dropped
      * 
      * @param filePath
      * @param charsetName The name of a supported
      *            {@link java.nio.charset.Charset </code>charset<code>}
      * @return if file not exist, return null, else return content of file
-     * @throws IOException if an error occurs while operator BufferedReader
+     * @throws RuntimeException if an error occurs while reading
      */
     public static StringBuilder readFile(String filePath, String charsetName) {
+        return readFile(filePath, charsetName, false);
+    }
+
+    /**
+     * read file in one pass, the result is sized from the file length
+     * 
+     * @param filePath
+     * @param charsetName The name of a supported
+     *            {@link java.nio.charset.Charset </code>charset<code>}
+     * @param keepLineSeparators if true, return content of file as it is,
+     *            else lines are joined by "\r\n" like
+     *            {@link #readFile(String, String)}
+     * @return if file not exist, return null, else return content of file
+     * @throws RuntimeException if an error occurs while reading
+     */
+    public static StringBuilder readFile(String filePath, String charsetName, boolean keepLineSeparators) {
         File file = new File(filePath);
-        StringBuilder fileContent = new StringBuilder("");
-        if (file == null || !file.isFile()) {
+        if (!file.isFile()) {
             return null;
         }
 
-        BufferedReader reader = null;
+        FileDecoder decoder = null;
         try {
-            InputStreamReader is = new InputStreamReader(new FileInputStream(file), charsetName);
-            reader = new BufferedReader(is);
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                if (!fileContent.toString().equals("")) {
-                    fileContent.append("\r\n");
+            decoder = new FileDecoder(file, Charset.forName(charsetName));
+            StringBuilder fileContent = new StringBuilder(decoder.estimateChars());
+            // a line separator is written when the next line starts, so the
+            // last one is dropped
+            boolean separatorPending = false;
+            boolean lastWasCR = false;
+            CharBuffer chars;
+            while ((chars = decoder.next()) != null) {
+                if (keepLineSeparators) {
+                    fileContent.append(chars);
+                    continue;
+                }
+                char[] array = chars.array();
+                int end = chars.arrayOffset() + chars.limit();
+                int i = chars.arrayOffset() + chars.position();
+                while (i < end) {
+                    char c = array[i];
+                    if (c == '\n' || c == '\r') {
+                        if (!(c == '\n' && lastWasCR)) {
+                            // an empty line is only kept after some content,
+                            // as it always was
+                            if (separatorPending && fileContent.length() > 0) {
+                                fileContent.append("\r\n");
+                            }
+                            separatorPending = true;
+                        }
+                        lastWasCR = c == '\r';
+                        i++;
+                        continue;
+                    }
+                    lastWasCR = false;
+                    if (separatorPending) {
+                        if (fileContent.length() > 0) {
+                            fileContent.append("\r\n");
+                        }
+                        separatorPending = false;
+                    }
+                    int start = i;
+                    while (i < end && array[i] != '\n' && array[i] != '\r') {
+                        i++;
+                    }
+                    fileContent.append(array, start, i - start);
                 }
-                fileContent.append(line);
             }
-            reader.close();
             return fileContent;
         } catch (IOException e) {
             throw new RuntimeException("IOException occurred. ", e);
         } finally {
-            if (reader != null) {
+            if (decoder != null) {
                 try {
-                    reader.close();
+                    decoder.close();
                 } catch (IOException e) {
                     throw new RuntimeException("IOException occurred. ", e);
                 }
@@ -96,11 +163,15 @@ public class FileUtils {
      * @param filePath
      * @param content
      * @param append is append, if true, write to the end of file, else clear
-     *            content of file and write into it
+     *            content of file and write into it, atomically if
+     *            {@link AtomicFileWriter#setEnabled(boolean)}
      * @return return true
      * @throws IOException if an error occurs while operator FileWriter
      */
     public static boolean writeFile(String filePath, String content, boolean append) {
+        if (!append && AtomicFileWriter.isEnabled()) {
+            return writeFileAtomic(filePath, content);
+        }
         FileWriter fileWriter = null;
         try {
             fileWriter = new FileWriter(filePath, append);
@@ -110,6 +181,7 @@ public class FileUtils {
         } catch (IOException e) {
             throw new RuntimeException("IOException occurred. ", e);
         } finally {
+            invalidateMetadata(new File(filePath));
             if (fileWriter != null) {
                 try {
                     fileWriter.close();
@@ -124,37 +196,160 @@ public class FileUtils {
      * write file
      * 
      * @param filePath
-     * @param stream
+     * @param stream closed when written
      * @return return true
-     * @throws IOException if an error occurs while operator FileWriter
+     * @throws RuntimeException if an error occurs while writing
      */
     public static boolean writeFile(String filePath, InputStream stream) {
-        OutputStream o = null;
+        return writeFile(filePath, stream, -1, null);
+    }
+
+    /**
+     * write file, with progress, atomically if
+     * {@link AtomicFileWriter#setEnabled(boolean)}
+     * 
+     * @param filePath
+     * @param stream closed when written
+     * @param expectedSize bytes expected, the file gets this length up front,
+     *            -1 if not known
+     * @param listener told about progress, may be null
+     * @return return true
+     * @throws RuntimeException if an error occurs while writing
+     * @see FileTransfer
+     */
+    public static boolean writeFile(String filePath, InputStream stream, long expectedSize,
+            FileTransfer.ProgressListener listener) {
+        if (AtomicFileWriter.isEnabled()) {
+            return writeFileAtomic(filePath, stream, expectedSize, listener);
+        }
         try {
-            o = new FileOutputStream(filePath);
-            byte data[] = new byte[1024];
-            int length = -1;
-            while ((length = stream.read(data)) != -1) {
-                o.write(data, 0, length);
-            }
-            o.flush();
+            FileTransfer.transfer(stream, new File(filePath), expectedSize, listener);
             return true;
         } catch (FileNotFoundException e) {
             throw new RuntimeException("FileNotFoundException occurred. ", e);
         } catch (IOException e) {
             throw new RuntimeException("IOException occurred. ", e);
         } finally {
-            if (o != null) {
-                try {
-                    o.close();
-                    stream.close();
-                } catch (IOException e) {
-                    throw new RuntimeException("IOException occurred. ", e);
+            invalidateMetadata(new File(filePath));
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new RuntimeException("IOException occurred. ", e);
+            }
+        }
+    }
+
+    /**
+     * write file atomically, a crash while writing leaves the old content of
+     * file, not a part of the new one
+     * 
+     * @param filePath
+     * @param content
+     * @return return true
+     * @throws RuntimeException if an error occurs while writing
+     * @see AtomicFileWriter
+     */
+    public static boolean writeFileAtomic(String filePath, final String content) {
+        try {
+            AtomicFileWriter.write(new File(filePath), new AtomicFileWriter.Content() {
+
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    // same charset as FileWriter
+                    Writer writer = new OutputStreamWriter(out);
+                    writer.write(content);
+                    writer.flush();
                 }
+            });
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            invalidateMetadata(new File(filePath));
+        }
+    }
+
+    /**
+     * write file atomically, a crash while writing leaves the old content of
+     * file, not a part of the new one
+     * 
+     * @param filePath
+     * @param stream closed when written
+     * @return return true
+     * @throws RuntimeException if an error occurs while writing
+     * @see AtomicFileWriter
+     */
+    public static boolean writeFileAtomic(String filePath, InputStream stream) {
+        return writeFileAtomic(filePath, stream, -1, null);
+    }
+
+    private static boolean writeFileAtomic(String filePath, final InputStream stream, final long expectedSize,
+            final FileTransfer.ProgressListener listener) {
+        try {
+            AtomicFileWriter.write(new File(filePath), new AtomicFileWriter.Content() {
+
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    byte[] data = new byte[FileTransfer.BUFFER_SIZE];
+                    long written = 0;
+                    int length;
+                    while ((length = stream.read(data)) != -1) {
+                        out.write(data, 0, length);
+                        written += length;
+                        if (listener != null) {
+                            listener.onProgress(written, expectedSize);
+                        }
+                    }
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            invalidateMetadata(new File(filePath));
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new RuntimeException("IOException occurred. ", e);
             }
         }
     }
 
+    /**
+     * copy file, target is overwritten
+     * 
+     * @param sourceFilePath
+     * @param destFilePath
+     * @return return true
+     * @throws RuntimeException if an error occurs while copying
+     */
+    public static boolean copyFile(String sourceFilePath, String destFilePath) {
+        return copyFile(sourceFilePath, destFilePath, null);
+    }
+
+    /**
+     * copy file, with progress
+     * 
+     * @param sourceFilePath
+     * @param destFilePath
+     * @param listener told about progress, may be null
+     * @return return true
+     * @throws RuntimeException if an error occurs while copying
+     * @see FileTransfer
+     */
+    public static boolean copyFile(String sourceFilePath, String destFilePath, FileTransfer.ProgressListener listener) {
+        try {
+            FileTransfer.copy(new File(sourceFilePath), new File(destFilePath), listener);
+            return true;
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("FileNotFoundException occurred. ", e);
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            invalidateMetadata(new File(destFilePath));
+        }
+    }
+
     /**
      * read file to string list, a element of list is a line
      * 
@@ -162,24 +357,22 @@ public class FileUtils {
      * @param charsetName The name of a supported
      *            {@link java.nio.charset.Charset </code>charset<code>}
      * @return if file not exist, return null, else return content of file
-     * @throws IOException if an error occurs while operator BufferedReader
+     * @throws RuntimeException if an error occurs while reading
      */
     public static List<String> readFileToList(String filePath, String charsetName) {
         File file = new File(filePath);
-        List<String> fileContent = new ArrayList<String>();
-        if (file == null || !file.isFile()) {
+        if (!file.isFile()) {
             return null;
         }
 
-        BufferedReader reader = null;
+        List<String> fileContent = new ArrayList<String>();
+        LineReader reader = null;
         try {
-            InputStreamReader is = new InputStreamReader(new FileInputStream(file), charsetName);
-            reader = new BufferedReader(is);
-            String line = null;
+            reader = new LineReader(file, charsetName);
+            CharSequence line;
             while ((line = reader.readLine()) != null) {
-                fileContent.add(line);
+                fileContent.add(line.toString());
             }
-            reader.close();
             return fileContent;
         } catch (IOException e) {
             throw new RuntimeException("IOException occurred. ", e);
@@ -194,6 +387,60 @@ public class FileUtils {
         }
     }
 
+    /**
+     * open file to read it line by line in constant memory, the reader must be
+     * closed
+     * 
+     * @param filePath
+     * @param charsetName The name of a supported
+     *            {@link java.nio.charset.Charset </code>charset<code>}
+     * @return if file not exist, return null, else reader of lines
+     * @throws RuntimeException if an error occurs while opening
+     * @see LineReader
+     */
+    public static LineReader readLines(String filePath, String charsetName) {
+        File file = new File(filePath);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            return new LineReader(file, charsetName);
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        }
+    }
+
+    /**
+     * call visitor for each line of file until it returns false, lines are not
+     * kept in memory
+     * 
+     * @param filePath
+     * @param charsetName The name of a supported
+     *            {@link java.nio.charset.Charset </code>charset<code>}
+     * @param visitor
+     * @return if file not exist, return -1, else count of lines visited
+     * @throws RuntimeException if an error occurs while reading
+     */
+    public static int forEachLine(String filePath, String charsetName, LineReader.Visitor visitor) {
+        LineReader reader = readLines(filePath, charsetName);
+        if (reader == null) {
+            return -1;
+        }
+
+        try {
+            return reader.visit(visitor);
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new RuntimeException("IOException occurred. ", e);
+            }
+        }
+    }
+
     /**
      * get file name from path, not include suffix
      * 
@@ -356,7 +603,11 @@ public class FileUtils {
         }
 
         File folder = new File(folderName);
-        return (folder.exists() && folder.isDirectory()) ? true : folder.mkdirs();
+        try {
+            return PathCreator.getDefault().ensureDirectory(folder);
+        } finally {
+            invalidateMetadataPath(folder);
+        }
     }
 
     /**
@@ -379,8 +630,7 @@ public class FileUtils {
             return false;
         }
 
-        File file = new File(filePath);
-        return (file.exists() && file.isFile());
+        return getMetadata(new File(filePath)).isFile();
     }
 
     /**
@@ -395,8 +645,7 @@ public class FileUtils {
             return false;
         }
 
-        File dire = new File(directoryPath);
-        return (dire.exists() && dire.isDirectory());
+        return getMetadata(new File(directoryPath)).isDirectory();
     }
 
     /**
@@ -404,38 +653,36 @@ public class FileUtils {
      * <ul>
      * <li>if path is null or empty, return true</li>
      * <li>if path not exist, return true</li>
-     * <li>if path exist, delete recursion. return true</li>
+     * <li>if path exist, delete recursion, return whether everything is
+     * deleted</li>
      * <ul>
      * 
      * @param path
      * @return
+     * @see #deleteFile(File, FileWalker)
      */
     public static boolean deleteFile(String path) {
         if (TextUtils.isEmpty(path)) {
             return true;
         }
 
-        File file = new File(path);
-        if (!file.exists()) {
-            return true;
-        }
-        if (file.isFile()) {
-            return file.delete();
-        }
-        if (!file.isDirectory()) {
-            return false;
-        }
-        for (File f : file.listFiles()) {
-            if (f.isFile()) {
-                boolean deleted = f.delete();
-                if (!deleted) {
-                    return false;
-                }
-            } else if (f.isDirectory()) {
-                deleteFile(f.getAbsolutePath());
-            }
+        return deleteFile(new File(path), new FileWalker(FileWalker.getDefaultExecutor())).isSuccess();
+    }
+
+    /**
+     * delete file or directory recursively, sub directories are deleted in
+     * parallel when walker has an executor
+     * 
+     * @param file
+     * @param walker cancel it to stop deleting
+     * @return counts of deleted and failed entries and bytes freed
+     */
+    public static FileWalker.DeleteResult deleteFile(File file, FileWalker walker) {
+        try {
+            return walker.delete(file, true);
+        } finally {
+            invalidateMetadataTree(file);
         }
-        return file.delete();
     }
 
     /**
@@ -453,8 +700,8 @@ public class FileUtils {
             return -1;
         }
 
-        File file = new File(path);
-        return (file.exists() && file.isFile() ? file.length() : -1);
+        FileMetadata metadata = getMetadata(new File(path));
+        return metadata.isFile() ? metadata.getSize() : -1;
     }
 
     /**
@@ -495,42 +742,18 @@ public class FileUtils {
      * 删除当前目录下的所有文件和文件夹
      * 
      * @param path 需要删除的目录
-     * @return
+     * @return 目录下的内容是否全部删除
      */
     public static boolean deleteAllInFolder(String path) {
-        boolean flag = false;
         File file = new File(path);
-
         if (!file.isDirectory()) {
-            return flag;
-        }
-        String[] tempList = file.list();
-        File temp = null;
-        for (int i = 0; i < tempList.length; i++) {
-            if (path.endsWith(File.separator)) {
-                temp = new File(path + tempList[i]);
-            } else {
-                temp = new File(path + File.separator + tempList[i]);
-            }
-            if (temp.isFile()) {
-                if (temp.delete() == false) {
-                    // 单个文件删除失败后，返回错误
-                    return false;
-                }
-            }
-            if (temp.isDirectory()) {
-                // 先删除文件夹里面的文件
-                if (deleteAllInFolder(path + File.separator + tempList[i]) == false) {
-                    return false;
-                }
-                // 再删除空文件夹
-                if (deleteFolder(path + File.separator + tempList[i]) == false) {
-                    return false;
-                }
-                flag = true;
-            }
+            return false;
+        }
+        try {
+            return new FileWalker(FileWalker.getDefaultExecutor()).delete(file, false).isSuccess();
+        } finally {
+            invalidateMetadataTree(file);
         }
-        return flag;
     }
 
     /**
@@ -539,53 +762,166 @@ public class FileUtils {
      * @param folder 文件夹路径
      */
     public static boolean deleteFolder(String folder) {
-        try {
-            deleteAllInFolder(folder); // 删除完里面所有内容
-            String filePath = folder;
-            filePath = filePath.toString();
-            File file = new File(filePath);
-            // 删除空文件夹
-            return file.delete();
-        } catch (Exception e) {
-            LogUtils.e(TAG, "deleteFolder failed!", e);
+        File file = new File(folder);
+        // not from the cache, a file created since would not be deleted
+        if (!file.exists()) {
+            invalidateMetadata(file);
+            return false;
         }
-
-        return false;
+        return deleteFile(file, new FileWalker(FileWalker.getDefaultExecutor())).isSuccess();
     }
 
     public static boolean canReadFile(File file) {
         if (file == null) {
             return false;
         }
-        return file.isFile() && file.exists() && file.canRead();
+        FileMetadata metadata = getMetadata(file);
+        return metadata.isFile() && metadata.isReadable();
     }
 
+    /**
+     * get size of a readable file, without opening it
+     * 
+     * @param file
+     * @return file size, 0 if file is not a readable file
+     */
     public static long getFileSize(File file) {
-        long size = 0;
-        FileInputStream fis = null;
+        if (file == null) {
+            return 0;
+        }
+        FileMetadata metadata = getMetadata(file);
+        return metadata.isFile() && metadata.isReadable() ? metadata.getSize() : 0;
+    }
+
+    /**
+     * get hash of file, as lower case hex
+     * 
+     * @param filePath
+     * @param algorithm
+     * @return if file not exist, return null, else return hash of file
+     * @throws RuntimeException if an error occurs while reading
+     * @see FileHasher
+     */
+    public static String getFileHash(String filePath, FileHasher.Algorithm algorithm) {
+        if (TextUtils.isEmpty(filePath)) {
+            return null;
+        }
+        File file = new File(filePath);
+        if (!file.isFile()) {
+            return null;
+        }
         try {
-            if (canReadFile(file)) {
-                fis = new FileInputStream(file);
-                size = fis.available();
-            }
+            return FileHasher.toHex(FileHasher.hash(file, algorithm, FileWalker.getDefaultExecutor()));
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        }
+    }
 
+    /**
+     * find files of equal content in a directory tree, by size first and
+     * SHA-256 of the candidates
+     * 
+     * @param directoryPath
+     * @return groups of two or more equal files, empty if directory not exist
+     * @throws RuntimeException if an error occurs while reading
+     * @see FileHasher#findDuplicates(File, FileHasher.Algorithm)
+     */
+    public static List<List<File>> findDuplicateFiles(String directoryPath) {
+        if (TextUtils.isEmpty(directoryPath)) {
+            return new ArrayList<List<File>>();
+        }
+        try {
+            return FileHasher.findDuplicates(new File(directoryPath), FileHasher.Algorithm.SHA_256);
         } catch (IOException e) {
-        } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                }
-            }
+            throw new RuntimeException("IOException occurred. ", e);
+        }
+    }
+
+    /**
+     * metadata of file, from the cache when one is set
+     * 
+     * @param file
+     * @return
+     * @see #setMetadataCache(FileMetadataCache)
+     */
+    public static FileMetadata getMetadata(File file) {
+        FileMetadataCache cache = sMetadataCache;
+        return cache != null ? cache.get(file) : FileMetadata.read(file);
+    }
+
+    /**
+     * let {@link #isFileExist(String)}, {@link #isFolderExist(String)},
+     * {@link #getFileSize(String)}, {@link #canReadFile(File)} and the other
+     * metadata helpers answer from cache. The writes, deletes and mkdirs of
+     * this class invalidate what they change, changes made by other code are
+     * missed until the ttl
+     * 
+     * @param cache null to read the file system on every call, the default
+     */
+    public static void setMetadataCache(FileMetadataCache cache) {
+        sMetadataCache = cache;
+    }
+
+    public static FileMetadataCache getMetadataCache() {
+        return sMetadataCache;
+    }
+
+    /**
+     * forget file in the metadata cache, after writing it
+     */
+    private static void invalidateMetadata(File file) {
+        FileMetadataCache cache = sMetadataCache;
+        if (cache != null) {
+            cache.invalidate(file);
+        }
+    }
+
+    /**
+     * forget file and its parents in the metadata cache, after creating them
+     */
+    private static void invalidateMetadataPath(File file) {
+        FileMetadataCache cache = sMetadataCache;
+        for (File f = file.getAbsoluteFile(); cache != null && f != null; f = f.getParentFile()) {
+            cache.invalidate(f);
+        }
+    }
+
+    /**
+     * forget file and everything below it in the metadata cache, after
+     * deleting them
+     */
+    private static void invalidateMetadataTree(File file) {
+        FileMetadataCache cache = sMetadataCache;
+        if (cache != null) {
+            cache.invalidateTree(file);
         }
-        return size;
     }
 
     public static FileInputStream getFileInputStreamNeedClose(File file, int skip) throws IOException {
+        return getFileInputStreamNeedClose(file, (long) skip);
+    }
+
+    /**
+     * open file for reading from position skip, which may be past 2GB
+     * 
+     * @param file
+     * @param skip bytes to skip, the stream is at the end of file if it is
+     *            longer
+     * @return null if file can not be read
+     * @throws IOException
+     */
+    public static FileInputStream getFileInputStreamNeedClose(File file, long skip) throws IOException {
         if (canReadFile(file)) {
             FileInputStream fis = new FileInputStream(file);
             if (skip > 0) {
-                fis.skip(skip);
+                try {
+                    // the position is set exactly, InputStream.skip may skip
+                    // fewer bytes
+                    fis.getChannel().position(skip);
+                } catch (IOException e) {
+                    fis.close();
+                    throw e;
+                }
             }
             return fis;
         }
@@ -593,53 +929,89 @@ public class FileUtils {
     }
 
     /**
-     * 创建目录和文件， 如果目录或文件不存在，则创建出来
+     * read up to len bytes of file from offset into dst, without moving any
+     * stream position, so threads may read ranges of one file at a time
      * 
-     * @param filePath 文件路径
-     * @return 创建后的文件
+     * @param file
+     * @param offset
+     * @param len most bytes read, also limited by the space left in dst
+     * @param dst
+     * @return bytes read, -1 if offset is at or past the end of file
      * @throws IOException
-     * @author chengjiangsang
-     * @since 2011-10-24
+     * @see RangedFile
      */
-    public static synchronized File makeDIRAndCreateFile(String filePath) {
-        if (!StorageUtils.isSDCardExists()) {
-            return null;
+    public static int readRange(File file, long offset, int len, ByteBuffer dst) throws IOException {
+        RangedFile ranged = new RangedFile(file, false);
+        int limit = dst.limit();
+        try {
+            if (len < dst.remaining()) {
+                dst.limit(dst.position() + len);
+            }
+            return ranged.read(offset, dst);
+        } finally {
+            dst.limit(limit);
+            ranged.close();
         }
+    }
 
+    /**
+     * write remaining bytes of src to file at offset, file is created if it
+     * does not exist and grows when needed, threads may write disjoint ranges
+     * of one file at a time
+     * 
+     * @param file
+     * @param offset
+     * @param src
+     * @return bytes written
+     * @throws IOException
+     * @see RangedFile
+     * @see ResumeManifest
+     */
+    public static int writeAt(File file, long offset, ByteBuffer src) throws IOException {
+        RangedFile ranged = new RangedFile(file, true);
+        try {
+            return ranged.write(offset, src);
+        } finally {
+            ranged.close();
+            invalidateMetadata(file);
+        }
+    }
+
+    /**
+     * 创建目录和文件， 如果目录或文件不存在，则创建出来。已知存在的目录不再检查，
+     * 不同目录下的文件可并发创建
+     * 
+     * @param filePath 文件路径
+     * @return 创建后的文件，创建失败返回null
+     * @see PathCreator
+     * @author chengjiangsang
+     * @since 2011-10-24
+     */
+    public static File makeDIRAndCreateFile(String filePath) {
         File file = new File(filePath);
-        String parent = file.getParent();
-        File parentFile = new File(parent);
-        if (!parentFile.exists()) {
-            if (parentFile.mkdirs()) {
-                try {
-                    file.createNewFile();
-                } catch (IOException e) {
-                    LogUtils.e(TAG, "makeDIRAndCreateFile 1 failed!!!", e);
-                    return null;
-                }
-            } else {
-                return null;
-            }
-        } else {
-            if (!file.exists()) {
-                try {
-                    file.createNewFile();
-                } catch (IOException e) {
-                    LogUtils.e(TAG, "makeDIRAndCreateFile 2 failed!!!", e);
-                    return null;
-                }
-            }
+        try {
+            PathCreator.getDefault().createFile(file);
+        } catch (IOException e) {
+            LogUtils.e(TAG, "makeDIRAndCreateFile failed!!!", e);
+            return null;
+        } finally {
+            invalidateMetadataPath(file);
         }
         return file;
     }
 
+    /**
+     * write object with the codec of {@link SerializeUtils}, fileOut is
+     * closed
+     * 
+     * @param object
+     * @param fileOut
+     */
     public static void saveSerializableObjectToFile(Object object, FileOutputStream fileOut) {
-        ObjectOutputStream out = null;
+        OutputStream out = null;
         try {
-            out = new ObjectOutputStream(fileOut);
-            out.writeObject(object);
-        } catch (FileNotFoundException e) {
-            LogUtils.e(e);
+            out = new BufferedOutputStream(fileOut);
+            SerializeUtils.encode(object, out);
         } catch (IOException e) {
             LogUtils.e(e);
         } finally {
@@ -653,12 +1025,59 @@ public class FileUtils {
         }
     }
 
+    /**
+     * save object to file atomically, a crash while writing leaves the old
+     * content of file
+     * 
+     * @param object
+     * @param file
+     * @return whether object is saved, errors are logged
+     * @see AtomicFileWriter
+     */
+    public static boolean saveSerializableObjectToFile(Object object, File file) {
+        return saveSerializableObjectToFile(object, file, SerializeUtils.getCodec());
+    }
+
+    /**
+     * save object to file atomically with a codec, such as a
+     * {@link CompressedCodec}, {@link #readSerializableObjectFromFile} reads
+     * it whatever codec is set
+     * 
+     * @param object
+     * @param file
+     * @param codec
+     * @return whether object is saved, errors are logged
+     */
+    public static boolean saveSerializableObjectToFile(final Object object, File file, final SerializeUtils.Codec codec) {
+        try {
+            AtomicFileWriter.write(file, new AtomicFileWriter.Content() {
+
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    codec.encode(object, out);
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            LogUtils.e(e);
+            return false;
+        } finally {
+            invalidateMetadata(file);
+        }
+    }
+
+    /**
+     * read object written by {@link SerializeUtils}, fileIn is closed
+     * 
+     * @param fileIn
+     * @return object, null if it could not be read
+     */
     public static Object readSerializableObjectFromFile(FileInputStream fileIn) {
         Object b = null;
-        ObjectInputStream in = null;
+        InputStream in = null;
         try {
-            in = new ObjectInputStream(fileIn);
-            b = in.readObject();
+            in = new BufferedInputStream(fileIn);
+            b = SerializeUtils.decode(in);
         } catch (Exception e) {
             LogUtils.e(e);
         } finally {
@@ -692,7 +1111,9 @@ public class FileUtils {
     }
 
     /**
-     * Creates a pseudo-unique filename for the specified cache key.
+     * Creates a pseudo-unique filename for the specified cache key. Two
+     * 32-bit hashes, so different keys may collide, see
+     * {@link #getHashedFilenameForKey(String, String)}.
      * 
      * @param key The key to generate a file name for.
      * @return A pseudo-unique filename.
@@ -704,6 +1125,18 @@ public class FileUtils {
         return localFilename;
     }
 
+    /**
+     * Creates a filename for the specified cache key from its SHA-256, the
+     * name {@link DiskLruCache} stores the key under
+     * 
+     * @param key The key to generate a file name for.
+     * @param fileExt appended to the name, may be ""
+     * @return 64 hex chars and fileExt
+     */
+    public static String getHashedFilenameForKey(String key, String fileExt) {
+        return DiskLruCache.hashKey(key) + fileExt;
+    }
+
     /**
      * 获取下载待安装apk的全文件名
      * 
@@ -728,15 +1161,12 @@ public class FileUtils {
         if (file == null) {
             return false;
         }
-        if (file.exists()) {
-            return true;
-        }
-
-        File parent = file.getParentFile();
-        if (parent != null && !parent.exists()) {
-            parent.mkdirs();
+        try {
+            PathCreator.getDefault().createFile(file);
+        } finally {
+            invalidateMetadataPath(file);
         }
-        return file.createNewFile();
+        return true;
     }
 
     public static boolean makesureMkdir(String dirname) {
@@ -750,10 +1180,10 @@ public class FileUtils {
         if (dir == null) {
             return false;
         }
-        if (dir.exists() && dir.isDirectory()) {
-            return true;
+        try {
+            return PathCreator.getDefault().ensureDirectory(dir);
+        } finally {
+            invalidateMetadataPath(dir);
         }
-
-        return dir.mkdirs();
     }
 }
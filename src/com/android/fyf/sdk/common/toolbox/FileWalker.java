@@ -0,0 +1,354 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks a directory tree, optionally on several threads
+ * <ul>
+ * <li>{@link #walk(File, Visitor)} call a visitor for each entry</li>
+ * <li>{@link #delete(File, boolean)} delete a tree, with counts of what was
+ * deleted and what failed</li>
+ * <li>{@link #cancel()} stop a walk from another thread</li>
+ * </ul>
+ * Every sub directory is a task of the executor, so a wide tree is walked by
+ * all threads of the pool. When the pool is busy the thread which found the
+ * directory walks it itself. A directory is left after all of its entries, on
+ * the thread which finished the last of them.
+ * <p>
+ * Attributes of an entry are read once by
+ * {@link FileMetadata#readNoFollowLinks(File)}, where the runtime has
+ * java.nio.file a link to a directory is an entry of its own then and its
+ * target is not walked.
+ * <p>
+ * One walk at a time per walker, and a cancelled walker stays cancelled, so
+ * use a new walker for each walk which may be cancelled.
+ */
+public final class FileWalker {
+    private static final String TAG = "FileWalker";
+
+    private static final int MAX_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile Executor sDefaultExecutor;
+
+    private final Executor executor;
+    private volatile boolean cancelled;
+
+    /**
+     * Told about the entries of a tree. Called from the threads of the
+     * executor, so it must be thread safe when the walker has one.
+     */
+    public interface Visitor {
+
+        /**
+         * @param dir
+         * @return false to skip entries of dir, {@link #leaveDirectory(File)}
+         *         is still called
+         */
+        boolean enterDirectory(File dir);
+
+        /**
+         * @param file a file or any entry which is not a directory
+         * @param size bytes
+         */
+        void visitFile(File file, long size);
+
+        /**
+         * called after all entries of dir are visited
+         *
+         * @param dir
+         */
+        void leaveDirectory(File dir);
+
+        /**
+         * @param dir whose entries could not be listed
+         */
+        void visitFailed(File dir);
+    }
+
+    /**
+     * Counts of a {@link FileWalker#delete(File, boolean)}
+     */
+    public static final class DeleteResult {
+        private final AtomicLong deletedFiles = new AtomicLong();
+        private final AtomicLong deletedDirectories = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong bytesFreed = new AtomicLong();
+        private volatile boolean cancelled;
+
+        public long getDeletedFiles() {
+            return deletedFiles.get();
+        }
+
+        public long getDeletedDirectories() {
+            return deletedDirectories.get();
+        }
+
+        /**
+         * @return entries which could not be deleted or listed
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return bytes of the files deleted
+         */
+        public long getBytesFreed() {
+            return bytesFreed.get();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return whether everything was deleted
+         */
+        public boolean isSuccess() {
+            return failed.get() == 0 && !cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return "deleted " + deletedFiles + " files, " + deletedDirectories + " directories, " + bytesFreed
+                    + " bytes, failed " + failed + (cancelled ? ", cancelled" : "");
+        }
+    }
+
+    /**
+     * walker on the current thread only
+     */
+    public FileWalker() {
+        this(null);
+    }
+
+    /**
+     * @param executor runs sub directories, null to walk on the current thread
+     *            only
+     * @see #getDefaultExecutor()
+     */
+    public FileWalker(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return a shared pool of up to 4 threads, which end when idle, the
+     *         caller runs a task when all of them are busy
+     */
+    public static Executor getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            synchronized (FileWalker.class) {
+                if (sDefaultExecutor == null) {
+                    int threads = Math.min(MAX_THREADS, Math.max(2, Runtime.getRuntime().availableProcessors()));
+                    sDefaultExecutor = new ThreadPoolExecutor(0, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                                private final AtomicInteger count = new AtomicInteger();
+
+                                @Override
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r, TAG + "-" + count.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            }, new ThreadPoolExecutor.CallerRunsPolicy());
+                }
+            }
+        }
+        return sDefaultExecutor;
+    }
+
+    /**
+     * stop the running walk and any later one, entries not visited yet are
+     * skipped
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * visit root and everything below it, returns when all entries are
+     * visited or the walk is cancelled
+     *
+     * @param root a directory or a file
+     * @param visitor
+     * @return false if cancelled
+     */
+    public boolean walk(File root, Visitor visitor) {
+        FileMetadata metadata = FileMetadata.readNoFollowLinks(root);
+        if (!metadata.exists()) {
+            return true;
+        }
+        if (!metadata.isDirectory()) {
+            visitor.visitFile(root, metadata.getSize());
+            return true;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        new DirectoryTask(root, null, visitor, done).run();
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                cancelled = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return !cancelled;
+    }
+
+    /**
+     * delete root and everything below it
+     *
+     * @param root a directory or a file
+     * @param deleteRoot false to delete only the entries of root directory
+     * @return counts, a missing root is a success with nothing deleted
+     */
+    public DeleteResult delete(final File root, final boolean deleteRoot) {
+        final DeleteResult result = new DeleteResult();
+        walk(root, new Visitor() {
+
+            @Override
+            public boolean enterDirectory(File dir) {
+                return true;
+            }
+
+            @Override
+            public void visitFile(File file, long size) {
+                if (!deleteRoot && file == root) {
+                    return;
+                }
+                if (file.delete()) {
+                    result.deletedFiles.incrementAndGet();
+                    result.bytesFreed.addAndGet(size);
+                } else {
+                    result.failed.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void leaveDirectory(File dir) {
+                if (cancelled || (!deleteRoot && dir == root)) {
+                    return;
+                }
+                if (dir.delete()) {
+                    result.deletedDirectories.incrementAndGet();
+                } else {
+                    result.failed.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void visitFailed(File dir) {
+                result.failed.incrementAndGet();
+            }
+        });
+        result.cancelled = cancelled;
+        return result;
+    }
+
+    private void execute(DirectoryTask task) {
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * Visits the entries of one directory, leaves it when the tasks of its
+     * sub directories are done too
+     */
+    private final class DirectoryTask implements Runnable {
+        private final File dir;
+        private final DirectoryTask parent;
+        private final Visitor visitor;
+        private final CountDownLatch done;
+        /** sub directories not finished, plus one for this task's own listing **/
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        DirectoryTask(File dir, DirectoryTask parent, Visitor visitor, CountDownLatch done) {
+            this.dir = dir;
+            this.parent = parent;
+            this.visitor = visitor;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                visitEntries();
+            } catch (RuntimeException e) {
+                LogUtils.e(TAG, "walk " + dir + " failed", e);
+                cancelled = true;
+            } finally {
+                finish();
+            }
+        }
+
+        private void visitEntries() {
+            if (cancelled || !visitor.enterDirectory(dir)) {
+                return;
+            }
+            File[] entries = dir.listFiles();
+            if (entries == null) {
+                visitor.visitFailed(dir);
+                return;
+            }
+            for (File entry : entries) {
+                if (cancelled) {
+                    return;
+                }
+                FileMetadata metadata = FileMetadata.readNoFollowLinks(entry);
+                if (!metadata.exists()) {
+                    // deleted meanwhile
+                    continue;
+                }
+                if (metadata.isDirectory()) {
+                    pending.incrementAndGet();
+                    execute(new DirectoryTask(entry, this, visitor, done));
+                } else {
+                    visitor.visitFile(entry, metadata.getSize());
+                }
+            }
+        }
+
+        private void finish() {
+            if (pending.decrementAndGet() != 0) {
+                return;
+            }
+            try {
+                visitor.leaveDirectory(dir);
+            } catch (RuntimeException e) {
+                LogUtils.e(TAG, "leave " + dir + " failed", e);
+                cancelled = true;
+            }
+            if (parent != null) {
+                parent.finish();
+            } else {
+                done.countDown();
+            }
+        }
+    }
+}
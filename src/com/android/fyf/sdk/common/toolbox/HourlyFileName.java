@@ -0,0 +1,36 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+/**
+ * Name of the log file of current hour, yyyy-MM-dd-HH plus extension. The
+ * name is formatted once per hour, not thread safe.
+ */
+class HourlyFileName {
+
+    private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd-HH");
+    private final String extension;
+    private String name;
+    private long startMillis;
+    private long endMillis;
+
+    HourlyFileName(String extension) {
+        this.extension = extension;
+    }
+
+    String get(long now) {
+        if (name == null || now >= endMillis || now < startMillis) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            name = format.format(calendar.getTime()) + extension;
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            startMillis = calendar.getTimeInMillis();
+            calendar.add(Calendar.HOUR_OF_DAY, 1);
+            endMillis = calendar.getTimeInMillis();
+        }
+        return name;
+    }
+}
@@ -0,0 +1,277 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads lines of a text file or stream one by one, in constant memory
+ * <ul>
+ * <li>{@link #readLine()} next line, null at end</li>
+ * <li>{@link #iterator()} lines for a for-each loop</li>
+ * <li>{@link #visit(Visitor)} call a visitor for each line until it stops</li>
+ * </ul>
+ * A line ends with '\n', '\r' or "\r\n", which is not part of the line, as
+ * {@link java.io.BufferedReader#readLine()}.
+ * <p>
+ * Every line is returned as the same reused {@link CharSequence}, a view on
+ * the decode buffer, which is valid only until the next line is read. Call
+ * {@link CharSequence#toString()} on a line to keep it. A reader is used by one
+ * thread and must be closed.
+ *
+ * <pre>
+ * LineReader reader = FileUtils.readLines(path, &quot;UTF-8&quot;);
+ * try {
+ *     for (CharSequence line : reader) {
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ */
+public final class LineReader implements Iterable<CharSequence>, Closeable {
+
+    private static final int INITIAL_LINE_SIZE = 128;
+
+    private final FileDecoder decoder;
+    private final Line line = new Line();
+    /** holds a line which spans two chunks **/
+    private char[] lineBuffer;
+    private char[] chunk;
+    private int position;
+    private int end;
+    private boolean skipLF;
+    private boolean endOfInput;
+    private int lineNumber;
+    private boolean iterated;
+
+    /**
+     * Called by {@link LineReader#visit(Visitor)} for each line
+     */
+    public interface Visitor {
+
+        /**
+         * @param line valid only during this call
+         * @param lineNumber 1 for the first line
+         * @return true to go on, false to stop
+         */
+        boolean visitLine(CharSequence line, int lineNumber);
+    }
+
+    /**
+     * @param file
+     * @param charsetName The name of a supported
+     *            {@link java.nio.charset.Charset </code>charset<code>}
+     * @throws IOException if file can not be opened
+     */
+    public LineReader(File file, String charsetName) throws IOException {
+        decoder = new FileDecoder(file, Charset.forName(charsetName));
+    }
+
+    /**
+     * @param in closed by {@link #close()}
+     * @param charset
+     * @throws IOException
+     */
+    public LineReader(InputStream in, Charset charset) throws IOException {
+        decoder = new FileDecoder(in, charset);
+    }
+
+    /**
+     * read the next line
+     *
+     * @return the line, valid until the next call, or null at end
+     * @throws IOException
+     */
+    public CharSequence readLine() throws IOException {
+        int length = 0;
+        for (;;) {
+            if (position >= end) {
+                if (endOfInput || !fill()) {
+                    if (length == 0) {
+                        return null;
+                    }
+                    lineNumber++;
+                    return line.set(lineBuffer, 0, length);
+                }
+            }
+            if (skipLF) {
+                skipLF = false;
+                if (chunk[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            int start = position;
+            while (position < end && chunk[position] != '\n' && chunk[position] != '\r') {
+                position++;
+            }
+            if (position < end) {
+                skipLF = chunk[position++] == '\r';
+                lineNumber++;
+                if (length == 0) {
+                    // whole line in this chunk
+                    return line.set(chunk, start, position - 1 - start);
+                }
+                length = appendToLine(length, start, position - 1 - start);
+                return line.set(lineBuffer, 0, length);
+            }
+            length = appendToLine(length, start, position - start);
+        }
+    }
+
+    /**
+     * @return number of the last line read, 0 before the first one
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * call visitor for each remaining line until it returns false
+     *
+     * @param visitor
+     * @return count of lines visited
+     * @throws IOException
+     */
+    public int visit(Visitor visitor) throws IOException {
+        int count = 0;
+        CharSequence next;
+        while ((next = readLine()) != null) {
+            count++;
+            if (!visitor.visitLine(next, lineNumber)) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * lines not read yet, can be called only once. An IOException while
+     * reading is thrown as a RuntimeException.
+     */
+    @Override
+    public Iterator<CharSequence> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("lines can be iterated only once");
+        }
+        iterated = true;
+        return new Iterator<CharSequence>() {
+            private CharSequence next;
+            private boolean fetched;
+
+            @Override
+            public boolean hasNext() {
+                if (!fetched) {
+                    try {
+                        next = readLine();
+                    } catch (IOException e) {
+                        throw new RuntimeException("IOException occurred. ", e);
+                    }
+                    fetched = true;
+                }
+                return next != null;
+            }
+
+            @Override
+            public CharSequence next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                fetched = false;
+                return next;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        endOfInput = true;
+        position = end;
+        decoder.close();
+    }
+
+    /**
+     * @return false at end of input
+     */
+    private boolean fill() throws IOException {
+        CharBuffer chars = decoder.next();
+        if (chars == null) {
+            endOfInput = true;
+            return false;
+        }
+        chunk = chars.array();
+        position = chars.arrayOffset() + chars.position();
+        end = chars.arrayOffset() + chars.limit();
+        return true;
+    }
+
+    /**
+     * @return new length of line buffer
+     */
+    private int appendToLine(int length, int start, int count) {
+        if (lineBuffer == null || length + count > lineBuffer.length) {
+            int size = lineBuffer == null ? INITIAL_LINE_SIZE : lineBuffer.length * 2;
+            char[] larger = new char[Math.max(size, length + count)];
+            if (lineBuffer != null) {
+                System.arraycopy(lineBuffer, 0, larger, 0, length);
+            }
+            lineBuffer = larger;
+        }
+        System.arraycopy(chunk, start, lineBuffer, length, count);
+        return length + count;
+    }
+
+    /**
+     * Reused view on a range of chars
+     */
+    private static final class Line implements CharSequence {
+        private char[] array;
+        private int offset;
+        private int length;
+
+        Line set(char[] array, int offset, int length) {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            return array[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            return new String(array, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(array, offset, length);
+        }
+    }
+}
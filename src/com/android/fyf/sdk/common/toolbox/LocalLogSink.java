@@ -0,0 +1,32 @@
+package com.android.fyf.sdk.common.toolbox;
+
+/**
+ * Writes the lines of local files, records of {@link LogRecord#TARGET_LOCAL},
+ * {@link LogRecord#TARGET_FILE} and {@link LogRecord#TARGET_SOHULOG}, the way
+ * {@link LogUtils} is set up to: the async writer, mapped log, rotation and
+ * binary log apply as before. Log lines are left to the other sinks.
+ * <p>
+ * The async writer has a queue of its own, so register it as a direct sink,
+ * like the default pipeline of {@link LogUtils} does.
+ */
+public class LocalLogSink implements LogSink {
+
+    @Override
+    public void write(LogRecord record) {
+        if (record.getTarget() != LogRecord.TARGET_LOG) {
+            LogUtils.writeLocal(record);
+        }
+    }
+
+    /**
+     * nothing, the writers of {@link LogUtils} flush on their own and on
+     * {@link LogUtils#shutdownAsyncLog()}
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,89 @@
+package com.android.fyf.sdk.common.toolbox;
+
+/**
+ * Formats parameterized log messages, every "{}" in the pattern is replaced
+ * by the next argument. Messages are built in a per-thread
+ * {@link StringBuilder} which is reused across calls. The builder is taken
+ * out of its thread local while in use, so a message formatted from the
+ * toString() of an argument, e.g. one that logs, gets a builder of its own.
+ */
+final class LogFormatter {
+
+    private static final String PLACEHOLDER = "{}";
+    private static final int INITIAL_CAPACITY = 256;
+    /** a builder grown beyond this is not kept, to bound memory per thread **/
+    private static final int MAX_REUSED_CAPACITY = 8 * 1024;
+
+    /** builder of the thread, null while it is in use **/
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>();
+
+    private LogFormatter() {
+    }
+
+    static String format(String pattern, Object arg1) {
+        return format(pattern, 1, arg1, null, null, null);
+    }
+
+    static String format(String pattern, Object arg1, Object arg2) {
+        return format(pattern, 2, arg1, arg2, null, null);
+    }
+
+    static String format(String pattern, Object arg1, Object arg2, Object arg3) {
+        return format(pattern, 3, arg1, arg2, arg3, null);
+    }
+
+    static String format(String pattern, Object[] args) {
+        return format(pattern, args == null ? 0 : args.length, null, null, null, args);
+    }
+
+    /**
+     * @return the builder of current thread emptied, or a new one if it is in
+     *         use by a call further up the stack
+     */
+    static StringBuilder obtainBuilder() {
+        StringBuilder sb = BUILDER.get();
+        if (sb == null) {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+        BUILDER.set(null);
+        sb.setLength(0);
+        return sb;
+    }
+
+    /**
+     * give a builder from {@link #obtainBuilder()} back, a builder grown too
+     * large is dropped
+     *
+     * @return content of builder
+     */
+    static String release(StringBuilder sb) {
+        String result = sb.toString();
+        if (sb.capacity() <= MAX_REUSED_CAPACITY) {
+            BUILDER.set(sb);
+        }
+        return result;
+    }
+
+    private static String format(String pattern, int count, Object arg1, Object arg2, Object arg3, Object[] args) {
+        if (pattern == null) {
+            return "null";
+        }
+        StringBuilder sb = obtainBuilder();
+        int start = 0;
+        for (int index = 0; index < count; index++) {
+            int position = pattern.indexOf(PLACEHOLDER, start);
+            if (position < 0) {
+                break;
+            }
+            sb.append(pattern, start, position);
+            if (args != null) {
+                sb.append(args[index]);
+            } else {
+                sb.append(index == 0 ? arg1 : (index == 1 ? arg2 : arg3));
+            }
+            start = position + PLACEHOLDER.length();
+        }
+        sb.append(pattern, start, pattern.length());
+        return release(sb);
+    }
+}
@@ -0,0 +1,329 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fans log records out to several {@link LogSink}s
+ * <ul>
+ * <li>{@link #addSink(LogSink, int, int)} register a sink with its own level
+ * and its own queue</li>
+ * <li>{@link #log(int, String, String, Throwable)} build a record once and
+ * hand it to every sink whose level it reaches</li>
+ * <li>{@link #flush()} wait until queued records are written</li>
+ * <li>{@link #shutdown()} drain and close every sink</li>
+ * </ul>
+ * A queued sink is written by its own daemon thread from a
+ * {@link LogRingBuffer}, a full queue drops the record instead of blocking the
+ * caller, so a slow sink never stalls logging or other sinks. A direct sink is
+ * written on the calling thread. Nothing here depends on android classes, so
+ * a pipeline with stand-in sinks runs on a plain JVM.
+ */
+public class LogPipeline {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = 200L * 1000 * 1000;
+    private static final long FLUSH_WAIT_MILLIS = 100;
+
+    private volatile SinkHandle[] sinks = new SinkHandle[0];
+    private volatile int minLevel = Integer.MAX_VALUE;
+
+    /**
+     * @see #addSink(LogSink, int, int)
+     */
+    public LogPipeline addSink(LogSink sink, int minLevel) {
+        return addSink(sink, minLevel, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param sink
+     * @param minLevel records below this level are not given to the sink
+     * @param queueCapacity max count of records waiting for the sink, 0 or
+     *            less means a direct sink written on the logging thread
+     * @return this
+     */
+    public synchronized LogPipeline addSink(LogSink sink, int minLevel, int queueCapacity) {
+        if (sink == null) {
+            throw new NullPointerException("sink");
+        }
+        SinkHandle[] old = sinks;
+        SinkHandle[] copy = new SinkHandle[old.length + 1];
+        System.arraycopy(old, 0, copy, 0, old.length);
+        copy[old.length] = new SinkHandle(sink, minLevel, queueCapacity);
+        sinks = copy;
+        updateMinLevel();
+        return this;
+    }
+
+    /**
+     * remove a sink, records already queued are written before the sink is
+     * closed
+     *
+     * @param sink
+     * @return false if sink is not in this pipeline
+     */
+    public boolean removeSink(LogSink sink) {
+        SinkHandle removed = null;
+        synchronized (this) {
+            SinkHandle[] old = sinks;
+            List<SinkHandle> kept = new ArrayList<SinkHandle>(old.length);
+            for (SinkHandle handle : old) {
+                if (removed == null && handle.sink == sink) {
+                    removed = handle;
+                } else {
+                    kept.add(handle);
+                }
+            }
+            if (removed == null) {
+                return false;
+            }
+            sinks = kept.toArray(new SinkHandle[kept.size()]);
+            updateMinLevel();
+        }
+        removed.shutdown();
+        return true;
+    }
+
+    /**
+     * @param level
+     * @return whether any sink takes records of the level
+     */
+    public boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    /**
+     * @param level {@link LogUtils#VERBOSE} to {@link LogUtils#ASSERT}
+     * @param tag
+     * @param message may be null
+     * @param throwable may be null
+     */
+    public void log(int level, String tag, String message, Throwable throwable) {
+        log(level, tag, message, throwable, LogRecord.TARGET_LOG);
+    }
+
+    /**
+     * @param level {@link LogUtils#VERBOSE} to {@link LogUtils#ASSERT}
+     * @param tag
+     * @param message may be null
+     * @param throwable may be null
+     * @param target {@link LogRecord#TARGET_LOG} or a local file target, see
+     *            {@link LocalLogSink}
+     */
+    public void log(int level, String tag, String message, Throwable throwable, int target) {
+        if (level < minLevel) {
+            return;
+        }
+        LogRecord record = new LogRecord(level, tag, message, throwable, target);
+        SinkHandle[] handles = sinks;
+        for (int i = 0; i < handles.length; i++) {
+            if (level >= handles[i].minLevel) {
+                handles[i].offer(record);
+            }
+        }
+    }
+
+    /**
+     * block until every record logged before this call is written by its sink
+     * and the sinks are flushed
+     */
+    public void flush() {
+        for (SinkHandle handle : sinks) {
+            handle.flush();
+        }
+    }
+
+    /**
+     * remove every sink, each one is drained and closed
+     */
+    public void shutdown() {
+        SinkHandle[] handles;
+        synchronized (this) {
+            handles = sinks;
+            sinks = new SinkHandle[0];
+            minLevel = Integer.MAX_VALUE;
+        }
+        for (SinkHandle handle : handles) {
+            handle.shutdown();
+        }
+    }
+
+    /**
+     * @param sink
+     * @return count of records dropped because the queue of sink was full,
+     *         -1 if sink is not in this pipeline
+     */
+    public long getDroppedCount(LogSink sink) {
+        for (SinkHandle handle : sinks) {
+            if (handle.sink == sink) {
+                return handle.dropped.get();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param sink
+     * @return count of records the sink failed on with an exception, -1 if
+     *         sink is not in this pipeline
+     */
+    public long getFailedCount(LogSink sink) {
+        for (SinkHandle handle : sinks) {
+            if (handle.sink == sink) {
+                return handle.failed.get();
+            }
+        }
+        return -1;
+    }
+
+    private void updateMinLevel() {
+        int min = Integer.MAX_VALUE;
+        for (SinkHandle handle : sinks) {
+            min = Math.min(min, handle.minLevel);
+        }
+        minLevel = min;
+    }
+
+    private static final class SinkHandle {
+        final LogSink sink;
+        final int minLevel;
+        final LogRingBuffer<LogRecord> queue;
+        final Thread thread;
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final Object flushLock = new Object();
+        volatile boolean parked;
+        volatile long writtenCount;
+
+        SinkHandle(LogSink sink, int minLevel, int queueCapacity) {
+            this.sink = sink;
+            this.minLevel = minLevel;
+            if (queueCapacity <= 0) {
+                queue = null;
+                thread = null;
+                return;
+            }
+            queue = new LogRingBuffer<LogRecord>(queueCapacity);
+            thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    drainLoop();
+                }
+            }, "LogSink-" + sink.getClass().getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void offer(LogRecord record) {
+            if (queue == null) {
+                write(record);
+                return;
+            }
+            if (!queue.offer(record)) {
+                // full, or closed by shutdown
+                dropped.incrementAndGet();
+                return;
+            }
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        void flush() {
+            if (queue == null) {
+                flushSink();
+                return;
+            }
+            long target = queue.producedCount();
+            while (writtenCount < target && thread.isAlive()) {
+                LockSupport.unpark(thread);
+                synchronized (flushLock) {
+                    if (writtenCount < target) {
+                        try {
+                            flushLock.wait(FLUSH_WAIT_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        void shutdown() {
+            if (thread == null) {
+                flushSink();
+                closeSink();
+                return;
+            }
+            // producers see the closed queue before the drain thread can
+            // find it empty, a record is either queued and written or dropped
+            queue.close();
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void drainLoop() {
+            List<LogRecord> batch = new ArrayList<LogRecord>(BATCH_SIZE);
+            for (;;) {
+                boolean stopping = queue.isClosed();
+                if (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        write(batch.get(i));
+                    }
+                    batch.clear();
+                    flushSink();
+                }
+                writtenCount = queue.consumedCount();
+                synchronized (flushLock) {
+                    flushLock.notifyAll();
+                }
+                if (!queue.isEmpty()) {
+                    continue;
+                }
+                if (stopping) {
+                    break;
+                }
+                parked = true;
+                if (queue.isEmpty() && !queue.isClosed()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                parked = false;
+            }
+            closeSink();
+        }
+
+        private void write(LogRecord record) {
+            try {
+                sink.write(record);
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+            }
+        }
+
+        private void flushSink() {
+            try {
+                sink.flush();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+            }
+        }
+
+        private void closeSink() {
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * One log line, built once by {@link LogPipeline} and shared by all sinks, so
+ * it never changes after creation
+ */
+public final class LogRecord {
+
+    /** time format of {@link #appendTo(StringBuilder, DateFormat)} **/
+    public static final String TIME_FORMAT = "[MM-dd HH:mm:ss.SSS]";
+
+    /** a line of d/i/w/e and p of {@link LogUtils}, for logcat **/
+    public static final int TARGET_LOG = 0;
+    /** a line of {@link LogUtils#logToLocal(String)}, for the hourly log file **/
+    public static final int TARGET_LOCAL = 1;
+    /** a line of {@link LogUtils#fileLog(String, String)}, the tag is the file name **/
+    public static final int TARGET_FILE = 2;
+    /** a stack trace of {@link LogUtils#printStackTrace(Throwable)}, for sohulog **/
+    public static final int TARGET_SOHULOG = 3;
+
+    private static final String LEVELS = "??VDIWEA";
+
+    private final long time;
+    private final int level;
+    private final String tag;
+    private final String message;
+    private final Throwable throwable;
+    private final long threadId;
+    private final String threadName;
+    private final int target;
+
+    /**
+     * log line of current thread at current time
+     *
+     * @param level {@link LogUtils#VERBOSE} to {@link LogUtils#ASSERT}
+     * @param tag
+     * @param message may be null
+     * @param throwable may be null
+     */
+    public LogRecord(int level, String tag, String message, Throwable throwable) {
+        this(level, tag, message, throwable, TARGET_LOG);
+    }
+
+    /**
+     * record of current thread at current time
+     *
+     * @param level {@link LogUtils#VERBOSE} to {@link LogUtils#ASSERT}
+     * @param tag
+     * @param message may be null
+     * @param throwable may be null
+     * @param target {@link #TARGET_LOG} or where a line of a local file goes
+     */
+    public LogRecord(int level, String tag, String message, Throwable throwable, int target) {
+        Thread thread = Thread.currentThread();
+        this.time = System.currentTimeMillis();
+        this.level = level;
+        this.tag = tag;
+        this.message = message;
+        this.throwable = throwable;
+        this.threadId = thread.getId();
+        this.threadName = thread.getName();
+        this.target = target;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return V, D, I, W, E or A
+     */
+    public char getLevelChar() {
+        return level >= 0 && level < LEVELS.length() ? LEVELS.charAt(level) : '?';
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return {@link #TARGET_LOG}, {@link #TARGET_LOCAL}, {@link #TARGET_FILE}
+     *         or {@link #TARGET_SOHULOG}
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * append [MM-dd HH:mm:ss.SSS]\tD/tag(thread):message, followed by the
+     * stack trace if there is a throwable, without line separator at the end
+     *
+     * @param sb
+     * @param timeFormat formats {@link #TIME_FORMAT}, not thread safe, so the
+     *            caller owns it
+     * @return sb
+     */
+    public StringBuilder appendTo(StringBuilder sb, DateFormat timeFormat) {
+        sb.append(timeFormat.format(new Date(time))).append('\t').append(getLevelChar()).append('/').append(tag)
+                .append('(').append(threadName).append("):");
+        if (message != null) {
+            sb.append(message);
+        }
+        if (throwable != null) {
+            StringWriter trace = new StringWriter();
+            throwable.printStackTrace(new PrintWriter(trace));
+            sb.append('\n').append(trace.toString().trim());
+        }
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(64), new SimpleDateFormat(TIME_FORMAT)).toString();
+    }
+}
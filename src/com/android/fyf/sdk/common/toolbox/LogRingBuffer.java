@@ -0,0 +1,177 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer, safe for many producers and many consumers.
+ * <ul>
+ * <li>{@link #offer(Object)} never blocks, return false if buffer is full</li>
+ * <li>{@link #poll()} never blocks, return null if buffer is empty</li>
+ * <li>{@link #drainTo(List, int)} poll a batch of elements</li>
+ * <li>{@link #close()} refuse later elements, those offered before stay to be
+ * polled</li>
+ * </ul>
+ * Every slot carries a sequence number, producers and consumers claim slots
+ * by CAS on {@link #producedCount()} and {@link #consumedCount()}. The closed
+ * flag is the sign bit of the producer count, so a slot is either claimed
+ * before the buffer is closed or not at all.
+ *
+ * @param <E>
+ */
+public class LogRingBuffer<E> {
+
+    /** flag of {@link #tail} once closed **/
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final int mask;
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public LogRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        slots = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * add element to the tail of buffer
+     *
+     * @param e
+     * @return false if buffer is full or closed
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long pos = tail.get();
+        for (;;) {
+            if (pos < 0) {
+                return false;
+            }
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[index] = e;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * remove element from the head of buffer
+     *
+     * @return null if buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = (E) slots[index];
+                    slots[index] = null;
+                    sequences.set(index, pos + mask + 1);
+                    return e;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * poll at most maxElements elements into target
+     *
+     * @param target
+     * @param maxElements
+     * @return count of elements added to target
+     */
+    public int drainTo(List<? super E> target, int maxElements) {
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null) {
+            target.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * refuse elements from now on, elements offered before stay in the
+     * buffer. Once a consumer sees {@link #isEmpty()} after close, no element
+     * comes any more.
+     */
+    public void close() {
+        for (;;) {
+            long pos = tail.get();
+            if (pos < 0 || tail.compareAndSet(pos, pos | CLOSED)) {
+                return;
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return tail.get() < 0;
+    }
+
+    /**
+     * @return true if every claimed slot was polled, a slot claimed but not
+     *         filled yet counts as an element
+     */
+    public boolean isEmpty() {
+        return head.get() >= (tail.get() & ~CLOSED);
+    }
+
+    public int size() {
+        long size = (tail.get() & ~CLOSED) - head.get();
+        return size < 0 ? 0 : (int) Math.min(size, slots.length);
+    }
+
+    /**
+     * @return count of slots claimed by producers since creation
+     */
+    public long producedCount() {
+        return tail.get() & ~CLOSED;
+    }
+
+    /**
+     * @return count of slots claimed by consumers since creation
+     */
+    public long consumedCount() {
+        return head.get();
+    }
+}
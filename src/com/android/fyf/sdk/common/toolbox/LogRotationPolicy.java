@@ -0,0 +1,86 @@
+package com.android.fyf.sdk.common.toolbox;
+
+/**
+ * When log files are rolled over and how long rotated segments are kept, used
+ * by {@link LogRotator}. A limit of 0 means no limit.
+ * 
+ * <pre>
+ * new LogRotationPolicy().setMaxFileSize(8 * 1024 * 1024).setMaxTotalSize(64 * 1024 * 1024)
+ *         .setMaxAge(7 * 24 * 60 * 60 * 1000L).setCompress(true);
+ * </pre>
+ */
+public class LogRotationPolicy {
+
+    private long maxFileSize;
+    private long intervalMillis;
+    private long maxTotalSize;
+    private long maxAgeMillis;
+    private boolean compress = true;
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * @param maxFileSize roll over when a file reaches this size in bytes
+     * @return this
+     */
+    public LogRotationPolicy setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+        return this;
+    }
+
+    public long getInterval() {
+        return intervalMillis;
+    }
+
+    /**
+     * @param intervalMillis roll over when the last write of a file is in an
+     *            earlier interval, intervals are aligned to local time
+     * @return this
+     */
+    public LogRotationPolicy setInterval(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        return this;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    /**
+     * @param maxTotalSize delete oldest files when log files not being
+     *            written together exceed this size in bytes
+     * @return this
+     */
+    public LogRotationPolicy setMaxTotalSize(long maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+        return this;
+    }
+
+    public long getMaxAge() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @param maxAgeMillis delete files not modified for this time
+     * @return this
+     */
+    public LogRotationPolicy setMaxAge(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * @param compress gzip rotated segments, default is true
+     * @return this
+     */
+    public LogRotationPolicy setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+}
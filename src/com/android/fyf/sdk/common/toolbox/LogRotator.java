@@ -0,0 +1,331 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rolls over log files of a directory according to a
+ * {@link LogRotationPolicy}
+ * <ul>
+ * <li>{@link #shouldRotate(long, long, long)} asked by writers before a write</li>
+ * <li>{@link #rotate(File)} rename the active file to a segment</li>
+ * <li>{@link #retire(File)} hand over a finished file, e.g. last hour's file</li>
+ * </ul>
+ * Segments are gzipped and retention is enforced on one background thread, so
+ * writers only pay for a rename. Bytes written, segments rotated and
+ * compression ratio are counted for monitoring.
+ */
+public class LogRotator {
+    private static final String TAG = "LogRotator";
+
+    public static final String COMPRESSED_EXTENSION = ".gz";
+
+    private static final String[] LOG_EXTENSIONS = { ".txt", MappedLogFile.FILE_EXTENSION,
+            BinaryLogWriter.FILE_EXTENSION, COMPRESSED_EXTENSION };
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final File dir;
+    private final LogRotationPolicy policy;
+    private final ExecutorService executor;
+    /** names being written, with the count of writers of each **/
+    private final Map<String, Integer> activeNames = new HashMap<String, Integer>();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong segmentsRotated = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong filesDeleted = new AtomicLong();
+
+    public LogRotator(File dir, LogRotationPolicy policy) {
+        this.dir = dir;
+        this.policy = policy;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public LogRotationPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param size current size of the active file
+     * @param lastModified time of the last write to the active file
+     * @param now
+     * @return whether the active file must be rotated before the next write
+     */
+    public boolean shouldRotate(long size, long lastModified, long now) {
+        if (size <= 0) {
+            return false;
+        }
+        if (policy.getMaxFileSize() > 0 && size >= policy.getMaxFileSize()) {
+            return true;
+        }
+        long interval = policy.getInterval();
+        return interval > 0 && intervalIndex(lastModified, interval) != intervalIndex(now, interval);
+    }
+
+    /**
+     * rename the active file to a segment named name.timestamp.ext, the
+     * segment is compressed in background and retention is enforced
+     * 
+     * @param active
+     * @return false if the file can not be renamed
+     */
+    public boolean rotate(File active) {
+        String name = active.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        long now = System.currentTimeMillis();
+        File segment = new File(dir, base + "." + now + extension);
+        while (segment.exists()) {
+            segment = new File(dir, base + "." + (++now) + extension);
+        }
+        if (!active.renameTo(segment)) {
+            LogUtils.w(TAG, "rotate failed: " + active);
+            return false;
+        }
+        segmentsRotated.incrementAndGet();
+        retire(segment);
+        return true;
+    }
+
+    /**
+     * hand over a file which will not be written any more, it is compressed
+     * in background and retention is enforced
+     * 
+     * @param file
+     */
+    public void retire(final File file) {
+        submit(new Runnable() {
+
+            @Override
+            public void run() {
+                if (policy.isCompress()) {
+                    compress(file);
+                }
+                enforceRetention();
+            }
+        });
+    }
+
+    /**
+     * a file being written is never deleted by retention. Calls are counted,
+     * a file written by several writers stays active until each of them set
+     * it inactive.
+     * 
+     * @param name file name in log directory
+     * @param active
+     */
+    public void setActive(String name, boolean active) {
+        synchronized (activeNames) {
+            Integer count = activeNames.get(name);
+            if (active) {
+                activeNames.put(name, count == null ? 1 : count + 1);
+            } else if (count != null && count > 1) {
+                activeNames.put(name, count - 1);
+            } else {
+                activeNames.remove(name);
+            }
+        }
+    }
+
+    /**
+     * count bytes written to log files
+     * 
+     * @param bytes
+     */
+    public void onWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * enforce retention in background
+     */
+    public void trim() {
+        submit(new Runnable() {
+
+            @Override
+            public void run() {
+                enforceRetention();
+            }
+        });
+    }
+
+    /**
+     * finish pending compression and stop the background thread
+     * 
+     * @param timeoutMillis
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getSegmentsRotated() {
+        return segmentsRotated.get();
+    }
+
+    public long getFilesDeleted() {
+        return filesDeleted.get();
+    }
+
+    /**
+     * @return compressed size / original size of all compressed segments, 1
+     *         if nothing is compressed yet
+     */
+    public double getCompressionRatio() {
+        long before = bytesBeforeCompression.get();
+        return before == 0 ? 1 : (double) bytesAfterCompression.get() / before;
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            LogUtils.w(TAG, "rotator is shut down");
+        }
+    }
+
+    private void compress(File file) {
+        if (!file.isFile() || file.getName().endsWith(COMPRESSED_EXTENSION)) {
+            return;
+        }
+        File target = new File(file.getPath() + COMPRESSED_EXTENSION);
+        File temp = new File(target.getPath() + ".tmp");
+        InputStream in = null;
+        OutputStream out = null;
+        boolean done = false;
+        try {
+            in = new FileInputStream(file);
+            out = new GZIPOutputStream(new FileOutputStream(temp), COPY_BUFFER_SIZE);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            out.close();
+            out = null;
+            done = temp.renameTo(target);
+        } catch (IOException e) {
+            LogUtils.e(TAG, "compress failed: " + file, e);
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+        if (!done) {
+            temp.delete();
+            return;
+        }
+        bytesBeforeCompression.addAndGet(file.length());
+        bytesAfterCompression.addAndGet(target.length());
+        target.setLastModified(file.lastModified());
+        file.delete();
+    }
+
+    private void enforceRetention() {
+        long maxTotal = policy.getMaxTotalSize();
+        long maxAge = policy.getMaxAge();
+        if (maxTotal <= 0 && maxAge <= 0) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> candidates = new ArrayList<File>(files.length);
+        long total = 0;
+        synchronized (activeNames) {
+            for (File file : files) {
+                if (!isLogFile(file.getName())) {
+                    continue;
+                }
+                if (!activeNames.containsKey(file.getName())) {
+                    candidates.add(file);
+                }
+            }
+        }
+        final Map<File, Long> times = new HashMap<File, Long>();
+        for (File file : candidates) {
+            times.put(file, file.lastModified());
+        }
+        // newest first
+        Collections.sort(candidates, new Comparator<File>() {
+
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = times.get(lhs);
+                long r = times.get(rhs);
+                return l > r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        long now = System.currentTimeMillis();
+        for (File file : candidates) {
+            long length = file.length();
+            boolean expired = maxAge > 0 && now - times.get(file) > maxAge;
+            boolean overflow = maxTotal > 0 && total + length > maxTotal;
+            if ((expired || overflow) && file.delete()) {
+                filesDeleted.incrementAndGet();
+            } else {
+                total += length;
+            }
+        }
+    }
+
+    private static boolean isLogFile(String name) {
+        for (String extension : LOG_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long intervalIndex(long time, long interval) {
+        return (time + TimeZone.getDefault().getOffset(time)) / interval;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.android.fyf.sdk.common.toolbox;
+
+/**
+ * Destination of log records in a {@link LogPipeline}. A queued sink is only
+ * called by its own thread; a direct sink is called by logging threads at the
+ * same time and must be thread safe.
+ */
+public interface LogSink {
+
+    /**
+     * @param record
+     */
+    void write(LogRecord record);
+
+    /**
+     * called after a batch of records is written and on
+     * {@link LogPipeline#flush()}
+     */
+    void flush();
+
+    /**
+     * called once the sink is removed from its pipeline
+     */
+    void close();
+}
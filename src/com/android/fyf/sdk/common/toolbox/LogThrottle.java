@@ -0,0 +1,419 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a flood of log lines from a single tag out of logcat and log files
+ * <ul>
+ * <li>{@link #setRateLimit(String, double, int)} token bucket of a tag, lines
+ * over the limit are dropped and counted</li>
+ * <li>{@link #setDefaultRateLimit(double, int)} token bucket of every other
+ * tag</li>
+ * <li>{@link #setCollapseRepeats(boolean)} fold identical consecutive lines of
+ * a tag into one "repeated N times" line</li>
+ * </ul>
+ * The bucket of a tag is a single {@link AtomicLong} holding the time its
+ * tokens are used up until, a line takes a token with one CAS, a dropped line
+ * only reads it. Dropped and repeated lines of a tag are counted by a
+ * {@link StripedCounter} that only grows, a summary takes the part not yet
+ * summarized with one CAS, so threads flooding the same tag do not fight over
+ * one counter and every line is in exactly one summary.
+ * <p>
+ * Summaries are printed with the next line of the tag, a flood that stops is
+ * summarized by {@link #flushExpired(Printer)}, which
+ * {@link LogUtils#setLogThrottle(LogThrottle)} runs every second.
+ */
+public class LogThrottle {
+
+    /**
+     * Receives the summary lines of dropped and repeated lines
+     */
+    public interface Printer {
+
+        void print(int level, String tag, String msg);
+    }
+
+    /**
+     * repeated lines are summarized by the first repeat after this time, or by
+     * {@link #flushExpired(Printer)} after it
+     **/
+    public static final long DEFAULT_COLLAPSE_WINDOW_MILLIS = 1000;
+
+    private static final int MAX_TAGS = 1024;
+    private static final long NANOS_PER_SECOND = 1000L * 1000 * 1000;
+
+    private volatile Map<String, Limit> limits = Collections.emptyMap();
+    private volatile Limit defaultLimit;
+    private volatile boolean collapseRepeats = true;
+    private volatile long collapseWindowNanos = DEFAULT_COLLAPSE_WINDOW_MILLIS * 1000 * 1000;
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    private final ConcurrentHashMap<String, AtomicReference<Repeat>> repeats = new ConcurrentHashMap<String, AtomicReference<Repeat>>();
+    private final StripedCounter dropped = new StripedCounter();
+    private final StripedCounter collapsed = new StripedCounter();
+
+    /**
+     * limit lines of a tag
+     *
+     * @param tag
+     * @param permitsPerSecond lines per second in the long run
+     * @param burst lines allowed at once after a quiet period
+     * @return this
+     */
+    public synchronized LogThrottle setRateLimit(String tag, double permitsPerSecond, int burst) {
+        Map<String, Limit> copy = new HashMap<String, Limit>(limits);
+        copy.put(tag, new Limit(permitsPerSecond, burst));
+        limits = copy;
+        buckets.remove(tag);
+        return this;
+    }
+
+    /**
+     * @param tag
+     * @return this
+     */
+    public synchronized LogThrottle clearRateLimit(String tag) {
+        Map<String, Limit> copy = new HashMap<String, Limit>(limits);
+        copy.remove(tag);
+        limits = copy;
+        buckets.remove(tag);
+        return this;
+    }
+
+    /**
+     * limit lines of tags without their own limit, every tag has its own bucket
+     *
+     * @param permitsPerSecond 0 or less means no limit
+     * @param burst
+     * @return this
+     */
+    public synchronized LogThrottle setDefaultRateLimit(double permitsPerSecond, int burst) {
+        defaultLimit = permitsPerSecond > 0 ? new Limit(permitsPerSecond, burst) : null;
+        buckets.clear();
+        return this;
+    }
+
+    /**
+     * @param collapse default is true
+     * @return this
+     */
+    public LogThrottle setCollapseRepeats(boolean collapse) {
+        this.collapseRepeats = collapse;
+        return this;
+    }
+
+    /**
+     * @param millis while a line keeps repeating, a summary is printed after
+     *            this time, see {@link #flushExpired(Printer)}
+     * @return this
+     */
+    public LogThrottle setCollapseWindow(long millis) {
+        this.collapseWindowNanos = millis * 1000 * 1000;
+        return this;
+    }
+
+    /**
+     * take a token of the tag
+     *
+     * @param tag
+     * @param printer receives a summary of lines dropped before this one
+     * @return false if the line should be dropped
+     */
+    public boolean tryAcquire(String tag, Printer printer) {
+        Bucket bucket = bucket(tag);
+        if (bucket == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        for (;;) {
+            long available = bucket.availableAt.get();
+            long start = available - now > 0 ? available : now;
+            if (start - now > bucket.limit.tolerance) {
+                bucket.dropped.add();
+                dropped.increment();
+                return false;
+            }
+            if (bucket.availableAt.compareAndSet(available, start + bucket.limit.interval)) {
+                break;
+            }
+        }
+        printDropped(bucket, tag, printer);
+        return true;
+    }
+
+    /**
+     * check whether a line repeats the last line of its tag
+     *
+     * @param level
+     * @param tag
+     * @param msg
+     * @param tr may be null
+     * @param printer receives the summary of the previous repeated line
+     * @return false if the line is a repeat and should not be printed
+     */
+    public boolean collapse(int level, String tag, String msg, Throwable tr, Printer printer) {
+        if (!collapseRepeats || tag == null) {
+            return true;
+        }
+        AtomicReference<Repeat> ref = repeats.get(tag);
+        if (ref == null) {
+            if (repeats.size() >= MAX_TAGS) {
+                flush(printer);
+            }
+            ref = new AtomicReference<Repeat>();
+            AtomicReference<Repeat> old = repeats.putIfAbsent(tag, ref);
+            if (old != null) {
+                ref = old;
+            }
+        }
+        long now = System.nanoTime();
+        for (;;) {
+            Repeat current = ref.get();
+            if (current == null || !current.matches(level, msg, tr)) {
+                Repeat previous = ref.getAndSet(new Repeat(level, msg, tr, now));
+                if (previous != null) {
+                    printSummary(previous, tag, printer);
+                }
+                return true;
+            }
+            if (now - current.start < collapseWindowNanos) {
+                collapsed.increment();
+                if (!current.count.add()) {
+                    // summarized meanwhile, that summary may have missed it
+                    printSummary(current, tag, printer);
+                }
+                return false;
+            }
+            // still repeating, summarize the window and start a new one
+            if (ref.compareAndSet(current, current.next(now))) {
+                collapsed.increment();
+                current.count.add();
+                printSummary(current, tag, printer);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * print summaries of all repeated lines not yet summarized
+     *
+     * @param printer
+     */
+    public void flush(Printer printer) {
+        Iterator<Map.Entry<String, AtomicReference<Repeat>>> it = repeats.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, AtomicReference<Repeat>> entry = it.next();
+            it.remove();
+            Repeat repeat = entry.getValue().getAndSet(null);
+            if (repeat != null) {
+                printSummary(repeat, entry.getKey(), printer);
+            }
+        }
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            printDropped(entry.getValue(), entry.getKey(), printer);
+        }
+    }
+
+    /**
+     * print summaries of repeated lines whose window is over and of dropped
+     * lines, so that a flood which stopped does not wait for the next line of
+     * its tag. Lines repeating after it are still folded.
+     *
+     * @param printer
+     */
+    public void flushExpired(Printer printer) {
+        long now = System.nanoTime();
+        for (Map.Entry<String, AtomicReference<Repeat>> entry : repeats.entrySet()) {
+            AtomicReference<Repeat> ref = entry.getValue();
+            Repeat current = ref.get();
+            if (current != null && now - current.start >= collapseWindowNanos && current.count.hasPending()
+                    && ref.compareAndSet(current, current.next(now))) {
+                printSummary(current, entry.getKey(), printer);
+            }
+        }
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            printDropped(entry.getValue(), entry.getKey(), printer);
+        }
+    }
+
+    /**
+     * @return lines dropped by rate limits since creation
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return lines folded into "repeated N times" since creation
+     */
+    public long getCollapsedCount() {
+        return collapsed.sum();
+    }
+
+    private Bucket bucket(String tag) {
+        if (tag == null) {
+            return null;
+        }
+        Bucket bucket = buckets.get(tag);
+        if (bucket != null) {
+            return bucket;
+        }
+        Limit limit = limits.get(tag);
+        if (limit == null) {
+            limit = defaultLimit;
+            if (limit == null) {
+                return null;
+            }
+        }
+        if (buckets.size() >= MAX_TAGS) {
+            buckets.clear();
+        }
+        bucket = new Bucket(limit, System.nanoTime());
+        Bucket old = buckets.putIfAbsent(tag, bucket);
+        return old != null ? old : bucket;
+    }
+
+    private static void printSummary(Repeat repeat, String tag, Printer printer) {
+        long count = repeat.count.retire();
+        if (count > 0) {
+            printer.print(repeat.level, tag, "repeated " + count + " times: " + repeat.msg);
+        }
+    }
+
+    private static void printDropped(Bucket bucket, String tag, Printer printer) {
+        if (bucket.dropped.hasPending()) {
+            long count = bucket.dropped.take();
+            if (count > 0) {
+                printer.print(LogUtils.WARN, tag, count + " lines dropped by rate limit");
+            }
+        }
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static final class Limit {
+        /** nanos per token **/
+        final long interval;
+        /** how far ahead of now tokens may be taken **/
+        final long tolerance;
+
+        Limit(double permitsPerSecond, int burst) {
+            if (permitsPerSecond <= 0) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+            }
+            interval = Math.max(1, (long) (NANOS_PER_SECOND / permitsPerSecond));
+            tolerance = interval * (Math.max(1, burst) - 1);
+        }
+    }
+
+    private static final class Bucket {
+        final Limit limit;
+        final AtomicLong availableAt;
+        final Tally dropped = new Tally();
+
+        Bucket(Limit limit, long now) {
+            this.limit = limit;
+            this.availableAt = new AtomicLong(now);
+        }
+    }
+
+    /**
+     * Lines of a tag to summarize: a striped count that only grows and how
+     * much of it was summarized
+     */
+    private static final class Tally {
+        final StripedCounter count = new StripedCounter();
+        final AtomicLong summarized = new AtomicLong();
+        volatile boolean retired;
+
+        /**
+         * @return false if it was retired meanwhile, the caller then takes a
+         *         summary itself so that its line is not lost
+         */
+        boolean add() {
+            count.increment();
+            return !retired;
+        }
+
+        boolean hasPending() {
+            return count.sum() > summarized.get();
+        }
+
+        /**
+         * @return lines not summarized yet, concurrent calls never return the
+         *         same line twice
+         */
+        long take() {
+            for (;;) {
+                long total = count.sum();
+                long done = summarized.get();
+                if (total <= done) {
+                    return 0;
+                }
+                if (summarized.compareAndSet(done, total)) {
+                    return total - done;
+                }
+            }
+        }
+
+        /**
+         * take the last summary, a line added later makes its adder take one
+         * more
+         */
+        long retire() {
+            retired = true;
+            return take();
+        }
+    }
+
+    private static final class Repeat {
+        final int level;
+        final String msg;
+        /** class and message of the throwable, the throwable is not kept **/
+        final Class<?> trClass;
+        final String trMessage;
+        final long start;
+        final Tally count = new Tally();
+
+        Repeat(int level, String msg, Class<?> trClass, String trMessage, long start) {
+            this.level = level;
+            this.msg = msg;
+            this.trClass = trClass;
+            this.trMessage = trMessage;
+            this.start = start;
+        }
+
+        Repeat(int level, String msg, Throwable tr, long start) {
+            this(level, msg, tr == null ? null : tr.getClass(), tr == null ? null : tr.getLocalizedMessage(), start);
+        }
+
+        /**
+         * @return whether a line is the same as this one, without building
+         *         anything
+         */
+        boolean matches(int level, String msg, Throwable tr) {
+            if (level != this.level || !equal(msg, this.msg)) {
+                return false;
+            }
+            if (tr == null) {
+                return trClass == null;
+            }
+            return tr.getClass() == trClass && equal(tr.getLocalizedMessage(), trMessage);
+        }
+
+        /**
+         * @return repeat of the same line starting a new window
+         */
+        Repeat next(long now) {
+            return new Repeat(level, msg, trClass, trMessage, now);
+        }
+    }
+}
@@ -10,12 +10,15 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
 
 import android.os.Environment;
 import android.os.Process;
 import android.text.TextUtils;
-import android.util.Log;
 
 /**
  * LogUtils
@@ -36,6 +39,33 @@ import android.util.Log;
  * <li>{@link LogUtils#e(String, String, Throwable)}</li>
  * <li>{@link LogUtils#p(Object)}</li>
  * </ul>
+ * <ul>
+ * <strong>参数化日志和级别</strong>
+ * <li>{@link LogUtils#d(String, String, Object)}</li>
+ * <li>{@link LogUtils#d(String, MessageSupplier)}</li>
+ * <li>{@link LogUtils#isLoggable(String, int)}</li>
+ * <li>{@link LogUtils#setDefaultLogLevel(int)}</li>
+ * <li>{@link LogUtils#setLogLevel(String, int)}</li>
+ * <li>{@link LogUtils#setLogThrottle(LogThrottle)}</li>
+ * <li>{@link LogUtils#setLogPipeline(LogPipeline)}</li>
+ * <li>{@link LogUtils#newDefaultPipeline()}</li>
+ * </ul>
+ * <ul>
+ * <strong>异步写日志文件</strong>
+ * <li>{@link LogUtils#enableAsyncLog(int, AsyncLogWriter.OverflowPolicy)}</li>
+ * <li>{@link LogUtils#flushAsyncLog()}</li>
+ * <li>{@link LogUtils#shutdownAsyncLog()}</li>
+ * <li>{@link LogUtils#setMappedLog(boolean)}</li>
+ * <li>{@link LogUtils#setLogRotationPolicy(LogRotationPolicy)}</li>
+ * <li>{@link LogUtils#setFileLogCache(int, long, long)}</li>
+ * <li>{@link LogUtils#closeFileLogs()}</li>
+ * </ul>
+ * <ul>
+ * <strong>二进制日志</strong>
+ * <li>{@link LogUtils#enableBinaryLog()}</li>
+ * <li>{@link LogUtils#disableBinaryLog()}</li>
+ * <li>{@link BinaryLogDecoder} 在PC上解码为文本</li>
+ * </ul>
  * 
  * @author boyang116245@sohu-inc.com
  * @since 2013-11-12
@@ -45,10 +75,151 @@ public class LogUtils {
 
     private static boolean ENABLE_LOG = false;
 
+    private static volatile AsyncLogWriter sAsyncWriter;
+    private static final Object mFileLock = new Object();
+    private static volatile boolean sMappedLog = false;
+    private static MappedLogFile sMappedLogFile;
+    private static long sMappedLogModified;
+    private static HourlyFileName sMappedLogName;
+    private static volatile LogRotator sLogRotator;
+    private static String sLastLogFileName;
+    private static volatile BinaryLogWriter sBinaryLog;
+    private static ScheduledFuture<?> sBinaryLogFlush;
+    private static ScheduledFuture<?> sThrottleFlush;
+    private static volatile LogThrottle sThrottle;
+    private static final LogPipeline DEFAULT_PIPELINE = newDefaultPipeline();
+    private static volatile LogPipeline sPipeline = DEFAULT_PIPELINE;
+    private static LogWriterCache sFileLogWriters;
+    private static final LogThrottle.Printer PRINTER = new LogThrottle.Printer() {
+
+        @Override
+        public void print(int level, String tag, String msg) {
+            write(level, tag, msg, null);
+        }
+    };
+
+    /**
+     * 延迟生成日志内容，只有日志级别开启时才调用
+     */
+    public interface MessageSupplier {
+        CharSequence get();
+    }
+
     public static boolean isDebug() {
         return ENABLE_LOG;
     }
 
+    /**
+     * 是否输出该tag该级别的日志：单独设置过级别的tag按其级别判断，不受调试模式开关影响；
+     * 其他tag在调试模式下按默认级别判断
+     * 
+     * @param tag
+     * @param level {@link #VERBOSE}到{@link #ASSERT}
+     * @return
+     */
+    public static boolean isLoggable(String tag, int level) {
+        Map<String, Integer> levels = sTagLevels;
+        if (!levels.isEmpty() && tag != null) {
+            Integer tagLevel = levels.get(tag);
+            if (tagLevel != null) {
+                return level >= tagLevel;
+            }
+        }
+        return ENABLE_LOG && level >= sDefaultLevel;
+    }
+
+    /**
+     * 设置日志限流：按tag限制每秒条数，连续重复的日志合并为一条"repeated N times"，
+     * 对d/i/w/e和{@link #printStackTrace(Throwable)}生效；后台线程每秒调用
+     * {@link LogThrottle#flushExpired(LogThrottle.Printer)}，停止的刷屏日志也会输出汇总
+     * 
+     * @param throttle 为null时关闭限流，原限流器中未输出的合并日志会先输出
+     */
+    public static void setLogThrottle(LogThrottle throttle) {
+        LogThrottle old;
+        synchronized (LogUtils.class) {
+            old = sThrottle;
+            sThrottle = throttle;
+            scheduleThrottleFlush();
+        }
+        if (old != null) {
+            old.flush(PRINTER);
+        }
+    }
+
+    /**
+     * 设置日志输出管道：所有输出，即d/i/w/e、p、{@link #logToLocal(String)}、
+     * {@link #fileLog(String, String)}和{@link #printStackTrace(Throwable)}写sohulog的日志，
+     * 都生成一条{@link LogRecord}分发给管道中的各个{@link LogSink}，如{@link LogcatSink}、
+     * {@link LocalLogSink}、{@link FileLogSink}、{@link MemoryLogSink}。
+     * 本地文件的日志由{@link LocalLogSink}写入，自定义管道需要包含它，可从{@link #newDefaultPipeline()}开始添加
+     * 
+     * @param pipeline 为null时恢复默认管道，原管道会被关闭
+     */
+    public static void setLogPipeline(LogPipeline pipeline) {
+        if (pipeline == null) {
+            pipeline = DEFAULT_PIPELINE;
+        }
+        LogPipeline old = sPipeline;
+        sPipeline = pipeline;
+        if (old != pipeline && old != DEFAULT_PIPELINE) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * @return 当前的日志输出管道，未设置时为默认管道
+     */
+    public static LogPipeline getLogPipeline() {
+        return sPipeline;
+    }
+
+    /**
+     * @return 新的默认管道：{@link LogcatSink}和{@link LocalLogSink}，都在调用线程上直接写
+     */
+    public static LogPipeline newDefaultPipeline() {
+        return new LogPipeline().addSink(new LogcatSink(), VERBOSE, 0).addSink(new LocalLogSink(), VERBOSE, 0);
+    }
+
+    /**
+     * @return 当前的日志限流器，可读取丢弃和合并的条数，未设置时为null
+     */
+    public static LogThrottle getLogThrottle() {
+        return sThrottle;
+    }
+
+    /**
+     * 设置调试模式下的默认日志级别，低于该级别的日志不输出
+     * 
+     * @param level
+     */
+    public static void setDefaultLogLevel(int level) {
+        sDefaultLevel = level;
+    }
+
+    /**
+     * 单独设置某个tag的日志级别，关闭调试模式时也生效，可用于只打开个别tag
+     * 
+     * @param tag
+     * @param level 设为{@link #SUPPRESS}可关闭该tag
+     */
+    public static synchronized void setLogLevel(String tag, int level) {
+        Map<String, Integer> levels = new HashMap<String, Integer>(sTagLevels);
+        levels.put(tag, level);
+        sTagLevels = levels;
+    }
+
+    /**
+     * 清除某个tag的单独级别设置
+     * 
+     * @param tag
+     */
+    public static synchronized void clearLogLevel(String tag) {
+        Map<String, Integer> levels = new HashMap<String, Integer>(sTagLevels);
+        levels.remove(tag);
+        sTagLevels = levels.isEmpty() ? Collections.<String, Integer> emptyMap() : levels;
+    }
+
     /**
      * 开启/关闭调试模式
      * 
@@ -65,9 +236,9 @@ public class LogUtils {
      * @param msg
      */
     public static final void d(String tag, String msg) {
-        if (ENABLE_LOG) {
+        if (shouldLog(tag, DEBUG)) {
 //            Log.d(tag, msg);
-            logOverSize(tag, msg);
+            print(DEBUG, tag, msg, null);
         }
     }
 
@@ -79,8 +250,8 @@ public class LogUtils {
      * @param tr
      */
     public static final void d(String tag, String msg, Throwable tr) {
-        if (ENABLE_LOG) {
-            Log.d(tag, msg, tr);
+        if (shouldLog(tag, DEBUG)) {
+            print(DEBUG, tag, msg, tr);
         }
     }
 
@@ -91,8 +262,8 @@ public class LogUtils {
      * @param msg
      */
     public static final void i(String tag, String msg) {
-        if (ENABLE_LOG) {
-            Log.i(tag, msg);
+        if (shouldLog(tag, INFO)) {
+            print(INFO, tag, msg, null);
         }
     }
 
@@ -104,8 +275,8 @@ public class LogUtils {
      * @param tr
      */
     public static final void i(String tag, String msg, Throwable tr) {
-        if (ENABLE_LOG) {
-            Log.i(tag, msg, tr);
+        if (shouldLog(tag, INFO)) {
+            print(INFO, tag, msg, tr);
         }
     }
 
@@ -116,14 +287,14 @@ public class LogUtils {
      * @param msg
      */
     public static final void w(String tag, String msg) {
-        if (ENABLE_LOG) {
-            Log.w(tag, msg);
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, msg, null);
         }
     }
 
     public static final void w(String tag, Throwable tr) {
-        if (ENABLE_LOG) {
-            Log.w(tag, tr);
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, null, tr);
         }
     }
 
@@ -135,14 +306,14 @@ public class LogUtils {
      * @param tr
      */
     public static final void w(String tag, String msg, Throwable tr) {
-        if (ENABLE_LOG) {
-            Log.w(tag, msg, tr);
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, msg, tr);
         }
     }
 
     public static final void e(Throwable e) {
         if (ENABLE_LOG) {
-            Log.e(TAG, e.toString(), e);
+            write(ERROR, TAG, e.toString(), e);
         }
     }
 
@@ -153,8 +324,8 @@ public class LogUtils {
      * @param msg
      */
     public static final void e(String tag, String msg) {
-        if (ENABLE_LOG) {
-            Log.e(tag, msg);
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, msg, null);
         }
     }
 
@@ -165,8 +336,8 @@ public class LogUtils {
      * @param tr
      */
     public static final void e(String tag, Throwable tr) {
-        if (ENABLE_LOG) {
-            Log.e(tag, "", tr);
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, "", tr);
         }
     }
 
@@ -178,8 +349,224 @@ public class LogUtils {
      * @param tr
      */
     public static final void e(String tag, String msg, Throwable tr) {
-        if (ENABLE_LOG) {
-            Log.e(tag, msg, tr);
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, msg, tr);
+        }
+    }
+
+    /**
+     * 打印debug日志，fmt中的"{}"依次替换为参数，级别未开启时不做任何格式化
+     * 
+     * @param tag
+     * @param fmt
+     * @param arg1
+     */
+    public static final void d(String tag, String fmt, Object arg1) {
+        if (shouldLog(tag, DEBUG)) {
+            print(DEBUG, tag, LogFormatter.format(fmt, arg1), null);
+        }
+    }
+
+    /**
+     * @see #d(String, String, Object)
+     */
+    public static final void d(String tag, String fmt, Object arg1, Object arg2) {
+        if (shouldLog(tag, DEBUG)) {
+            print(DEBUG, tag, LogFormatter.format(fmt, arg1, arg2), null);
+        }
+    }
+
+    /**
+     * @see #d(String, String, Object)
+     */
+    public static final void d(String tag, String fmt, Object arg1, Object arg2, Object arg3) {
+        if (shouldLog(tag, DEBUG)) {
+            print(DEBUG, tag, LogFormatter.format(fmt, arg1, arg2, arg3), null);
+        }
+    }
+
+    /**
+     * 参数多于3个时使用，调用时会创建参数数组
+     * 
+     * @see #d(String, String, Object)
+     */
+    public static final void d(String tag, String fmt, Object... args) {
+        if (shouldLog(tag, DEBUG)) {
+            print(DEBUG, tag, LogFormatter.format(fmt, args), null);
+        }
+    }
+
+    /**
+     * 打印debug日志，级别未开启时不调用supplier
+     * 
+     * @param tag
+     * @param supplier
+     */
+    public static final void d(String tag, MessageSupplier supplier) {
+        if (shouldLog(tag, DEBUG)) {
+            print(DEBUG, tag, String.valueOf(supplier.get()), null);
+        }
+    }
+
+    /**
+     * 打印info日志，fmt中的"{}"依次替换为参数，级别未开启时不做任何格式化
+     * 
+     * @param tag
+     * @param fmt
+     * @param arg1
+     */
+    public static final void i(String tag, String fmt, Object arg1) {
+        if (shouldLog(tag, INFO)) {
+            print(INFO, tag, LogFormatter.format(fmt, arg1), null);
+        }
+    }
+
+    /**
+     * @see #i(String, String, Object)
+     */
+    public static final void i(String tag, String fmt, Object arg1, Object arg2) {
+        if (shouldLog(tag, INFO)) {
+            print(INFO, tag, LogFormatter.format(fmt, arg1, arg2), null);
+        }
+    }
+
+    /**
+     * @see #i(String, String, Object)
+     */
+    public static final void i(String tag, String fmt, Object arg1, Object arg2, Object arg3) {
+        if (shouldLog(tag, INFO)) {
+            print(INFO, tag, LogFormatter.format(fmt, arg1, arg2, arg3), null);
+        }
+    }
+
+    /**
+     * 参数多于3个时使用，调用时会创建参数数组
+     * 
+     * @see #i(String, String, Object)
+     */
+    public static final void i(String tag, String fmt, Object... args) {
+        if (shouldLog(tag, INFO)) {
+            print(INFO, tag, LogFormatter.format(fmt, args), null);
+        }
+    }
+
+    /**
+     * 打印info日志，级别未开启时不调用supplier
+     * 
+     * @param tag
+     * @param supplier
+     */
+    public static final void i(String tag, MessageSupplier supplier) {
+        if (shouldLog(tag, INFO)) {
+            print(INFO, tag, String.valueOf(supplier.get()), null);
+        }
+    }
+
+    /**
+     * 打印warning日志，fmt中的"{}"依次替换为参数，级别未开启时不做任何格式化
+     * 
+     * @param tag
+     * @param fmt
+     * @param arg1
+     */
+    public static final void w(String tag, String fmt, Object arg1) {
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, LogFormatter.format(fmt, arg1), null);
+        }
+    }
+
+    /**
+     * @see #w(String, String, Object)
+     */
+    public static final void w(String tag, String fmt, Object arg1, Object arg2) {
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, LogFormatter.format(fmt, arg1, arg2), null);
+        }
+    }
+
+    /**
+     * @see #w(String, String, Object)
+     */
+    public static final void w(String tag, String fmt, Object arg1, Object arg2, Object arg3) {
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, LogFormatter.format(fmt, arg1, arg2, arg3), null);
+        }
+    }
+
+    /**
+     * 参数多于3个时使用，调用时会创建参数数组
+     * 
+     * @see #w(String, String, Object)
+     */
+    public static final void w(String tag, String fmt, Object... args) {
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, LogFormatter.format(fmt, args), null);
+        }
+    }
+
+    /**
+     * 打印warning日志，级别未开启时不调用supplier
+     * 
+     * @param tag
+     * @param supplier
+     */
+    public static final void w(String tag, MessageSupplier supplier) {
+        if (shouldLog(tag, WARN)) {
+            print(WARN, tag, String.valueOf(supplier.get()), null);
+        }
+    }
+
+    /**
+     * 打印error日志，fmt中的"{}"依次替换为参数，级别未开启时不做任何格式化
+     * 
+     * @param tag
+     * @param fmt
+     * @param arg1
+     */
+    public static final void e(String tag, String fmt, Object arg1) {
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, LogFormatter.format(fmt, arg1), null);
+        }
+    }
+
+    /**
+     * @see #e(String, String, Object)
+     */
+    public static final void e(String tag, String fmt, Object arg1, Object arg2) {
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, LogFormatter.format(fmt, arg1, arg2), null);
+        }
+    }
+
+    /**
+     * @see #e(String, String, Object)
+     */
+    public static final void e(String tag, String fmt, Object arg1, Object arg2, Object arg3) {
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, LogFormatter.format(fmt, arg1, arg2, arg3), null);
+        }
+    }
+
+    /**
+     * 参数多于3个时使用，调用时会创建参数数组
+     * 
+     * @see #e(String, String, Object)
+     */
+    public static final void e(String tag, String fmt, Object... args) {
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, LogFormatter.format(fmt, args), null);
+        }
+    }
+
+    /**
+     * 打印error日志，级别未开启时不调用supplier
+     * 
+     * @param tag
+     * @param supplier
+     */
+    public static final void e(String tag, MessageSupplier supplier) {
+        if (shouldLog(tag, ERROR)) {
+            print(ERROR, tag, String.valueOf(supplier.get()), null);
         }
     }
 
@@ -190,7 +577,7 @@ public class LogUtils {
      */
     public static final void p(Object obj) {
         if (ENABLE_LOG) {
-            System.out.println(obj);
+            sPipeline.log(INFO, "System.out", String.valueOf(obj), null);
         }
     }
     
@@ -201,12 +588,13 @@ public class LogUtils {
      */
     public static final void p(String tag, Object obj) {
         if (ENABLE_LOG) {
-            System.out.println(tag + ": " + obj);
+            sPipeline.log(INFO, tag, String.valueOf(obj), null);
         }
     }
 
     /**
-     * 输出程序运行时信息,在调试现场调用
+     * 输出程序运行时信息,在调试现场调用. 每次调用都要遍历调用栈，频繁调用时可用
+     * {@link CallSite#setSampleRate(int)}设置每N次调用才获取一次
      * 
      * @return [file:当前运行文件;method:当前运行方法;LineNumber:当前运行代码行]
      */
@@ -214,12 +602,7 @@ public class LogUtils {
         if (!ENABLE_LOG) {
             return "";
         }
-
-        StringBuffer sb = new StringBuffer();
-        StackTraceElement[] stacks = new Throwable().getStackTrace();
-        sb.append("[file:").append(stacks[1].getFileName()).append(",line:").append(stacks[1].getLineNumber())
-                .append(",method:").append(stacks[1].getMethodName() + "];");
-        return sb.toString();
+        return CallSite.getTraceInfo(1);
     }
 
     /**
@@ -227,69 +610,473 @@ public class LogUtils {
      * 
      * @param log
      */
-    public synchronized static void logToLocal(String log) {
+    public static void logToLocal(String log) {
         if (TextUtils.isEmpty(log)) {
             return;
         }
         if (!ENABLE_LOG) {
             return;
         }
-        File file = getLogFile();
-        if (file == null) {
+        sPipeline.log(INFO, TAG, log, null, LogRecord.TARGET_LOCAL);
+    }
+
+    public static void fileLog(String fileName, String log) {
+        if (fileName == null || log == null) {
             return;
         }
-        BufferedWriter out = null;
-        try {
-            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true)));
-            out.write(log + "\n");
-        } catch (Exception e) {
-            LogUtils.e(e);
-        } finally {
+        if (TextUtils.isEmpty(log)) {
+            return;
+        }
+        if (!ENABLE_LOG) {
+            return;
+        }
+        sPipeline.log(INFO, fileName, log, null, LogRecord.TARGET_FILE);
+    }
+
+    /**
+     * write a line of a local file, called by {@link LocalLogSink}
+     * 
+     * @param record of {@link LogRecord#TARGET_LOCAL},
+     *            {@link LogRecord#TARGET_FILE} or
+     *            {@link LogRecord#TARGET_SOHULOG}
+     */
+    static void writeLocal(LogRecord record) {
+        switch (record.getTarget()) {
+            case LogRecord.TARGET_LOCAL:
+                appendLocal(record.getMessage());
+                break;
+            case LogRecord.TARGET_FILE:
+                appendFileLog(record.getTag(), record.getMessage());
+                break;
+            case LogRecord.TARGET_SOHULOG:
+                println(record.getTime(), record.getLevel(), record.getTag(), record.getMessage());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void appendLocal(String log) {
+        AsyncLogWriter writer = sAsyncWriter;
+        // a line refused by a writer shutting down is written here instead
+        if (writer != null && (writer.append(null, log) || writer.isRunning())) {
+            return;
+        }
+        synchronized (mFileLock) {
+            if (sMappedLog) {
+                appendMappedLog(log);
+                return;
+            }
+            File file = getLogFile();
+            if (file == null) {
+                return;
+            }
+            retireLastLogFile(file.getName());
+            file = rotateIfNeeded(file);
+            if (file == null) {
+                return;
+            }
+            long length = file.length();
+            BufferedWriter out = null;
             try {
-                if (out != null) {
-                    out.close();
-                }
-            } catch (IOException e) {
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true)));
+                out.write(log + "\n");
+            } catch (Exception e) {
                 LogUtils.e(e);
+            } finally {
+                try {
+                    if (out != null) {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    LogUtils.e(e);
+                }
             }
+            onLogWritten(file, length);
         }
     }
 
-    public synchronized static void fileLog(String fileName, String log) {
-        if (fileName == null || log == null) {
+    private static void appendFileLog(String fileName, String log) {
+        AsyncLogWriter writer = sAsyncWriter;
+        if (writer != null && (writer.append(fileName, log) || writer.isRunning())) {
             return;
         }
-        if (TextUtils.isEmpty(log)) {
+        fileLogWriters().append(fileName, log);
+    }
+
+    /**
+     * 设置{@link #fileLog(String, String)}同时保持打开的文件数、空闲关闭时间和刷盘间隔，
+     * 已打开的文件会先关闭
+     * 
+     * @param maxOpen
+     * @param idleTimeoutMillis
+     * @param syncIntervalMillis
+     */
+    public static void setFileLogCache(int maxOpen, long idleTimeoutMillis, long syncIntervalMillis) {
+        LogWriterCache cache = new LogWriterCache(new File(LOG_DIR), maxOpen, idleTimeoutMillis, syncIntervalMillis);
+        cache.setRotator(sLogRotator);
+        LogWriterCache old;
+        synchronized (mFileLock) {
+            old = sFileLogWriters;
+            sFileLogWriters = cache;
+        }
+        if (old != null) {
+            old.shutdown();
+        }
+        scheduleBinaryLogFlush();
+        scheduleThrottleFlush();
+    }
+
+    /**
+     * 把{@link #fileLog(String, String)}打开的文件写盘并关闭，之后的日志会重新打开文件
+     */
+    public static void closeFileLogs() {
+        LogWriterCache cache;
+        synchronized (mFileLock) {
+            cache = sFileLogWriters;
+        }
+        if (cache != null) {
+            cache.closeAll();
+        }
+    }
+
+    private static LogWriterCache fileLogWriters() {
+        synchronized (mFileLock) {
+            if (sFileLogWriters == null) {
+                sFileLogWriters = new LogWriterCache(new File(LOG_DIR));
+                sFileLogWriters.setRotator(sLogRotator);
+            }
+            return sFileLogWriters;
+        }
+    }
+
+    /**
+     * 开启异步写日志文件，{@link #logToLocal(String)}和
+     * {@link #fileLog(String, String)}只把日志放入缓冲区，由后台线程批量写入文件
+     * 
+     * @param capacity 缓冲区最多容纳的日志条数
+     * @param policy 缓冲区满时的处理方式
+     */
+    public static synchronized void enableAsyncLog(int capacity, AsyncLogWriter.OverflowPolicy policy) {
+        if (sAsyncWriter != null) {
+            sAsyncWriter.shutdown();
+        }
+        synchronized (mFileLock) {
+            closeMappedLog();
+            releaseLastLogFile();
+        }
+        sAsyncWriter = new AsyncLogWriter(new File(LOG_DIR), capacity, policy, sMappedLog);
+        sAsyncWriter.setRotator(sLogRotator);
+    }
+
+    /**
+     * @see #enableAsyncLog(int, AsyncLogWriter.OverflowPolicy)
+     */
+    public static void enableAsyncLog() {
+        enableAsyncLog(AsyncLogWriter.DEFAULT_CAPACITY, AsyncLogWriter.OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * 等待缓冲区中已有的日志全部写入文件
+     */
+    public static void flushAsyncLog() {
+        AsyncLogWriter writer = sAsyncWriter;
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * 先让日志管道中排队的日志写入各个{@link LogSink}并刷盘，再写完缓冲区中剩余的日志后关闭异步写日志，
+     * 之后恢复同步写文件。{@link #fileLog(String, String)}打开的文件也写盘并关闭
+     */
+    public static synchronized void shutdownAsyncLog() {
+        sPipeline.flush();
+        AsyncLogWriter writer = sAsyncWriter;
+        sAsyncWriter = null;
+        if (writer != null) {
+            writer.shutdown();
+        }
+        closeFileLogs();
+    }
+
+    /**
+     * 开启/关闭内存映射方式写{@link #logToLocal(String)}的日志，文件名为yyyy-MM-dd-HH.mlog，
+     * 用{@link MappedLogFile#readRecords(File)}读取
+     * 
+     * @param enabled
+     */
+    public static synchronized void setMappedLog(boolean enabled) {
+        if (sMappedLog == enabled) {
             return;
         }
-        if (!ENABLE_LOG) {
+        sMappedLog = enabled;
+        synchronized (mFileLock) {
+            closeMappedLog();
+        }
+        AsyncLogWriter writer = sAsyncWriter;
+        if (writer != null) {
+            writer.shutdown();
+            sAsyncWriter = new AsyncLogWriter(new File(LOG_DIR), writer.getCapacity(), writer.getOverflowPolicy(),
+                    enabled);
+            sAsyncWriter.setRotator(sLogRotator);
+        }
+    }
+
+    /**
+     * 设置日志文件滚动策略：按大小和/或时间间隔滚动，滚动后的文件在后台gzip压缩，
+     * 并按总大小和保存时间清理旧日志
+     * 
+     * @param policy 为null时关闭滚动
+     */
+    public static synchronized void setLogRotationPolicy(LogRotationPolicy policy) {
+        LogRotator old = sLogRotator;
+        LogRotator rotator = policy != null ? new LogRotator(new File(LOG_DIR), policy) : null;
+        synchronized (mFileLock) {
+            sLogRotator = rotator;
+            // 同步写入的文件在trim()之前就交给新的滚动器保护
+            if (rotator != null && sLastLogFileName != null) {
+                rotator.setActive(sLastLogFileName, true);
+            }
+            if (sFileLogWriters != null) {
+                sFileLogWriters.closeAll();
+                sFileLogWriters.setRotator(rotator);
+            }
+        }
+        if (sAsyncWriter != null) {
+            sAsyncWriter.setRotator(rotator);
+        }
+        if (old != null) {
+            old.shutdown(0);
+        }
+        if (rotator != null) {
+            rotator.trim();
+        }
+    }
+
+    /**
+     * @return 当前的日志滚动器，可读取写入字节数、滚动次数、压缩率等统计，未设置滚动策略时为null
+     */
+    public static LogRotator getLogRotator() {
+        return sLogRotator;
+    }
+
+    /**
+     * 同步写入停止后取消对当前文件的保护，由异步写入线程接管；之后再同步写入时重新登记
+     */
+    private static void releaseLastLogFile() {
+        LogRotator rotator = sLogRotator;
+        if (rotator != null && sLastLogFileName != null) {
+            rotator.setActive(sLastLogFileName, false);
+        }
+        sLastLogFileName = null;
+    }
+
+    /**
+     * 同步写入的文件登记为正在写入，不会被滚动器清理；小时切换后把上一个小时的日志文件交给滚动器压缩
+     */
+    private static void retireLastLogFile(String name) {
+        String last = sLastLogFileName;
+        if (name.equals(last)) {
             return;
         }
-        File file = getLogFile(fileName);
-        if (file == null) {
+        sLastLogFileName = name;
+        LogRotator rotator = sLogRotator;
+        if (rotator == null) {
             return;
         }
-        BufferedWriter out = null;
+        rotator.setActive(name, true);
+        if (last != null) {
+            rotator.setActive(last, false);
+            rotator.retire(new File(LOG_DIR, last));
+        }
+    }
+
+    /**
+     * 按滚动策略检查日志文件，需要滚动时改名并重新创建
+     */
+    private static File rotateIfNeeded(File file) {
+        LogRotator rotator = sLogRotator;
+        if (rotator == null || file == null) {
+            return file;
+        }
+        if (rotator.shouldRotate(file.length(), file.lastModified(), System.currentTimeMillis())
+                && rotator.rotate(file)) {
+            return getLogFile(file.getName());
+        }
+        return file;
+    }
+
+    private static void onLogWritten(File file, long lengthBefore) {
+        LogRotator rotator = sLogRotator;
+        if (rotator != null) {
+            rotator.onWritten(file.length() - lengthBefore);
+        }
+    }
+
+    private static void appendMappedLog(String log) {
+        if (sMappedLogName == null) {
+            sMappedLogName = new HourlyFileName(MappedLogFile.FILE_EXTENSION);
+        }
+        long now = System.currentTimeMillis();
+        String name = sMappedLogName.get(now);
+        if (sMappedLogFile != null && !sMappedLogFile.getFile().getName().equals(name)) {
+            closeMappedLog();
+        }
+        retireLastLogFile(name);
+        LogRotator rotator = sLogRotator;
+        if (sMappedLogFile != null && rotator != null && !sMappedLogFile.isShared()
+                && rotator.shouldRotate(sMappedLogFile.length(), sMappedLogModified, now)) {
+            File file = sMappedLogFile.getFile();
+            closeMappedLog();
+            rotator.rotate(file);
+        }
+        if (sMappedLogFile == null) {
+            File file = getLogFile(name);
+            if (file == null) {
+                return;
+            }
+            try {
+                sMappedLogModified = file.lastModified();
+                sMappedLogFile = MappedLogFile.open(file);
+            } catch (IOException e) {
+                LogUtils.e(e);
+                return;
+            }
+        }
         try {
-            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true)));
-            // out.write(log + "\n");
-            out.append(log + "\n");
-        } catch (Exception e) {
+            long length = sMappedLogFile.length();
+            sMappedLogFile.append(log);
+            sMappedLogModified = now;
+            if (rotator != null) {
+                rotator.onWritten(sMappedLogFile.length() - length);
+            }
+        } catch (IOException e) {
             LogUtils.e(e);
-        } finally {
+            closeMappedLog();
+        }
+    }
+
+    private static void closeMappedLog() {
+        if (sMappedLogFile != null) {
             try {
-                if (out != null) {
-                    out.close();
-                }
+                sMappedLogFile.close();
             } catch (IOException e) {
                 LogUtils.e(e);
             }
+            sMappedLogFile = null;
+        }
+    }
+
+    /**
+     * 把{@link #printStackTrace(Throwable)}等写入sohulog.txt的日志改为以二进制格式写入sohulog.blog，
+     * 用{@link BinaryLogDecoder}解码
+     * 
+     * @return 是否开启成功
+     */
+    public static boolean enableBinaryLog() {
+        return enableBinaryLog(new File(Environment.getExternalStorageDirectory(), "sohulog"
+                + BinaryLogWriter.FILE_EXTENSION));
+    }
+
+    /**
+     * @see #enableBinaryLog()
+     * @param file 日志文件，已有内容时追加
+     * @return 是否开启成功
+     */
+    public static synchronized boolean enableBinaryLog(File file) {
+        disableBinaryLog();
+        try {
+            sBinaryLog = new BinaryLogWriter(file);
+        } catch (IOException e) {
+            write(ERROR, TAG, "open binary log failed", e);
+            return false;
+        }
+        scheduleBinaryLogFlush();
+        return true;
+    }
+
+    /**
+     * 写完缓冲的二进制日志并关闭
+     */
+    public static synchronized void disableBinaryLog() {
+        BinaryLogWriter writer = sBinaryLog;
+        sBinaryLog = null;
+        scheduleBinaryLogFlush();
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                write(ERROR, TAG, "close binary log failed", e);
+            }
         }
     }
 
+    /**
+     * 在{@link #fileLog(String, String)}的后台线程上定时输出限流器中过期的汇总；更换限流器或文件缓存后重新安排
+     */
+    private static synchronized void scheduleThrottleFlush() {
+        if (sThrottleFlush != null) {
+            sThrottleFlush.cancel(false);
+            sThrottleFlush = null;
+        }
+        final LogThrottle throttle = sThrottle;
+        if (throttle == null) {
+            return;
+        }
+        sThrottleFlush = fileLogWriters().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                throttle.flushExpired(PRINTER);
+            }
+        }, LogThrottle.DEFAULT_COLLAPSE_WINDOW_MILLIS);
+    }
+
+    /**
+     * 在{@link #fileLog(String, String)}的后台线程上定时写出缓冲的二进制日志，
+     * 日志停止后缓冲的记录也不会一直留在内存中；关闭二进制日志或更换文件缓存后重新安排
+     */
+    private static synchronized void scheduleBinaryLogFlush() {
+        if (sBinaryLogFlush != null) {
+            sBinaryLogFlush.cancel(false);
+            sBinaryLogFlush = null;
+        }
+        final BinaryLogWriter writer = sBinaryLog;
+        if (writer == null) {
+            return;
+        }
+        sBinaryLogFlush = fileLogWriters().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    writer.flushIfDue();
+                } catch (IOException e) {
+                    write(ERROR, TAG, "flush binary log failed", e);
+                }
+            }
+        }, BinaryLogWriter.FLUSH_INTERVAL_MILLIS / 2);
+    }
+
+    /**
+     * @return 因缓冲区满被丢弃的日志条数
+     */
+    public static long getAsyncLogDroppedCount() {
+        AsyncLogWriter writer = sAsyncWriter;
+        return writer != null ? writer.getDroppedCount() : 0;
+    }
+
     public static boolean delLogFile(String fileName) {
         File file = new File(LOG_DIR + File.separator + fileName);
         LogUtils.d(TAG, "Log file to be deleted:" + LOG_DIR + File.separator + fileName);
+        LogWriterCache cache;
+        synchronized (mFileLock) {
+            cache = sFileLogWriters;
+        }
+        if (cache != null) {
+            cache.close(fileName);
+        }
 
         boolean ret = false;
         try {
@@ -363,19 +1150,37 @@ public class LogUtils {
      */
     public static final int ASSERT = 7;
 
+    /**
+     * Level for {@link #setLogLevel(String, int)}, turns a tag off.
+     */
+    public static final int SUPPRESS = Integer.MAX_VALUE;
+
+    private static volatile int sDefaultLevel = VERBOSE;
+    private static volatile Map<String, Integer> sTagLevels = Collections.emptyMap();
+
     static {
         mLogFileName = Environment.getExternalStorageDirectory().getAbsolutePath() + File.separator + "sohulog.txt";
     }
 
     /**
      * 输出日志到文件系统中. 供艾瑞统计测试使用，测试时本地设output=true.请勿提交到SVN上.
+     * 开启{@link #enableBinaryLog()}后以二进制格式写入，不做文本格式化
      * 
      * @param priority
      * @param tag
      * @param msg
      * @return
      */
-    private static int println(int priority, String tag, String msg) {
+    private static int println(long time, int priority, String tag, String msg) {
+        BinaryLogWriter binaryLog = sBinaryLog;
+        if (binaryLog != null) {
+            try {
+                binaryLog.write(time, priority, tag, Process.myPid(), Process.myTid(), msg);
+            } catch (IOException e) {
+                write(ERROR, TAG, "write binary log failed", e);
+            }
+            return 0;
+        }
         boolean output = false;
         if (!output) {
             return 0;
@@ -383,9 +1188,8 @@ public class LogUtils {
 
         String[] ps = { "", "", "V", "D", "I", "W", "E", "A" };
         SimpleDateFormat df = new SimpleDateFormat("[MM-dd hh:mm:ss.SSS]");
-        String time = df.format(new Date());
         StringBuilder sb = new StringBuilder();
-        sb.append(time);
+        sb.append(df.format(new Date(time)));
         sb.append("\t");
         sb.append(ps[priority]);
         sb.append("/");
@@ -437,8 +1241,13 @@ public class LogUtils {
     public static void printStackTrace(Throwable e) {
         if (ENABLE_LOG) {
             if (e != null) {
+                LogThrottle throttle = sThrottle;
+                if (throttle != null && (!throttle.tryAcquire(TAG, PRINTER)
+                        || !throttle.collapse(ERROR, TAG, e.toString(), e, PRINTER))) {
+                    return;
+                }
                 LogUtils.e(e);
-                println(ERROR, TAG, getStackTraceString(e));
+                sPipeline.log(ERROR, TAG, getStackTraceString(e), null, LogRecord.TARGET_SOHULOG);
             }
         }
     }
@@ -450,23 +1259,24 @@ public class LogUtils {
     public static boolean canQAShow() {
         return false;
     }
-    
-    /**
-     * 一段log最大打印长度
-     * */
-    private static int MAX_LOG_SIZE = 2000;
 
-    /**
-    * 对超长log做分段打印处理，主要是json打印
-    * @param tag
-    * @param veryLongString
-    */
-    private static void logOverSize(String tag, String veryLongString) {
-        for (int i = 0; i <= veryLongString.length() / MAX_LOG_SIZE; i++) {
-            int start = i * MAX_LOG_SIZE;
-            int end = (i + 1) * MAX_LOG_SIZE;
-            end = end > veryLongString.length() ? veryLongString.length() : end;
-            Log.d(tag, veryLongString.substring(start, end));
+    private static boolean shouldLog(String tag, int level) {
+        if (!isLoggable(tag, level)) {
+            return false;
         }
+        LogThrottle throttle = sThrottle;
+        return throttle == null || throttle.tryAcquire(tag, PRINTER);
+    }
+
+    private static void print(int level, String tag, String msg, Throwable tr) {
+        LogThrottle throttle = sThrottle;
+        if (throttle != null && !throttle.collapse(level, tag, msg, tr, PRINTER)) {
+            return;
+        }
+        write(level, tag, msg, tr);
+    }
+
+    private static void write(int level, String tag, String msg, Throwable tr) {
+        sPipeline.log(level, tag, msg, tr);
     }
 }
@@ -0,0 +1,404 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps streams of named log files open between writes
+ * <ul>
+ * <li>{@link #append(String, String)} write a line to a file of the log
+ * directory, the file is opened on first use and stays open</li>
+ * <li>at most maxOpen files are open, the least recently written one is closed
+ * to open another</li>
+ * <li>every line goes to the file system at once, so it survives a crash of
+ * the process; a background thread syncs written files to the storage device
+ * every sync interval and closes files idle for longer than the idle
+ * timeout</li>
+ * <li>{@link #shutdown()} sync and close every file</li>
+ * </ul>
+ * Sizes and modification times of open files are tracked in memory, so a line
+ * costs one write and no file system metadata call. Different files are
+ * written in parallel, lines of one file are serialized. Lines are encoded in
+ * UTF-8.
+ */
+public class LogWriterCache {
+    private static final String TAG = "LogWriterCache";
+
+    public static final int DEFAULT_MAX_OPEN = 32;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60 * 1000;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 5 * 1000;
+
+    private final File dir;
+    private final int maxOpen;
+    private final long idleTimeoutMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong openCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private volatile LogRotator rotator;
+    private volatile boolean dirChecked;
+    private volatile boolean shutdown;
+
+    /**
+     * @see #LogWriterCache(File, int, long, long)
+     */
+    public LogWriterCache(File dir) {
+        this(dir, DEFAULT_MAX_OPEN, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param dir directory of log files
+     * @param maxOpen max count of files open at the same time
+     * @param idleTimeoutMillis a file not written for this time is closed
+     * @param syncIntervalMillis written files are synced to the storage
+     *            device at this interval
+     */
+    public LogWriterCache(File dir, int maxOpen, long idleTimeoutMillis, long syncIntervalMillis) {
+        if (maxOpen <= 0) {
+            throw new IllegalArgumentException("maxOpen must be positive: " + maxOpen);
+        }
+        this.dir = dir;
+        this.maxOpen = maxOpen;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                maintain();
+            }
+        }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * roll over log files with rotator, null to disable rotation
+     * 
+     * @param rotator
+     */
+    public void setRotator(LogRotator rotator) {
+        this.rotator = rotator;
+    }
+
+    /**
+     * append a line and a line separator
+     *
+     * @param fileName name of file in log directory
+     * @param line
+     * @return false if the file can not be opened or written
+     */
+    public boolean append(String fileName, String line) {
+        byte[] bytes;
+        try {
+            bytes = (line + "\n").getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        for (;;) {
+            Entry entry = obtain(fileName);
+            if (entry == null) {
+                return false;
+            }
+            synchronized (entry) {
+                if (entry.out != null) {
+                    return entry.write(bytes);
+                }
+            }
+            // closed by eviction, idle timeout or a failed rotation meanwhile
+            forget(entry);
+        }
+    }
+
+    /**
+     * run a task on the background thread every period, e.g. to flush another
+     * log writer, it stops with {@link #shutdown()}
+     *
+     * @param task
+     * @param periodMillis
+     * @return future to cancel the task, null if the cache is shut down
+     */
+    ScheduledFuture<?> schedule(Runnable task, long periodMillis) {
+        try {
+            return executor.scheduleWithFixedDelay(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * sync every written file to the storage device, lines are in the file
+     * system as soon as they are appended
+     */
+    public void flush() {
+        for (Entry entry : snapshot()) {
+            synchronized (entry) {
+                entry.sync();
+            }
+        }
+    }
+
+    /**
+     * close a file if it is open, e.g. before it is deleted
+     *
+     * @param fileName
+     */
+    public void close(String fileName) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.remove(fileName);
+        }
+        if (entry != null) {
+            synchronized (entry) {
+                entry.close(true);
+            }
+        }
+    }
+
+    /**
+     * sync and close every file, later lines open files again
+     */
+    public void closeAll() {
+        List<Entry> closing;
+        synchronized (entries) {
+            closing = new ArrayList<Entry>(entries.values());
+            entries.clear();
+        }
+        for (Entry entry : closing) {
+            synchronized (entry) {
+                entry.close(true);
+            }
+        }
+    }
+
+    /**
+     * close every file and stop the background thread
+     */
+    public void shutdown() {
+        shutdown = true;
+        executor.shutdown();
+        closeAll();
+    }
+
+    /**
+     * @return count of files open now
+     */
+    public int getOpenCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return count of file opens since creation
+     */
+    public long getTotalOpenCount() {
+        return openCount.get();
+    }
+
+    /**
+     * @return count of files closed to make room for another one
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private Entry obtain(String fileName) {
+        Entry evicted = null;
+        Entry entry;
+        synchronized (entries) {
+            if (shutdown) {
+                return null;
+            }
+            entry = entries.get(fileName);
+            if (entry == null) {
+                entry = open(fileName);
+                if (entry == null) {
+                    return null;
+                }
+                entries.put(fileName, entry);
+                if (entries.size() > maxOpen) {
+                    Iterator<Entry> it = entries.values().iterator();
+                    evicted = it.next();
+                    it.remove();
+                    evictionCount.incrementAndGet();
+                }
+            }
+        }
+        if (evicted != null) {
+            synchronized (evicted) {
+                evicted.close(false);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * called with lock of entries held, only the first open of a file checks
+     * the directory
+     */
+    private Entry open(String fileName) {
+        if (!dirChecked) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                return null;
+            }
+            dirChecked = true;
+        }
+        File file = new File(dir, fileName);
+        try {
+            Entry entry = new Entry(fileName, file);
+            openCount.incrementAndGet();
+            LogRotator r = rotator;
+            if (r != null) {
+                r.setActive(fileName, true);
+            }
+            return entry;
+        } catch (IOException e) {
+            LogUtils.e(TAG, "open log file failed: " + file, e);
+            dirChecked = false;
+            return null;
+        }
+    }
+
+    private void forget(Entry entry) {
+        synchronized (entries) {
+            if (entries.get(entry.fileName) == entry) {
+                entries.remove(entry.fileName);
+            }
+        }
+    }
+
+    private List<Entry> snapshot() {
+        synchronized (entries) {
+            return new ArrayList<Entry>(entries.values());
+        }
+    }
+
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        for (Entry entry : snapshot()) {
+            boolean idle;
+            synchronized (entry) {
+                idle = now - entry.lastWrite >= idleTimeoutMillis;
+                if (!idle) {
+                    entry.sync();
+                }
+            }
+            if (idle) {
+                forget(entry);
+                synchronized (entry) {
+                    entry.close(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * An open file, guarded by its own lock
+     */
+    private final class Entry {
+        final String fileName;
+        final File file;
+        FileOutputStream out;
+        long size;
+        long modified;
+        long lastWrite;
+        boolean dirty;
+
+        Entry(String fileName, File file) throws IOException {
+            this.fileName = fileName;
+            this.file = file;
+            openStream();
+        }
+
+        private void openStream() throws IOException {
+            out = new FileOutputStream(file, true);
+            size = out.getChannel().size();
+            modified = size > 0 ? file.lastModified() : System.currentTimeMillis();
+            lastWrite = System.currentTimeMillis();
+        }
+
+        boolean write(byte[] bytes) {
+            long now = System.currentTimeMillis();
+            LogRotator r = rotator;
+            try {
+                if (r != null && r.shouldRotate(size, modified, now)) {
+                    close(false);
+                    r.rotate(file);
+                    openStream();
+                    r.setActive(fileName, true);
+                }
+                out.write(bytes);
+                size += bytes.length;
+                modified = now;
+                lastWrite = now;
+                dirty = true;
+                if (r != null) {
+                    r.onWritten(bytes.length);
+                }
+                return true;
+            } catch (IOException e) {
+                LogUtils.e(TAG, "write log file failed: " + file, e);
+                close(false);
+                return false;
+            }
+        }
+
+        void sync() {
+            if (out == null || !dirty) {
+                return;
+            }
+            try {
+                out.getFD().sync();
+                dirty = false;
+            } catch (IOException e) {
+                LogUtils.e(TAG, "sync log file failed: " + file, e);
+            }
+        }
+
+        /**
+         * @param sync whether to sync to the storage device, the lines are in
+         *            the file system anyway
+         */
+        void close(boolean sync) {
+            if (out == null) {
+                return;
+            }
+            if (sync) {
+                sync();
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                LogUtils.e(TAG, "close log file failed: " + file, e);
+            }
+            out = null;
+            LogRotator r = rotator;
+            if (r != null) {
+                r.setActive(fileName, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import android.util.Log;
+
+/**
+ * Writes log lines ({@link LogRecord#TARGET_LOG}) to logcat through
+ * {@link Log}. A message longer than logcat takes in one entry is split into
+ * entries of 2000 characters, lines of local files are left to
+ * {@link LocalLogSink}.
+ */
+public class LogcatSink implements LogSink {
+
+    /** characters of one logcat entry, logcat cuts entries at about 4KB **/
+    private static final int MAX_LOG_SIZE = 2000;
+
+    @Override
+    public void write(LogRecord record) {
+        if (record.getTarget() != LogRecord.TARGET_LOG) {
+            return;
+        }
+        String message = record.getMessage() == null ? "" : record.getMessage();
+        if (record.getThrowable() != null) {
+            message = message + '\n' + Log.getStackTraceString(record.getThrowable());
+        }
+        int length = message.length();
+        if (length <= MAX_LOG_SIZE) {
+            Log.println(record.getLevel(), record.getTag(), message);
+            return;
+        }
+        for (int start = 0; start < length; start += MAX_LOG_SIZE) {
+            Log.println(record.getLevel(), record.getTag(), message.substring(start,
+                    Math.min(start + MAX_LOG_SIZE, length)));
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,467 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/**
+ * Fast LZ compression as streams, far faster than deflate for a lower ratio
+ * <ul>
+ * <li>{@link Compressor} an output stream compressing to another stream</li>
+ * <li>{@link Decompressor} an input stream decompressing from another stream</li>
+ * </ul>
+ * Data is cut into blocks of 64KB compressed one by one, in the way of LZ4: a
+ * hash of the next 4 bytes finds an earlier position in the block with the
+ * same bytes, the data is written as runs of literal bytes each followed by a
+ * copy of earlier bytes. A block is a varint of its length shifted left once,
+ * the low bit set when it is stored as is because it did not compress. A 0
+ * ends the data. A sequence in a block is a token byte, literal length in the
+ * high 4 bits and copy length less 4 in the low 4 bits, 15 meaning more bytes
+ * follow adding up to 255 each, then the literals, then the copy offset as 2
+ * bytes little endian. The last sequence of a block has literals only.
+ * <p>
+ * Block buffers and the hash table are kept per thread for the next stream.
+ */
+public final class LzStream {
+
+    /** most bytes of a block before compression **/
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int MIN_MATCH = 4;
+    /** no copy starts in the last bytes of a block, they are literals **/
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int MAX_COMPRESSED = BLOCK_SIZE + BLOCK_SIZE / 255 + 16;
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>();
+
+    private LzStream() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Compresses the bytes written to the stream given. {@link #finish()}
+     * writes the last block and the end, {@link #close()} also closes the
+     * stream given.
+     */
+    public static final class Compressor extends OutputStream {
+
+        private final OutputStream out;
+        private Buffers buffers;
+        private int count;
+        private boolean finished;
+
+        /**
+         * @param out receives the compressed data
+         */
+        public Compressor(OutputStream out) {
+            this.out = out;
+            this.buffers = obtain();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkOpen();
+            if (count == BLOCK_SIZE) {
+                writeBlock();
+            }
+            buffers.raw[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            while (len > 0) {
+                if (count == BLOCK_SIZE) {
+                    writeBlock();
+                }
+                int n = Math.min(len, BLOCK_SIZE - count);
+                System.arraycopy(b, off, buffers.raw, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * compress the bytes so far as a block, and flush the stream given
+         */
+        @Override
+        public void flush() throws IOException {
+            checkOpen();
+            if (count > 0) {
+                writeBlock();
+            }
+            out.flush();
+        }
+
+        /**
+         * write the last block and the end of the data, the stream given is
+         * not closed
+         */
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            try {
+                if (count > 0) {
+                    writeBlock();
+                }
+                out.write(0);
+            } finally {
+                finished = true;
+                recycle(buffers);
+                buffers = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            byte[] packed = buffers.packed;
+            int length = compress(buffers.raw, count, packed, buffers.table);
+            byte[] header = buffers.header;
+            if (length < count) {
+                out.write(header, 0, writeVarint(header, length << 1));
+                out.write(packed, 0, length);
+            } else {
+                out.write(header, 0, writeVarint(header, (count << 1) | 1));
+                out.write(buffers.raw, 0, count);
+            }
+            count = 0;
+        }
+
+        private void checkOpen() throws IOException {
+            if (finished) {
+                throw new IOException("compressor finished");
+            }
+        }
+    }
+
+    /**
+     * Decompresses data written by {@link Compressor}, it ends at the end of
+     * the data even when the stream given goes on, {@link #close()} closes the
+     * stream given
+     */
+    public static final class Decompressor extends InputStream {
+
+        private final InputStream in;
+        private Buffers buffers;
+        private int position;
+        private int limit;
+        private boolean end;
+
+        /**
+         * @param in compressed data
+         */
+        public Decompressor(InputStream in) {
+            this.in = in;
+            this.buffers = obtain();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !readBlock()) {
+                return -1;
+            }
+            return buffers.raw[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if ((off | len) < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !readBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(buffers.raw, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+            in.close();
+        }
+
+        private boolean readBlock() throws IOException {
+            if (end) {
+                return false;
+            }
+            int header = readVarint(in);
+            if (header == 0) {
+                release();
+                return false;
+            }
+            int length = header >>> 1;
+            boolean stored = (header & 1) != 0;
+            if (length > (stored ? BLOCK_SIZE : MAX_COMPRESSED)) {
+                throw new StreamCorruptedException("lz block too long: " + length);
+            }
+            byte[] target = stored ? buffers.raw : buffers.packed;
+            readFully(in, target, length);
+            position = 0;
+            limit = stored ? length : decompress(buffers.packed, length, buffers.raw);
+            return true;
+        }
+
+        /**
+         * end reading and give the buffers back to the pool, for a reader
+         * that stops before the end of the data
+         */
+        void release() {
+            if (!end) {
+                end = true;
+                position = limit = 0;
+                recycle(buffers);
+                buffers = null;
+            }
+        }
+    }
+
+    /**
+     * compress a block
+     *
+     * @return length of the compressed block in dst, at least length when it
+     *         did not compress
+     */
+    static int compress(byte[] src, int length, byte[] dst, int[] table) {
+        if (length < MATCH_LIMIT + 1) {
+            return writeLastLiterals(src, 0, length, dst, 0);
+        }
+        Arrays.fill(table, -1);
+        int limit = length - MATCH_LIMIT;
+        int matchEnd = length - LAST_LITERALS;
+        int anchor = 0;
+        int i = 0;
+        int out = 0;
+        int shift = 32 - HASH_LOG;
+        while (i < limit) {
+            int sequence = readInt(src, i);
+            int h = (sequence * -1640531535) >>> shift;
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                // skip faster through data that does not compress
+                i += 1 + ((i - anchor) >>> SKIP_TRIGGER);
+                continue;
+            }
+            while (i > anchor && ref > 0 && src[i - 1] == src[ref - 1]) {
+                i--;
+                ref--;
+            }
+            int match = MIN_MATCH;
+            while (i + match < matchEnd && src[ref + match] == src[i + match]) {
+                match++;
+            }
+            int literals = i - anchor;
+            if (out + literals + literals / 255 + 8 >= length) {
+                return length;
+            }
+            int token = out++;
+            dst[token] = 0;
+            out = writeLength(dst, out, literals, token, 4);
+            System.arraycopy(src, anchor, dst, out, literals);
+            out += literals;
+            int offset = i - ref;
+            dst[out++] = (byte)offset;
+            dst[out++] = (byte)(offset >>> 8);
+            out = writeLength(dst, out, match - MIN_MATCH, token, 0);
+            i += match;
+            anchor = i;
+            if (i < limit) {
+                table[(readInt(src, i - 2) * -1640531535) >>> shift] = i - 2;
+            }
+        }
+        if (out + (length - anchor) + (length - anchor) / 255 + 2 >= length) {
+            return length;
+        }
+        return writeLastLiterals(src, anchor, length, dst, out);
+    }
+
+    /**
+     * decompress a block
+     *
+     * @return length of the block in dst
+     * @throws StreamCorruptedException if the block is not valid
+     */
+    static int decompress(byte[] src, int length, byte[] dst) throws StreamCorruptedException {
+        int in = 0;
+        int out = 0;
+        while (in < length) {
+            int token = src[in++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (in == length) {
+                        throw new StreamCorruptedException("lz block truncated");
+                    }
+                    b = src[in++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > length - in || literals > dst.length - out) {
+                throw new StreamCorruptedException("lz literals out of bounds");
+            }
+            System.arraycopy(src, in, dst, out, literals);
+            in += literals;
+            out += literals;
+            if (in == length) {
+                break;
+            }
+            if (length - in < 2) {
+                throw new StreamCorruptedException("lz block truncated");
+            }
+            int offset = (src[in] & 0xFF) | ((src[in + 1] & 0xFF) << 8);
+            in += 2;
+            int match = token & 0x0F;
+            if (match == 15) {
+                int b;
+                do {
+                    if (in == length) {
+                        throw new StreamCorruptedException("lz block truncated");
+                    }
+                    b = src[in++] & 0xFF;
+                    match += b;
+                } while (b == 255);
+            }
+            match += MIN_MATCH;
+            if (offset == 0 || offset > out || match > dst.length - out) {
+                throw new StreamCorruptedException("lz copy out of bounds");
+            }
+            int from = out - offset;
+            if (offset >= match) {
+                System.arraycopy(dst, from, dst, out, match);
+                out += match;
+            } else {
+                // the copy overlaps the bytes it writes, a repeating pattern
+                for (int end = out + match; out < end;) {
+                    dst[out++] = dst[from++];
+                }
+            }
+        }
+        return out;
+    }
+
+    private static int writeLastLiterals(byte[] src, int anchor, int length, byte[] dst, int out) {
+        int literals = length - anchor;
+        int token = out++;
+        dst[token] = 0;
+        out = writeLength(dst, out, literals, token, 4);
+        System.arraycopy(src, anchor, dst, out, literals);
+        return out + literals;
+    }
+
+    /**
+     * put length in the token at shift, with the extra bytes at out
+     *
+     * @return position after the extra bytes
+     */
+    private static int writeLength(byte[] dst, int out, int length, int token, int shift) {
+        int mask = shift == 0 ? 0xF0 : 0x0F;
+        if (length < 15) {
+            dst[token] = (byte)((dst[token] & mask) | (length << shift));
+            return out;
+        }
+        dst[token] = (byte)((dst[token] & mask) | (15 << shift));
+        length -= 15;
+        while (length >= 255) {
+            dst[out++] = (byte)255;
+            length -= 255;
+        }
+        dst[out++] = (byte)length;
+        return out;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+    }
+
+    private static int writeVarint(byte[] b, int value) {
+        int n = 0;
+        while ((value & ~0x7F) != 0) {
+            b[n++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        b[n++] = (byte)value;
+        return n;
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new StreamCorruptedException("lz data truncated");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("lz block header too long");
+    }
+
+    private static void readFully(InputStream in, byte[] b, int length) throws IOException {
+        int off = 0;
+        while (off < length) {
+            int count = in.read(b, off, length - off);
+            if (count < 0) {
+                throw new StreamCorruptedException("lz data truncated");
+            }
+            off += count;
+        }
+    }
+
+    private static Buffers obtain() {
+        Buffers buffers = BUFFERS.get();
+        if (buffers == null) {
+            return new Buffers();
+        }
+        BUFFERS.set(null);
+        return buffers;
+    }
+
+    private static void recycle(Buffers buffers) {
+        if (buffers != null) {
+            BUFFERS.set(buffers);
+        }
+    }
+
+    /**
+     * Buffers of a stream, reused by the next stream of the thread
+     */
+    private static final class Buffers {
+        final byte[] raw = new byte[BLOCK_SIZE];
+        final byte[] packed = new byte[MAX_COMPRESSED];
+        final int[] table = new int[1 << HASH_LOG];
+        final byte[] header = new byte[5];
+    }
+}
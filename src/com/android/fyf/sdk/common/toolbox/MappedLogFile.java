@@ -0,0 +1,360 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log file written through a {@link MappedByteBuffer}
+ * <ul>
+ * <li>{@link #open(File)} the instance of a file shared by all its writers</li>
+ * <li>{@link #append(CharSequence)} copy a record into the mapped region, no
+ * system call unless the region is used up and a new chunk is mapped</li>
+ * <li>{@link #force()} write mapped pages to the storage device</li>
+ * <li>{@link #close()} force and cut the file at the end of the last record</li>
+ * <li>{@link #readRecords(File)} read all valid records of a file</li>
+ * </ul>
+ * File layout is a 8 bytes header (magic, version) followed by records, every
+ * record is [int length][int crc32][length bytes of UTF-8 text]. A length of 0
+ * marks the end of written data. Mapped pages survive a killed process, when
+ * the file is opened again it is scanned and cut after the last record whose
+ * checksum is valid, so a half written record never hides the ones before it.
+ * <p>
+ * Two instances of one file would each write at their own position and cut
+ * the file at it on close, so writers of a process open it with
+ * {@link #open(File)} and share one instance.
+ */
+public class MappedLogFile {
+    private static final String TAG = "MappedLogFile";
+
+    /** extension of hourly log files written by {@link LogUtils} in mapped mode **/
+    public static final String FILE_EXTENSION = ".mlog";
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    /** longer records are truncated **/
+    public static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private static final int MAGIC = 0x534C4F47;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int SCAN_WINDOW_SIZE = 4 * 1024 * 1024;
+
+    /** instances opened by {@link #open(File)}, by absolute path **/
+    private static final Map<String, MappedLogFile> SHARED = new HashMap<String, MappedLogFile>();
+
+    private final File file;
+    private final int chunkSize;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer scratch = ByteBuffer.allocate(4 * 1024);
+    private MappedByteBuffer mapped;
+    private long position;
+    /** opens of a shared instance not closed yet, guarded by SHARED **/
+    private int openCount;
+
+    /**
+     * @see #MappedLogFile(File, int)
+     */
+    public MappedLogFile(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * open or create a mapped log file, an existing file is recovered to its
+     * last valid record
+     *
+     * @param file
+     * @param chunkSize bytes mapped at a time, the file grows by this size
+     * @throws IOException if file can not be opened or is not a mapped log
+     *             file
+     */
+    public MappedLogFile(File file, int chunkSize) throws IOException {
+        if (chunkSize < RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("chunkSize too small: " + chunkSize);
+        }
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        try {
+            position = recover(channel);
+            map(position, chunkSize);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * open file with {@link #DEFAULT_CHUNK_SIZE}, or get the instance already
+     * opened for it, each open is matched by a {@link #close()}
+     *
+     * @param file
+     * @return instance shared by every writer of file in this process
+     * @throws IOException if file can not be opened or is not a mapped log
+     *             file
+     */
+    public static MappedLogFile open(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (SHARED) {
+            MappedLogFile shared = SHARED.get(key);
+            if (shared == null) {
+                shared = new MappedLogFile(file);
+                SHARED.put(key, shared);
+            }
+            shared.openCount++;
+            return shared;
+        }
+    }
+
+    /**
+     * @return whether another writer has this instance of {@link #open(File)}
+     *         open too, the file must not be renamed under it then
+     */
+    public boolean isShared() {
+        synchronized (SHARED) {
+            return openCount > 1;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return length of valid data, include file header
+     */
+    public synchronized long length() {
+        return position;
+    }
+
+    /**
+     * append a record
+     *
+     * @param text
+     * @throws IOException if file is closed or a new chunk can not be mapped
+     */
+    public synchronized void append(CharSequence text) throws IOException {
+        if (mapped == null) {
+            throw new IOException("file closed: " + file);
+        }
+        ByteBuffer payload = encode(text);
+        int length = Math.min(payload.remaining(), MAX_RECORD_SIZE);
+        if (length == 0) {
+            return;
+        }
+        crc.reset();
+        crc.update(payload.array(), payload.arrayOffset() + payload.position(), length);
+        payload.limit(payload.position() + length);
+
+        int recordSize = RECORD_HEADER_SIZE + length;
+        if (mapped.remaining() < recordSize) {
+            map(position, Math.max(chunkSize, recordSize));
+        }
+        // length is put last, a record is not visible until it is complete
+        int start = mapped.position();
+        mapped.position(start + 4);
+        mapped.putInt((int) crc.getValue());
+        mapped.put(payload);
+        mapped.putInt(start, length);
+        position += recordSize;
+    }
+
+    /**
+     * write mapped pages to the storage device
+     */
+    public synchronized void force() {
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * force and close, the file is cut at the end of the last record. An
+     * instance of {@link #open(File)} is closed by its last close only.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (SHARED) {
+            if (openCount > 0) {
+                if (--openCount > 0) {
+                    return;
+                }
+                SHARED.remove(file.getAbsolutePath());
+            }
+            // closed under the lock, so a new open of the file recovers it
+            // only after it is cut
+            closeMapping();
+        }
+    }
+
+    private synchronized void closeMapping() throws IOException {
+        if (mapped == null) {
+            return;
+        }
+        mapped.force();
+        mapped = null;
+        try {
+            channel.truncate(position);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * read all valid records of a mapped log file
+     *
+     * @param file
+     * @return records in written order
+     * @throws IOException if file can not be read or is not a mapped log file
+     */
+    public static List<String> readRecords(File file) throws IOException {
+        List<String> records = new ArrayList<String>();
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = in.getChannel();
+            if (ch.size() < HEADER_SIZE) {
+                return records;
+            }
+            checkHeader(ch);
+            scan(ch, records);
+        } finally {
+            in.close();
+        }
+        return records;
+    }
+
+    private void map(long start, int size) throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+    }
+
+    private ByteBuffer encode(CharSequence text) {
+        CharBuffer chars = CharBuffer.wrap(text);
+        scratch.clear();
+        encoder.reset();
+        CoderResult result = encoder.encode(chars, scratch, true);
+        while (result.isOverflow()) {
+            growScratch();
+            result = encoder.encode(chars, scratch, true);
+        }
+        while (encoder.flush(scratch).isOverflow()) {
+            growScratch();
+        }
+        scratch.flip();
+        return scratch;
+    }
+
+    private void growScratch() {
+        ByteBuffer bigger = ByteBuffer.allocate(scratch.capacity() * 2);
+        scratch.flip();
+        bigger.put(scratch);
+        scratch = bigger;
+    }
+
+    private static long recover(FileChannel ch) throws IOException {
+        if (ch.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            ch.truncate(0);
+            while (header.hasRemaining()) {
+                ch.write(header, header.position());
+            }
+            return HEADER_SIZE;
+        }
+        checkHeader(ch);
+        long end = scan(ch, null);
+        if (end < ch.size()) {
+            LogUtils.d(TAG, "recovered log file at " + end + " of " + ch.size());
+            ch.truncate(end);
+        }
+        return end;
+    }
+
+    private static void checkHeader(FileChannel ch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ch.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("not a mapped log file");
+        }
+    }
+
+    /**
+     * scan records from file header to the first invalid record
+     *
+     * @param ch
+     * @param records if not null, decoded records are added to it
+     * @return position after the last valid record
+     */
+    private static long scan(FileChannel ch, List<String> records) throws IOException {
+        long size = ch.size();
+        long position = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        CharsetDecoder decoder = records == null ? null : Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        byte[] payload = new byte[256];
+        ByteBuffer window = null;
+        long windowStart = 0;
+        while (size - position >= RECORD_HEADER_SIZE) {
+            if (window == null || position + RECORD_HEADER_SIZE > windowStart + window.limit()) {
+                windowStart = position;
+                window = ch.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, SCAN_WINDOW_SIZE));
+            }
+            int offset = (int) (position - windowStart);
+            int length = window.getInt(offset);
+            if (length <= 0 || length > MAX_RECORD_SIZE || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            if (offset + RECORD_HEADER_SIZE + length > window.limit()) {
+                windowStart = position;
+                window = ch.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(size - windowStart, Math.max(SCAN_WINDOW_SIZE, RECORD_HEADER_SIZE + length)));
+                offset = 0;
+            }
+            int expected = window.getInt(offset + 4);
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            window.position(offset + RECORD_HEADER_SIZE);
+            window.get(payload, 0, length);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != expected) {
+                break;
+            }
+            if (records != null) {
+                records.add(decode(decoder, payload, length));
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static String decode(CharsetDecoder decoder, byte[] payload, int length) {
+        try {
+            return decoder.decode(ByteBuffer.wrap(payload, 0, length)).toString();
+        } catch (CharacterCodingException e) {
+            return "";
+        }
+    }
+}
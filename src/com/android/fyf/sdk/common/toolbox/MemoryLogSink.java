@@ -0,0 +1,130 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the last N records in memory, to be dumped when something goes wrong
+ * <ul>
+ * <li>{@link #getRecords()} records from oldest to newest</li>
+ * <li>{@link #dump(Writer)} write records as text</li>
+ * <li>{@link #dumpOnCrash(File)} write records to a file when a thread dies of
+ * an uncaught exception</li>
+ * </ul>
+ * Writing a record only stores a reference, so it is cheap enough to register
+ * as a direct sink, which keeps the records logged right before a crash.
+ */
+public class MemoryLogSink implements LogSink {
+
+    private final LogRecord[] records;
+    private int next;
+    private int size;
+
+    /**
+     * @param capacity count of records kept
+     */
+    public MemoryLogSink(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        records = new LogRecord[capacity];
+    }
+
+    @Override
+    public synchronized void write(LogRecord record) {
+        records[next] = record;
+        next = next + 1 == records.length ? 0 : next + 1;
+        if (size < records.length) {
+            size++;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return records from oldest to newest
+     */
+    public synchronized List<LogRecord> getRecords() {
+        List<LogRecord> list = new ArrayList<LogRecord>(size);
+        int start = next - size;
+        if (start < 0) {
+            start += records.length;
+        }
+        for (int i = 0; i < size; i++) {
+            list.add(records[(start + i) % records.length]);
+        }
+        return list;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < records.length; i++) {
+            records[i] = null;
+        }
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * write records from oldest to newest, one per line
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void dump(Writer out) throws IOException {
+        DateFormat timeFormat = new SimpleDateFormat(LogRecord.TIME_FORMAT);
+        StringBuilder line = new StringBuilder(256);
+        for (LogRecord record : getRecords()) {
+            line.setLength(0);
+            record.appendTo(line, timeFormat).append('\n');
+            out.append(line);
+        }
+        out.flush();
+    }
+
+    /**
+     * dump records to file before the current default uncaught exception
+     * handler runs
+     *
+     * @param file overwritten on every crash
+     */
+    public void dumpOnCrash(final File file) {
+        final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+
+            @Override
+            public void uncaughtException(Thread thread, Throwable ex) {
+                write(new LogRecord(LogUtils.ASSERT, "Crash", "uncaught exception in " + thread.getName(), ex));
+                Writer out = null;
+                try {
+                    out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                    dump(out);
+                } catch (IOException e) {
+                    // nothing more can be done while crashing
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException e) {
+                        }
+                    }
+                }
+                if (previous != null) {
+                    previous.uncaughtException(thread, ex);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,106 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates files and the directories above them, for many threads at a time
+ * <ul>
+ * <li>{@link #ensureDirectory(File)} create a directory and its parents</li>
+ * <li>{@link #createFile(File)} create a file and its parent directories</li>
+ * </ul>
+ * An existing directory costs one {@link File#isDirectory()}, creating a file
+ * in it that check and a single exclusive create call
+ * ({@link File#createNewFile()}). Creating a directory holds one of a fixed
+ * set of locks chosen by its path, so threads creating in different
+ * directories seldom wait for each other, and threads creating the same
+ * directory do not all call mkdirs. Nothing is remembered between calls, so
+ * a directory deleted by other code is simply created again.
+ */
+public final class PathCreator {
+    private static final String TAG = "PathCreator";
+
+    private static final int DEFAULT_STRIPES = 32;
+
+    private static volatile PathCreator sDefault;
+
+    private final Object[] locks;
+
+    /**
+     * @param stripes count of locks, rounded up to a power of two
+     */
+    public PathCreator(int stripes) {
+        int count = 1;
+        while (count < stripes) {
+            count <<= 1;
+        }
+        this.locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return instance shared by {@link FileUtils}
+     */
+    public static PathCreator getDefault() {
+        if (sDefault == null) {
+            synchronized (PathCreator.class) {
+                if (sDefault == null) {
+                    sDefault = new PathCreator(DEFAULT_STRIPES);
+                }
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * create dir and its parents if they do not exist
+     *
+     * @param dir
+     * @return whether dir is a directory now
+     */
+    public boolean ensureDirectory(File dir) {
+        if (dir.isDirectory()) {
+            return true;
+        }
+        synchronized (lockFor(dir.getAbsolutePath())) {
+            // mkdirs fails when another thread or process created dir
+            // meanwhile, so it is checked again
+            return dir.isDirectory() || dir.mkdirs() || dir.isDirectory();
+        }
+    }
+
+    /**
+     * create file and its parent directories if they do not exist
+     *
+     * @param file
+     * @return true if file was created, false if it existed
+     * @throws IOException if a parent directory or file could not be created
+     */
+    public boolean createFile(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !ensureDirectory(parent)) {
+            throw new IOException("create directory failed: " + parent);
+        }
+        try {
+            return file.createNewFile();
+        } catch (IOException e) {
+            // the parent may have been deleted since it was checked
+            if (parent == null || parent.isDirectory()) {
+                throw e;
+            }
+            LogUtils.d(TAG, "directory deleted meanwhile, create it again: " + parent);
+            if (!ensureDirectory(parent)) {
+                throw e;
+            }
+            return file.createNewFile();
+        }
+    }
+
+    private Object lockFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (locks.length - 1)];
+    }
+}
@@ -0,0 +1,187 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes a file at given positions, for transfers which fill a file
+ * in ranges and resume after an interruption
+ * <ul>
+ * <li>{@link #read(long, ByteBuffer)} read at a position</li>
+ * <li>{@link #write(long, ByteBuffer)} write at a position</li>
+ * <li>{@link #transferFrom(InputStream, long, ResumeManifest, long)} write a
+ * stream from a position, recording progress in a manifest</li>
+ * <li>{@link #checkpoint(ResumeManifest)} make written bytes durable, then
+ * save the manifest which records them</li>
+ * </ul>
+ * Reads and writes use the positional calls of {@link FileChannel} (pread and
+ * pwrite) and never move a shared position, so many threads may use one
+ * instance at a time, e.g. each filling its own range of the file.
+ * <p>
+ * A thread interrupted during a call closes the channel, as for any
+ * {@link FileChannel}, and the other threads then fail too.
+ */
+public final class RangedFile implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BYTES = new ThreadLocal<byte[]>();
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    /**
+     * @param file
+     * @param writable false to open for reading only, true to open for
+     *            reading and writing, creating file if it does not exist
+     * @throws IOException
+     */
+    public RangedFile(File file, boolean writable) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        this.channel = raf.getChannel();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return length of the file
+     * @throws IOException
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * set the length of the file, a longer file is sparse where the file
+     * system allows, so the full size of a download can be set up front
+     * without writing it
+     *
+     * @param length
+     * @throws IOException
+     */
+    public void setLength(long length) throws IOException {
+        raf.setLength(length);
+    }
+
+    /**
+     * read from position until dst is full or the end of the file
+     *
+     * @param position
+     * @param dst
+     * @return bytes read, -1 if position is at or past the end of the file
+     * @throws IOException
+     */
+    public int read(long position, ByteBuffer dst) throws IOException {
+        int total = 0;
+        while (dst.hasRemaining()) {
+            int count = channel.read(dst, position + total);
+            if (count < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * write all remaining bytes of src at position, the file grows when
+     * needed
+     *
+     * @param position
+     * @param src
+     * @return bytes written
+     * @throws IOException
+     */
+    public int write(long position, ByteBuffer src) throws IOException {
+        int total = 0;
+        while (src.hasRemaining()) {
+            total += channel.write(src, position + total);
+        }
+        return total;
+    }
+
+    /**
+     * write stream from position until its end, the stream is not closed
+     *
+     * @param in
+     * @param position
+     * @param manifest records each written range, may be null
+     * @param checkpointBytes bytes between checkpoints of manifest, 0 to
+     *            checkpoint only at the end
+     * @return bytes written
+     * @throws IOException bytes up to the last checkpoint are kept by manifest
+     */
+    public long transferFrom(InputStream in, long position, ResumeManifest manifest, long checkpointBytes)
+            throws IOException {
+        byte[] buffer = BYTES.get();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        } else {
+            BYTES.set(null);
+        }
+        long written = 0;
+        long unsaved = 0;
+        try {
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                wrapped.clear();
+                wrapped.limit(length);
+                write(position + written, wrapped);
+                if (manifest != null) {
+                    manifest.add(position + written, length);
+                }
+                written += length;
+                unsaved += length;
+                if (manifest != null && checkpointBytes > 0 && unsaved >= checkpointBytes) {
+                    checkpoint(manifest);
+                    unsaved = 0;
+                }
+            }
+            if (manifest != null && unsaved > 0) {
+                checkpoint(manifest);
+            }
+        } finally {
+            BYTES.set(buffer);
+        }
+        return written;
+    }
+
+    /**
+     * sync written bytes to the storage device
+     *
+     * @throws IOException
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * sync written bytes, then save manifest, so it never records a range
+     * whose bytes a crash could lose
+     *
+     * @param manifest
+     * @throws IOException
+     */
+    public void checkpoint(ResumeManifest manifest) throws IOException {
+        // ranges added by other threads after the snapshot may not be synced
+        // by this force, so they wait for the next checkpoint
+        ResumeManifest.Snapshot snapshot = manifest.snapshot();
+        force();
+        manifest.save(snapshot);
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,863 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Objects stored as records of a file, read one at a time
+ * <ul>
+ * <li>{@link #put(String, Object)} append a record for a key</li>
+ * <li>{@link #get(String)} and {@link #getAt(int)} decode one record, by key
+ * or by position in the order keys were first put</li>
+ * <li>{@link #remove(String)} append a record deleting a key</li>
+ * <li>{@link #compact()} rewrite the file with live records only, also done
+ * in the background when most of the file is garbage</li>
+ * </ul>
+ * Opening reads an index of keys and record offsets, not the records, so a
+ * large collection costs only what is read of it. Records are read through a
+ * {@link MappedByteBuffer} of the file up to 64MB, mapped again only when the
+ * file doubled or was compacted, and records past the mapping with positional
+ * reads. Only the record asked for is decoded with the codec of
+ * {@link SerializeUtils}.
+ * <p>
+ * The file is a header of 16 bytes (magic, version, id) followed by records,
+ * every record is [int length][int crc32][byte kind][short key length][UTF-8
+ * key][payload], length and checksum covering what follows them. The index is
+ * saved next to the file on {@link #close()} and after compaction, with the id
+ * and the length of the file it covers. When it is missing or stale the whole
+ * file is scanned, else only the records appended after it. A scan stops at
+ * the first record whose checksum is wrong, the file is cut there, so a record
+ * half written by a killed process is dropped with nothing before it.
+ * <p>
+ * Records are appended without a sync, {@link #flush()} syncs them.
+ */
+public final class RecordStore implements Closeable {
+    private static final String TAG = "RecordStore";
+
+    /** suffix of the saved index, next to the file **/
+    public static final String INDEX_SUFFIX = ".index";
+    /** suffix of the file written by compaction **/
+    public static final String COMPACT_SUFFIX = ".compact";
+
+    private static final int MAGIC = 0x52535431;
+    private static final int INDEX_MAGIC = 0x52534931;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /** length, crc, kind and key length **/
+    private static final int RECORD_HEADER_SIZE = 11;
+    private static final byte KIND_PUT = 1;
+    private static final byte KIND_REMOVE = 2;
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    /** most of the file mapped, records after it are read with positional reads **/
+    private static final long MAX_MAPPED_SIZE = 64 * 1024 * 1024;
+    /** compaction starts when garbage is at least this and half the file **/
+    private static final long MIN_COMPACT_GARBAGE = 256 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /** record buffers larger than this are not kept for the next put **/
+    private static final int MAX_POOLED_BUFFER = 1024 * 1024;
+
+    private static final ThreadLocal<RecordBuffer> BUFFERS = new ThreadLocal<RecordBuffer>();
+
+    private final File file;
+    private final File indexFile;
+    private final SerializeUtils.Codec codec;
+    private final Executor executor;
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long id;
+    private long end;
+    private long garbage;
+    /** length of the file the saved index covers, -1 if there is none **/
+    private long indexedEnd = -1;
+    private MappedByteBuffer mapped;
+    private LinkedHashMap<String, Location> index = new LinkedHashMap<String, Location>();
+    private String[] order;
+    private boolean compacting;
+    private boolean closed;
+    private int compactionCount;
+
+    /**
+     * open the store in file, creating it if needed
+     *
+     * @param file
+     * @param codec writes the objects, null for the codec of
+     *            {@link SerializeUtils} at the time of each put
+     * @param executor runs compaction in the background, null to compact on
+     *            the thread whose write made it needed
+     * @throws IOException
+     */
+    public RecordStore(File file, SerializeUtils.Codec codec, Executor executor) throws IOException {
+        this.file = file;
+        this.indexFile = new File(file.getPath() + INDEX_SUFFIX);
+        this.codec = codec;
+        this.executor = executor;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !PathCreator.getDefault().ensureDirectory(parent)) {
+            throw new IOException("can not create " + parent);
+        }
+        new File(file.getPath() + COMPACT_SUFFIX).delete();
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        try {
+            open();
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file
+     * @throws IOException
+     * @see #RecordStore(File, SerializeUtils.Codec, Executor)
+     */
+    public RecordStore(File file) throws IOException {
+        this(file, null, null);
+    }
+
+    /**
+     * write value for key, replacing the record before
+     *
+     * @param key
+     * @param value
+     * @throws IOException
+     */
+    public void put(String key, Object value) throws IOException {
+        RecordBuffer buffer = obtainBuffer();
+        try {
+            buffer.begin(KIND_PUT, key);
+            if (codec != null) {
+                codec.encode(value, buffer);
+            } else {
+                SerializeUtils.encode(value, buffer);
+            }
+            append(key, buffer);
+        } finally {
+            recycle(buffer);
+        }
+    }
+
+    /**
+     * write all entries of values, in their order
+     *
+     * @param values
+     * @throws IOException
+     */
+    public void putAll(Map<String, ?> values) throws IOException {
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param key
+     * @return whether key was in the store
+     * @throws IOException
+     */
+    public boolean remove(String key) throws IOException {
+        synchronized (this) {
+            checkNotClosed();
+            if (!index.containsKey(key)) {
+                return false;
+            }
+        }
+        RecordBuffer buffer = obtainBuffer();
+        try {
+            buffer.begin(KIND_REMOVE, key);
+            append(key, buffer);
+        } finally {
+            recycle(buffer);
+        }
+        return true;
+    }
+
+    /**
+     * @param key
+     * @return value of key, decoded from its record, null if there is none
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public Object get(String key) throws IOException, ClassNotFoundException {
+        InputStream in;
+        synchronized (this) {
+            checkNotClosed();
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            in = openPayload(location);
+        }
+        return SerializeUtils.decode(in, codec);
+    }
+
+    /**
+     * @param position 0 for the key put first
+     * @return value of the key at position
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws IndexOutOfBoundsException if position is not less than
+     *             {@link #size()}
+     */
+    public Object getAt(int position) throws IOException, ClassNotFoundException {
+        InputStream in;
+        synchronized (this) {
+            checkNotClosed();
+            in = openPayload(index.get(keyAt(position)));
+        }
+        return SerializeUtils.decode(in, codec);
+    }
+
+    /**
+     * @param position 0 for the key put first
+     * @return key at position
+     * @throws IndexOutOfBoundsException if position is not less than
+     *             {@link #size()}
+     */
+    public synchronized String keyAt(int position) {
+        if (order == null) {
+            order = index.keySet().toArray(new String[index.size()]);
+        }
+        if (position < 0 || position >= order.length) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + order.length);
+        }
+        return order[position];
+    }
+
+    /**
+     * @return keys in the order they were first put
+     */
+    public synchronized List<String> keys() {
+        return new ArrayList<String>(index.keySet());
+    }
+
+    public synchronized boolean containsKey(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * @return count of keys
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes of the file
+     */
+    public synchronized long getFileLength() {
+        return end;
+    }
+
+    /**
+     * @return bytes of the file in records replaced or removed
+     */
+    public synchronized long getGarbageLength() {
+        return garbage;
+    }
+
+    public synchronized int getCompactionCount() {
+        return compactionCount;
+    }
+
+    /**
+     * sync records to the storage device
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        checkNotClosed();
+        channel.force(false);
+    }
+
+    /**
+     * rewrite the file with live records only, on the calling thread. Records
+     * can be read and written meanwhile.
+     *
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        synchronized (this) {
+            checkNotClosed();
+            while (compacting) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for compaction");
+                }
+                checkNotClosed();
+            }
+            compacting = true;
+        }
+        runCompaction();
+    }
+
+    /**
+     * save the index and close the file, a compaction running is dropped
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (indexedEnd != end) {
+                saveIndex();
+            }
+        } finally {
+            closed = true;
+            mapped = null;
+            raf.close();
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return TAG + "[file=" + file + ",size=" + index.size() + ",length=" + end + ",garbage=" + garbage + "]";
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("store is closed");
+        }
+    }
+
+    private void open() throws IOException {
+        long length = channel.size();
+        if (length < HEADER_SIZE) {
+            id = newId();
+            writeHeader(channel, id);
+            end = HEADER_SIZE;
+            indexFile.delete();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("not a record store: " + file);
+        }
+        id = header.getLong();
+        long from = loadIndex(length);
+        long valid = scan(from, length);
+        if (from > HEADER_SIZE && valid == from) {
+            indexedEnd = from;
+        }
+        if (valid < length) {
+            LogUtils.w(TAG, "drop " + (length - valid) + " bytes of broken records at the end of " + file);
+            channel.truncate(valid);
+        }
+        end = valid;
+    }
+
+    /**
+     * @return offset the index covers the file up to, where the scan starts
+     */
+    private long loadIndex(long length) {
+        if (!indexFile.exists()) {
+            return HEADER_SIZE;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), BUFFER_SIZE));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION || in.readLong() != id) {
+                return HEADER_SIZE;
+            }
+            long covered = in.readLong();
+            if (covered < HEADER_SIZE || covered > length) {
+                return HEADER_SIZE;
+            }
+            long loadedGarbage = in.readLong();
+            int count = in.readInt();
+            LinkedHashMap<String, Location> loaded = new LinkedHashMap<String, Location>(Math.max(16, count * 4 / 3 + 1));
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long position = in.readLong();
+                int recordLength = in.readInt();
+                int keyLength = in.readUnsignedShort();
+                loaded.put(key, new Location(position, recordLength, keyLength));
+            }
+            index = loaded;
+            garbage = loadedGarbage;
+            return covered;
+        } catch (IOException e) {
+            LogUtils.w(TAG, "index of " + file + " not read, scan the file: " + e);
+            index = new LinkedHashMap<String, Location>();
+            garbage = 0;
+            return HEADER_SIZE;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    LogUtils.e(TAG, "close index failed", e);
+                }
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        final long savedId = id;
+        final long covered = end;
+        final long savedGarbage = garbage;
+        final LinkedHashMap<String, Location> saved = index;
+        AtomicFileWriter.write(indexFile, new AtomicFileWriter.Content() {
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                DataOutputStream data = new DataOutputStream(out);
+                data.writeInt(INDEX_MAGIC);
+                data.writeInt(VERSION);
+                data.writeLong(savedId);
+                data.writeLong(covered);
+                data.writeLong(savedGarbage);
+                data.writeInt(saved.size());
+                for (Map.Entry<String, Location> entry : saved.entrySet()) {
+                    Location location = entry.getValue();
+                    data.writeUTF(entry.getKey());
+                    data.writeLong(location.position);
+                    data.writeInt(location.length);
+                    data.writeShort(location.keyLength);
+                }
+                data.flush();
+            }
+        });
+        indexedEnd = covered;
+    }
+
+    /**
+     * read records from offset from and apply them to the index
+     *
+     * @return offset after the last valid record
+     */
+    private long scan(long from, long length) throws IOException {
+        InputStream in = new BufferedInputStream(new ChannelInputStream(channel, from), BUFFER_SIZE);
+        DataInputStream data = new DataInputStream(in);
+        CRC32 crc = new CRC32();
+        byte[] body = new byte[256];
+        long position = from;
+        while (length - position >= RECORD_HEADER_SIZE) {
+            int bodyLength = data.readInt();
+            int checksum = data.readInt();
+            if (bodyLength < RECORD_HEADER_SIZE - 8 || bodyLength > length - position - 8) {
+                break;
+            }
+            if (body.length < bodyLength) {
+                body = new byte[Math.max(bodyLength, body.length * 2)];
+            }
+            data.readFully(body, 0, bodyLength);
+            crc.reset();
+            crc.update(body, 0, bodyLength);
+            int keyLength = ((body[1] & 0xFF) << 8) | (body[2] & 0xFF);
+            if ((int) crc.getValue() != checksum || keyLength > bodyLength - 3
+                    || (body[0] != KIND_PUT && body[0] != KIND_REMOVE)) {
+                break;
+            }
+            String key = new String(body, 3, keyLength, "UTF-8");
+            Location location = new Location(position, bodyLength + 8, keyLength);
+            apply(body[0], key, location);
+            position += location.length;
+        }
+        return position;
+    }
+
+    private void apply(byte kind, String key, Location location) {
+        Location previous;
+        if (kind == KIND_PUT) {
+            previous = index.put(key, location);
+            if (previous == null) {
+                order = null;
+            }
+        } else {
+            previous = index.remove(key);
+            garbage += location.length;
+            if (previous != null) {
+                order = null;
+            }
+        }
+        if (previous != null) {
+            garbage += previous.length;
+        }
+    }
+
+    private void append(String key, RecordBuffer buffer) throws IOException {
+        byte kind = buffer.finish();
+        Location location;
+        synchronized (this) {
+            checkNotClosed();
+            location = new Location(end, buffer.size(), buffer.keyLength);
+            ByteBuffer src = ByteBuffer.wrap(buffer.array(), 0, buffer.size());
+            long position = end;
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+            end = position;
+            apply(kind, key, location);
+            if (compacting || garbage < MIN_COMPACT_GARBAGE || garbage * 2 < end - HEADER_SIZE) {
+                return;
+            }
+            compacting = true;
+            if (executor != null) {
+                executor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            runCompaction();
+                        } catch (IOException e) {
+                            LogUtils.e(TAG, "compaction of " + file + " failed", e);
+                        }
+                    }
+                });
+                return;
+            }
+        }
+        runCompaction();
+    }
+
+    /**
+     * @return stream of the payload of a record, read outside the lock
+     */
+    private InputStream openPayload(Location location) throws IOException {
+        long payload = location.getPayloadPosition();
+        int length = location.getPayloadLength();
+        if (mapped == null || (end >= 2L * mapped.limit() && mapped.limit() < MAX_MAPPED_SIZE)) {
+            // the mapping grows only when the file doubled, records appended
+            // meanwhile are read with positional reads
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(end, MAX_MAPPED_SIZE));
+        }
+        if (payload + length <= mapped.limit()) {
+            ByteBuffer slice = mapped.duplicate();
+            slice.limit((int) (payload + length)).position((int) payload);
+            return new ByteBufferInputStream(slice);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(channel, bytes, payload);
+        return new ByteArrayInputStream(bytes.array());
+    }
+
+    private void runCompaction() throws IOException {
+        File temp = new File(file.getPath() + COMPACT_SUFFIX);
+        boolean done = false;
+        RandomAccessFile out = null;
+        try {
+            LinkedHashMap<String, Location> live;
+            long copiedEnd;
+            FileChannel source;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                live = new LinkedHashMap<String, Location>(index);
+                copiedEnd = end;
+                source = channel;
+            }
+            out = new RandomAccessFile(temp, "rw");
+            out.setLength(0);
+            FileChannel target = out.getChannel();
+            long newId = newId();
+            writeHeader(target, newId);
+            // copy live records without the lock, only records appended
+            // meanwhile are copied with it
+            LinkedHashMap<Location, Location> moved = new LinkedHashMap<Location, Location>(live.size() * 4 / 3 + 1);
+            long position = HEADER_SIZE;
+            for (Location location : live.values()) {
+                transfer(source, location.position, location.length, target, position);
+                moved.put(location, new Location(position, location.length, location.keyLength));
+                position += location.length;
+            }
+            target.force(false);
+            synchronized (this) {
+                if (closed || channel != source) {
+                    return;
+                }
+                long tail = end - copiedEnd;
+                transfer(source, copiedEnd, tail, target, position);
+                long shift = position - copiedEnd;
+                LinkedHashMap<String, Location> rebuilt = new LinkedHashMap<String, Location>(index.size() * 4 / 3 + 1);
+                long liveLength = 0;
+                for (Map.Entry<String, Location> entry : index.entrySet()) {
+                    Location location = entry.getValue();
+                    Location copy = moved.get(location);
+                    if (copy == null) {
+                        copy = new Location(location.position + shift, location.length, location.keyLength);
+                    }
+                    rebuilt.put(entry.getKey(), copy);
+                    liveLength += copy.length;
+                }
+                long newEnd = position + tail;
+                target.force(true);
+                out.close();
+                out = null;
+                if (!temp.renameTo(file)) {
+                    throw new IOException("rename " + temp + " to " + file + " failed");
+                }
+                raf.close();
+                raf = new RandomAccessFile(file, "rw");
+                channel = raf.getChannel();
+                mapped = null;
+                id = newId;
+                end = newEnd;
+                index = rebuilt;
+                garbage = newEnd - HEADER_SIZE - liveLength;
+                compactionCount++;
+                done = true;
+                saveIndex();
+            }
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LogUtils.e(TAG, "close " + temp + " failed", e);
+                }
+            }
+            if (!done) {
+                temp.delete();
+            }
+            synchronized (this) {
+                compacting = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target, long to)
+            throws IOException {
+        target.position(to);
+        long moved = 0;
+        while (moved < count) {
+            long n = source.transferTo(position + moved, count - moved, target);
+            if (n <= 0) {
+                throw new EOFException("record store truncated while compacting");
+            }
+            moved += n;
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long id) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(id);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) {
+                throw new EOFException("record store truncated");
+            }
+            position += n;
+        }
+    }
+
+    private static long newId() {
+        return new Random().nextLong() ^ System.nanoTime();
+    }
+
+    private static RecordBuffer obtainBuffer() {
+        RecordBuffer buffer = BUFFERS.get();
+        if (buffer == null) {
+            return new RecordBuffer();
+        }
+        BUFFERS.set(null);
+        buffer.reset();
+        return buffer;
+    }
+
+    private static void recycle(RecordBuffer buffer) {
+        if (buffer.array().length <= MAX_POOLED_BUFFER) {
+            BUFFERS.set(buffer);
+        }
+    }
+
+    /**
+     * Place of a record in the file
+     */
+    private static final class Location {
+        final long position;
+        /** bytes of the whole record **/
+        final int length;
+        final int keyLength;
+
+        Location(long position, int length, int keyLength) {
+            this.position = position;
+            this.length = length;
+            this.keyLength = keyLength;
+        }
+
+        long getPayloadPosition() {
+            return position + RECORD_HEADER_SIZE + keyLength;
+        }
+
+        int getPayloadLength() {
+            return length - RECORD_HEADER_SIZE - keyLength;
+        }
+    }
+
+    /**
+     * A record being written: the header, the key, then the payload encoded
+     * into it, reused by the next put of the thread
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        private final CRC32 crc = new CRC32();
+        int keyLength;
+
+        RecordBuffer() {
+            super(256);
+        }
+
+        void begin(byte kind, String key) throws UnsupportedEncodingException {
+            byte[] keyBytes = key.getBytes("UTF-8");
+            if (keyBytes.length > MAX_KEY_LENGTH) {
+                throw new IllegalArgumentException("key longer than " + MAX_KEY_LENGTH + " bytes in UTF-8");
+            }
+            reset();
+            keyLength = keyBytes.length;
+            write(new byte[8], 0, 8);
+            write(kind);
+            write(keyLength >>> 8);
+            write(keyLength);
+            write(keyBytes, 0, keyLength);
+        }
+
+        /**
+         * fill in length and checksum
+         *
+         * @return kind of the record
+         */
+        byte finish() {
+            int bodyLength = count - 8;
+            crc.reset();
+            crc.update(buf, 8, bodyLength);
+            putInt(0, bodyLength);
+            putInt(4, (int) crc.getValue());
+            return buf[8];
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        private void putInt(int at, int value) {
+            buf[at] = (byte) (value >>> 24);
+            buf[at + 1] = (byte) (value >>> 16);
+            buf[at + 2] = (byte) (value >>> 8);
+            buf[at + 3] = (byte) value;
+        }
+    }
+
+    /**
+     * Reads a mapped record, supports mark so codecs are detected without
+     * another buffer
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            buffer.mark();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Reads a channel from an offset with positional reads
+     */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package com.android.fyf.sdk.common.toolbox;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 
 import android.content.Context;
 import android.content.res.Resources;
@@ -35,26 +34,25 @@ public class ResourceUtils {
             return null;
         }
 
-        StringBuilder s = new StringBuilder("");
-        InputStreamReader in = null;
-        BufferedReader br = null;
-        try {
-            in = new InputStreamReader(context.getResources().getAssets().open(fileName));
-            br = new BufferedReader(in);
-            String line;
-            while ((line = br.readLine()) != null) {
-                s.append(line);
-            }
-            return s.toString();
-        } finally {
-            if (in != null) {
-                in.close();
-            }
+        return readAll(getLinesFromAssets(context, fileName));
+    }
 
-            if (br != null) {
-                br.close();
-            }
+    /**
+     * open an asset to read it line by line in constant memory, the reader
+     * must be closed
+     * 
+     * @param context
+     * @param fileName The name of the asset to open. This name can be
+     *            hierarchical.
+     * @return
+     * @see LineReader
+     */
+    public static LineReader getLinesFromAssets(Context context, String fileName) throws IOException {
+        if (context == null || StringUtils.isEmpty(fileName)) {
+            return null;
         }
+
+        return new LineReader(context.getResources().getAssets().open(fileName), Charset.defaultCharset());
     }
 
     /**
@@ -73,25 +71,44 @@ public class ResourceUtils {
             return null;
         }
 
-        StringBuilder s = new StringBuilder();
-        InputStreamReader in = null;
-        BufferedReader br = null;
+        return readAll(getLinesFromRaw(context, resId));
+    }
+
+    /**
+     * open a raw resource to read it line by line in constant memory, the
+     * reader must be closed
+     * 
+     * @param context
+     * @param resId The resource identifier to open, as generated by the appt
+     *            tool.
+     * @return
+     * @see LineReader
+     */
+    public static LineReader getLinesFromRaw(Context context, int resId) throws IOException {
+        if (context == null) {
+            return null;
+        }
+
+        return new LineReader(context.getResources().openRawResource(resId), Charset.defaultCharset());
+    }
+
+    /**
+     * lines joined without separators, reader is closed
+     */
+    private static String readAll(LineReader reader) throws IOException {
+        if (reader == null) {
+            return null;
+        }
+
         try {
-            in = new InputStreamReader(context.getResources().openRawResource(resId));
-            br = new BufferedReader(in);
-            String line;
-            while ((line = br.readLine()) != null) {
+            StringBuilder s = new StringBuilder();
+            CharSequence line;
+            while ((line = reader.readLine()) != null) {
                 s.append(line);
             }
             return s.toString();
         } finally {
-            if (in != null) {
-                in.close();
-            }
-
-            if (br != null) {
-                br.close();
-            }
+            reader.close();
         }
     }
 
@@ -0,0 +1,292 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Records which byte ranges of a file are written, so an interrupted transfer
+ * continues where it stopped
+ * <ul>
+ * <li>{@link #open(File, long, String)} load the manifest of a target, or
+ * start an empty one</li>
+ * <li>{@link #add(long, long)} record a written range</li>
+ * <li>{@link #getResumeOffset()} where a sequential transfer continues</li>
+ * <li>{@link #getMissingRanges()} ranges still to be written, for a transfer
+ * in parallel ranges</li>
+ * <li>{@link #save()} persist the manifest next to the target</li>
+ * </ul>
+ * The target is usually sized up front and sparse, so its length says nothing
+ * of what was written, only the saved manifest does. Save it only after the
+ * recorded bytes are synced, which {@link RangedFile#checkpoint(ResumeManifest)}
+ * does, else a crash may leave it claiming bytes which were lost.
+ * <p>
+ * The manifest is saved through {@link AtomicFileWriter} as a file named as
+ * the target with {@link #SUFFIX}. Thread safe.
+ */
+public final class ResumeManifest {
+    private static final String TAG = "ResumeManifest";
+
+    /** suffix of manifest files **/
+    public static final String SUFFIX = ".ranges";
+
+    private static final int MAGIC = 0x52414e47;
+    private static final int VERSION = 1;
+
+    private final File target;
+    private final File manifestFile;
+    private final long totalLength;
+    private final String tag;
+    /** start of range to its end, exclusive, ranges neither overlap nor touch **/
+    private final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+    private long completedBytes;
+    private long version;
+
+    private final Object saveLock = new Object();
+    private long savedVersion = -1;
+
+    private ResumeManifest(File target, long totalLength, String tag) {
+        this.target = target;
+        this.manifestFile = new File(target.getPath() + SUFFIX);
+        this.totalLength = totalLength;
+        this.tag = tag == null ? "" : tag;
+    }
+
+    /**
+     * load the manifest of target, an empty one if there is none, or if it
+     * was saved for another length or tag, or if target is missing
+     *
+     * @param target
+     * @param totalLength bytes of the complete target, -1 if not known
+     * @param tag identifies the content, e.g. an ETag, so a changed source is
+     *            not resumed, may be null
+     * @return
+     */
+    public static ResumeManifest open(File target, long totalLength, String tag) {
+        ResumeManifest manifest = new ResumeManifest(target, totalLength, tag);
+        if (manifest.manifestFile.isFile()) {
+            if (target.isFile()) {
+                manifest.load();
+            } else {
+                manifest.manifestFile.delete();
+            }
+        }
+        return manifest;
+    }
+
+    public File getTarget() {
+        return target;
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    /**
+     * record that length bytes from offset are written, overlapping or
+     * touching ranges are merged, bytes past the total length are ignored
+     *
+     * @param offset
+     * @param length
+     */
+    public synchronized void add(long offset, long length) {
+        long start = offset;
+        long end = totalLength >= 0 ? Math.min(offset + length, totalLength) : offset + length;
+        if (start >= end) {
+            return;
+        }
+        // SortedMap only, NavigableMap is missing before Android 2.3
+        SortedMap<Long, Long> before = ranges.headMap(start);
+        if (!before.isEmpty()) {
+            Long previous = before.lastKey();
+            long previousEnd = ranges.get(previous);
+            if (previousEnd >= start) {
+                start = previous;
+                end = Math.max(end, previousEnd);
+                completedBytes -= previousEnd - previous;
+                ranges.remove(previous);
+            }
+        }
+        SortedMap<Long, Long> after = ranges.tailMap(start);
+        while (!after.isEmpty() && after.firstKey() <= end) {
+            Long next = after.firstKey();
+            long nextEnd = ranges.remove(next);
+            end = Math.max(end, nextEnd);
+            completedBytes -= nextEnd - next;
+        }
+        ranges.put(start, end);
+        completedBytes += end - start;
+        version++;
+    }
+
+    /**
+     * @return bytes recorded as written
+     */
+    public synchronized long getCompletedBytes() {
+        return completedBytes;
+    }
+
+    /**
+     * @return end of the range written from the start of the file, a
+     *         sequential transfer continues there
+     */
+    public synchronized long getResumeOffset() {
+        Long end = ranges.get(0L);
+        return end == null ? 0 : end;
+    }
+
+    /**
+     * @return whether all of the total length is written, false if it is not
+     *         known
+     */
+    public synchronized boolean isComplete() {
+        return totalLength >= 0 && getResumeOffset() >= totalLength;
+    }
+
+    /**
+     * @return {offset, length} of each range not written yet, in order, the
+     *         last one ends at the total length, or at Long.MAX_VALUE if it is
+     *         not known
+     */
+    public synchronized List<long[]> getMissingRanges() {
+        long end = totalLength >= 0 ? totalLength : Long.MAX_VALUE;
+        List<long[]> missing = new ArrayList<long[]>();
+        long position = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (range.getKey() >= end) {
+                break;
+            }
+            if (range.getKey() > position) {
+                missing.add(new long[] { position, range.getKey() - position });
+            }
+            position = range.getValue();
+        }
+        if (position < end) {
+            missing.add(new long[] { position, end - position });
+        }
+        return missing;
+    }
+
+    /**
+     * persist the recorded ranges, the bytes they cover must be synced before
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        save(snapshot());
+    }
+
+    /**
+     * delete the saved manifest, e.g. when the transfer is complete
+     *
+     * @return whether there is no saved manifest now
+     */
+    public boolean delete() {
+        synchronized (saveLock) {
+            savedVersion = Long.MAX_VALUE;
+            return !manifestFile.exists() || manifestFile.delete();
+        }
+    }
+
+    synchronized Snapshot snapshot() {
+        long[] flat = new long[ranges.size() * 2];
+        int i = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            flat[i++] = range.getKey();
+            flat[i++] = range.getValue();
+        }
+        return new Snapshot(version, flat);
+    }
+
+    /**
+     * persist snapshot unless a newer one is saved already
+     */
+    void save(final Snapshot snapshot) throws IOException {
+        synchronized (saveLock) {
+            if (snapshot.version <= savedVersion) {
+                return;
+            }
+            AtomicFileWriter.write(manifestFile, new AtomicFileWriter.Content() {
+
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    DataOutputStream data = new DataOutputStream(out);
+                    data.writeInt(MAGIC);
+                    data.writeInt(VERSION);
+                    data.writeLong(totalLength);
+                    data.writeUTF(tag);
+                    data.writeInt(snapshot.ranges.length / 2);
+                    for (long value : snapshot.ranges) {
+                        data.writeLong(value);
+                    }
+                    data.flush();
+                }
+            });
+            savedVersion = snapshot.version;
+        }
+    }
+
+    private void load() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != totalLength
+                    || !in.readUTF().equals(tag)) {
+                LogUtils.i(TAG, "manifest of another content, start over: " + manifestFile);
+                return;
+            }
+            // bytes past the end of target were never written, whatever the
+            // manifest says
+            long length = target.length();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long start = in.readLong();
+                long end = Math.min(in.readLong(), length);
+                if (start < end) {
+                    add(start, end - start);
+                }
+            }
+        } catch (IOException e) {
+            LogUtils.w(TAG, "read manifest failed, start over: " + manifestFile, e);
+            synchronized (this) {
+                ranges.clear();
+                completedBytes = 0;
+            }
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // read already
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return target + ": " + completedBytes + " of " + totalLength + " bytes in " + ranges.size() + " ranges";
+    }
+
+    /**
+     * Ranges at one moment, as {start, end, start, end...}
+     */
+    static final class Snapshot {
+        final long version;
+        final long[] ranges;
+
+        Snapshot(long version, long[] ranges) {
+            this.version = version;
+            this.ranges = ranges;
+        }
+    }
+}
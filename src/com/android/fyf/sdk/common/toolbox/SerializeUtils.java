@@ -1,25 +1,166 @@
 package com.android.fyf.sdk.common.toolbox;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+import java.util.List;
 
 import android.util.Base64;
 
 /**
  * Serialize Utils
+ * <ul>
+ * <li>{@link #serialization(String, Object)} serialize to file</li>
+ * <li>{@link #deserialization(String)} deserialize from file</li>
+ * <li>{@link #deserialization(List)} deserialize many files in parallel</li>
+ * <li>{@link #setCodec(Codec)} choose how objects are written</li>
+ * <li>{@link #encode(Object, OutputStream)} and {@link #decode(InputStream)}
+ * serialize to and from streams</li>
+ * <li>{@link #getSerializableString(Serializable)} and
+ * {@link #writeSerializableString(Serializable, Writer)} serialize to Base64
+ * text of {@link Base64Stream}, a string built once at its exact length or
+ * text streamed to a writer</li>
+ * <li>{@link RecordStore} keep a large collection as records of a file, read
+ * one at a time</li>
+ * </ul>
+ * Objects are written by the codec set, Java serialization by default, see
+ * {@link BinaryCodec} for a faster one and {@link CompressedCodec} to compress
+ * what a codec writes. Reading detects the codec from the first bytes, so data
+ * written by Java serialization or compressed stays readable after another
+ * codec is set.
  * 
  * @author boyang116245@sohu-inc.com
  * @since 2013-11-18
  */
 public class SerializeUtils {
 
+    /** bytes read to detect the codec of data **/
+    public static final int HEADER_SIZE = 4;
+
+    /** Java serialization, data starts with 0xACED **/
+    public static final Codec JAVA_CODEC = new JavaCodec();
+
+    private static volatile Codec sCodec = JAVA_CODEC;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int STRING_SIZE_HINT = 256;
+    /** larger buffers of {@link #getSerializableString} are not kept between calls **/
+    private static final int MAX_POOLED_STRING_BYTES = 1024 * 1024;
+
+    private static final ThreadLocal<StringBytes> STRING_BYTES = new ThreadLocal<StringBytes>();
+
+    /**
+     * Writes objects to streams and reads them back
+     */
+    public interface Codec {
+
+        /**
+         * @param header first bytes of data
+         * @param length bytes in header, up to {@link #HEADER_SIZE}, fewer if
+         *            data is shorter
+         * @return whether data was written by this codec
+         */
+        boolean isEncoded(byte[] header, int length);
+
+        /**
+         * @param object
+         * @param out not closed
+         * @throws IOException
+         */
+        void encode(Object object, OutputStream out) throws IOException;
+
+        /**
+         * @param in read at least up to the end of the object, maybe to its
+         *            end, not closed
+         * @return object
+         * @throws IOException
+         * @throws ClassNotFoundException
+         */
+        Object decode(InputStream in) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * @param codec writes objects from now on, null for Java serialization
+     */
+    public static void setCodec(Codec codec) {
+        sCodec = codec == null ? JAVA_CODEC : codec;
+    }
+
+    public static Codec getCodec() {
+        return sCodec;
+    }
+
+    /**
+     * write object with the codec set
+     * 
+     * @param object
+     * @param out not closed
+     * @throws IOException
+     */
+    public static void encode(Object object, OutputStream out) throws IOException {
+        sCodec.encode(object, out);
+    }
+
+    /**
+     * read an object written by the codec set, by Java serialization or by a
+     * {@link CompressedCodec}
+     * 
+     * @param in not closed
+     * @return object
+     * @throws IOException if no codec knows the data
+     * @throws ClassNotFoundException
+     */
+    public static Object decode(InputStream in) throws IOException, ClassNotFoundException {
+        return decode(in, null);
+    }
+
+    /**
+     * @param in
+     * @param preferred tried before the codec set, may be null
+     */
+    static Object decode(InputStream in, Codec preferred) throws IOException, ClassNotFoundException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in, BUFFER_SIZE);
+        }
+        byte[] header = new byte[HEADER_SIZE];
+        in.mark(HEADER_SIZE);
+        int length = 0;
+        int count;
+        while (length < HEADER_SIZE && (count = in.read(header, length, HEADER_SIZE - length)) != -1) {
+            length += count;
+        }
+        in.reset();
+        if (preferred != null && preferred.isEncoded(header, length)) {
+            return preferred.decode(in);
+        }
+        Codec codec = sCodec;
+        if (codec.isEncoded(header, length)) {
+            return codec.decode(in);
+        }
+        if (JAVA_CODEC.isEncoded(header, length)) {
+            return JAVA_CODEC.decode(in);
+        }
+        if (CompressedCodec.isCompressed(header, length)) {
+            // compressed while another codec was set, or before it was
+            Codec inner = codec instanceof CompressedCodec ? ((CompressedCodec)codec).getCodec() : codec;
+            return CompressedCodec.decode(in, inner);
+        }
+        throw new StreamCorruptedException("data of an unknown codec");
+    }
+
     /**
      * deserialization from file
      * 
@@ -28,10 +169,10 @@ public class SerializeUtils {
      * @throws RuntimeException if an error occurs
      */
     public static Object deserialization(String filePath) {
-        ObjectInputStream in = null;
+        InputStream in = null;
         try {
-            in = new ObjectInputStream(new FileInputStream(filePath));
-            Object o = in.readObject();
+            in = new BufferedInputStream(new FileInputStream(filePath), BUFFER_SIZE);
+            Object o = decode(in);
             in.close();
             return o;
         } catch (FileNotFoundException e) {
@@ -51,6 +192,19 @@ public class SerializeUtils {
         }
     }
 
+    /**
+     * deserialize many files in parallel, an error reading a file is in its
+     * result and does not stop the others
+     * 
+     * @param filePaths
+     * @return a result for each file, in the same order
+     * @throws InterruptedException
+     * @see BulkLoader
+     */
+    public static List<BulkLoader.Result> deserialization(List<String> filePaths) throws InterruptedException {
+        return BulkLoader.getDefault().load(filePaths);
+    }
+
     /**
      * serialize to file
      * 
@@ -60,10 +214,29 @@ public class SerializeUtils {
      * @throws RuntimeException if an error occurs
      */
     public static void serialization(String filePath, Object obj) {
-        ObjectOutputStream out = null;
+        serialization(filePath, obj, sCodec);
+    }
+
+    /**
+     * serialize to file with a codec, such as a {@link CompressedCodec}, the
+     * file is read by {@link #deserialization(String)} whatever codec is set.
+     * The file is replaced atomically if
+     * {@link AtomicFileWriter#setEnabled(boolean)}.
+     * 
+     * @param filePath
+     * @param obj
+     * @param codec
+     * @throws RuntimeException if an error occurs
+     */
+    public static void serialization(String filePath, Object obj, Codec codec) {
+        if (AtomicFileWriter.isEnabled()) {
+            serializationAtomic(filePath, obj, codec);
+            return;
+        }
+        OutputStream out = null;
         try {
-            out = new ObjectOutputStream(new FileOutputStream(filePath));
-            out.writeObject(obj);
+            out = new BufferedOutputStream(new FileOutputStream(filePath), BUFFER_SIZE);
+            codec.encode(obj, out);
             out.close();
         } catch (FileNotFoundException e) {
             throw new RuntimeException("FileNotFoundException occurred. ", e);
@@ -80,6 +253,33 @@ public class SerializeUtils {
         }
     }
 
+    /**
+     * serialize to file atomically, a crash while writing leaves the old
+     * content of file, not a part of the new one
+     * 
+     * @param filePath
+     * @param obj
+     * @throws RuntimeException if an error occurs
+     * @see AtomicFileWriter
+     */
+    public static void serializationAtomic(String filePath, Object obj) {
+        serializationAtomic(filePath, obj, sCodec);
+    }
+
+    private static void serializationAtomic(String filePath, final Object obj, final Codec codec) {
+        try {
+            AtomicFileWriter.write(new File(filePath), new AtomicFileWriter.Content() {
+
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    codec.encode(obj, out);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("IOException occurred. ", e);
+        }
+    }
+
     /**
      * 序列化一个对象
      * 
@@ -87,25 +287,37 @@ public class SerializeUtils {
      * @return
      */
     public static String getSerializableString(Serializable object) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = null;
+        return getSerializableString(object, 0);
+    }
+
+    /**
+     * 序列化一个对象, the object is encoded into a buffer kept per thread, the
+     * text is then built once at its exact length
+     * 
+     * @param object
+     * @param sizeHint expected size of the encoded object in bytes, the buffer
+     *            starts with room for it, 0 if not known
+     * @return Base64 text like {@link Base64#DEFAULT}, "" if an error occurs
+     */
+    public static String getSerializableString(Serializable object, int sizeHint) {
+        StringBytes bytes = STRING_BYTES.get();
+        if (bytes == null) {
+            bytes = new StringBytes();
+        } else {
+            STRING_BYTES.set(null);
+        }
+        bytes.prepare(sizeHint);
         String productBase64 = null;
         try {
-            oos = new ObjectOutputStream(baos);
-            oos.writeObject(object);
-            productBase64 = new String(Base64.encode(baos.toByteArray(), Base64.DEFAULT));
+            encode(object, bytes);
+            productBase64 = Base64Stream.encodeToString(bytes.array(), 0, bytes.size(), true);
         } catch (IOException e) {
             LogUtils.e("SerializeUtils", e.toString());
         } catch (OutOfMemoryError e) {
             LogUtils.e("SerializeUtils", e.toString());
         } finally {
-            if (oos != null) {
-                try {
-                    oos.close();
-                } catch (IOException e) {
-                    LogUtils.e("SerializeUtils", e.toString());
-                }
-            }
+            bytes.recycle();
+            STRING_BYTES.set(bytes);
         }
         if (productBase64 == null) {
             productBase64 = "";
@@ -113,43 +325,102 @@ public class SerializeUtils {
         return productBase64;
     }
 
+    /**
+     * write an object as Base64 text, readable by
+     * {@link #getSerializableObject(String)} and
+     * {@link #readSerializableObject(Reader)}
+     * 
+     * @param object
+     * @param writer not closed
+     * @throws IOException
+     */
+    public static void writeSerializableString(Serializable object, Writer writer) throws IOException {
+        Base64Stream.Encoder out = new Base64Stream.Encoder(writer);
+        encode(object, out);
+        out.close();
+    }
+
     /**
      * 反序列化一个对象
      * 
      * @param data
-     * @return
-     * @throws Exception
+     * @return null if data is empty or is not an object
+     * @throws IllegalArgumentException if data is not Base64
      */
     public static Serializable getSerializableObject(String data) {
-        byte[] objBytes = Base64.decode(data.getBytes(), Base64.DEFAULT);
-        if (objBytes == null || objBytes.length == 0) {
-            return null;
-        }
-        ByteArrayInputStream bi = null;
-        ObjectInputStream oi = null;
-        Object object = null;
         try {
-            bi = new ByteArrayInputStream(objBytes);
-            oi = new ObjectInputStream(bi);
-            object = oi.readObject();
+            return (Serializable) decode(new Base64Stream.Decoder(data));
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             return null;
-        } finally {
-            if (oi != null) {
-                try {
-                    oi.close();
-                } catch (IOException e) {
-                    // ignore
-                }
+        }
+    }
+
+    /**
+     * read an object from Base64 text written by
+     * {@link #writeSerializableString(Serializable, Writer)} or
+     * {@link #getSerializableString(Serializable)}
+     * 
+     * @param reader not closed, read at least up to the end of the object
+     * @return object
+     * @throws IOException
+     * @throws ClassNotFoundException
+     * @throws IllegalArgumentException if the text is not Base64
+     */
+    public static Serializable readSerializableObject(Reader reader) throws IOException, ClassNotFoundException {
+        return (Serializable) decode(new Base64Stream.Decoder(reader));
+    }
+
+    /**
+     * Bytes of an object before they are encoded to text, the array is read
+     * in place. An array too large to keep is dropped, but its size is kept,
+     * so the next object of the thread starts with room for as much.
+     */
+    private static final class StringBytes extends ByteArrayOutputStream {
+        private int lastSize;
+
+        StringBytes() {
+            super(STRING_SIZE_HINT);
+        }
+
+        void prepare(int sizeHint) {
+            reset();
+            int size = Math.max(sizeHint, lastSize + lastSize / 16);
+            if (buf.length < size) {
+                buf = new byte[size];
             }
-            if (bi != null) {
-                try {
-                    bi.close();
-                } catch (IOException e) {
-                    // ignore
-                }
+        }
+
+        void recycle() {
+            lastSize = count;
+            if (buf.length > MAX_POOLED_STRING_BYTES) {
+                buf = new byte[STRING_SIZE_HINT];
             }
         }
-        return (Serializable) object;
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static final class JavaCodec implements Codec {
+
+        @Override
+        public boolean isEncoded(byte[] header, int length) {
+            return length >= 2 && header[0] == (byte) 0xAC && header[1] == (byte) 0xED;
+        }
+
+        @Override
+        public void encode(Object object, OutputStream out) throws IOException {
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeObject(object);
+            objectOut.flush();
+        }
+
+        @Override
+        public Object decode(InputStream in) throws IOException, ClassNotFoundException {
+            return new ObjectInputStream(in).readObject();
+        }
     }
 }
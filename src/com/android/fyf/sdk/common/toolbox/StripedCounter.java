@@ -0,0 +1,70 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells so that threads incrementing it at the
+ * same time mostly touch different cache lines. It starts as a single
+ * {@link AtomicLong} and grows its cells the first time two threads collide,
+ * so an uncontended counter stays small. Reading sums all cells, so it is
+ * meant for counters written often and read rarely.
+ */
+final class StripedCounter {
+
+    /** longs between two cells, keeps cells on separate cache lines **/
+    private static final int PADDING = 8;
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (stripes < cpus * 2 && stripes < 64) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile AtomicLongArray cells;
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        AtomicLongArray cs = cells;
+        if (cs == null) {
+            long value = base.get();
+            if (base.compareAndSet(value, value + delta)) {
+                return;
+            }
+            cs = inflate();
+        }
+        cs.getAndAdd(cell(), delta);
+    }
+
+    long sum() {
+        long sum = base.get();
+        AtomicLongArray cs = cells;
+        if (cs != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cs.get(i * PADDING);
+            }
+        }
+        return sum;
+    }
+
+    private synchronized AtomicLongArray inflate() {
+        if (cells == null) {
+            cells = new AtomicLongArray(STRIPES * PADDING);
+        }
+        return cells;
+    }
+
+    private static int cell() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+}
@@ -0,0 +1,95 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * {@link BulkLoader} with its pool saturated by other work
+ */
+public class BulkLoaderTest extends TestCase {
+
+    private static final int FILES = 50;
+
+    private File dir;
+    private List<String> paths;
+    private BulkLoader loader;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("bulk-loader-", "");
+        dir.delete();
+        dir.mkdirs();
+        paths = new ArrayList<String>();
+        for (int i = 0; i < FILES; i++) {
+            File file = new File(dir, "item-" + i);
+            SerializeUtils.serialization(file.getPath(), Integer.valueOf(i));
+            paths.add(file.getPath());
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        if (loader != null) {
+            ((ExecutorService) loader.getExecutor()).shutdownNow();
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public void testStartReturnsBeforeReadingWhenPoolIsBusy() throws InterruptedException {
+        loader = new BulkLoader(1);
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final CountDownLatch running = new CountDownLatch(1);
+        loader.getExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                running.countDown();
+                try {
+                    blocking.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        BulkLoader.Batch batch = loader.start(paths, null);
+        assertFalse("files were read by the caller", batch.isDone());
+
+        // a file asked for is read at once by the waiting thread
+        BulkLoader.Result result = batch.await(FILES - 1);
+        assertTrue(result.isSuccess());
+        assertEquals(Integer.valueOf(FILES - 1), result.getValue());
+        assertFalse(batch.isDone());
+
+        blocking.countDown();
+        List<BulkLoader.Result> results = batch.awaitAll();
+        assertEquals(FILES, results.size());
+        for (int i = 0; i < FILES; i++) {
+            assertEquals(paths.get(i), results.get(i).getPath());
+            assertEquals(Integer.valueOf(i), results.get(i).getValue());
+        }
+    }
+
+    public void testMissingFileGivesError() throws InterruptedException {
+        paths.set(3, new File(dir, "missing").getPath());
+        loader = new BulkLoader(2);
+        List<BulkLoader.Result> results = loader.load(paths);
+        assertFalse(results.get(3).isSuccess());
+        assertNotNull(results.get(3).getError());
+        assertTrue(results.get(4).isSuccess());
+    }
+}
@@ -0,0 +1,65 @@
+package com.android.fyf.sdk.common.toolbox;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * {@link LogFormatter} with arguments whose toString() logs themselves
+ */
+public class LogFormatterTest extends TestCase {
+
+    private MemoryLogSink sink;
+
+    @Override
+    protected void setUp() {
+        sink = new MemoryLogSink(16);
+        LogUtils.setDebugMode(true);
+        LogUtils.setLogPipeline(new LogPipeline().addSink(sink, LogUtils.VERBOSE, 0));
+    }
+
+    @Override
+    protected void tearDown() {
+        LogUtils.setLogPipeline(null);
+        LogUtils.setDebugMode(false);
+    }
+
+    public void testFormat() {
+        assertEquals("a 1 b 2 c", LogFormatter.format("a {} b {} c", 1, 2));
+        assertEquals("a 1 b {}", LogFormatter.format("a {} b {}", 1));
+        assertEquals("x null", LogFormatter.format("x {}", (Object) null));
+        assertEquals("1 2 3 4", LogFormatter.format("{} {} {} {}", new Object[] { 1, 2, 3, 4 }));
+    }
+
+    public void testNestedFormatInToString() {
+        Object arg = new Object() {
+
+            @Override
+            public String toString() {
+                return LogFormatter.format("inner {} {}", "x", "y");
+            }
+        };
+        assertEquals("outer [inner x y] end", LogFormatter.format("outer [{}] end", arg));
+        // the builder of the thread is still reused afterwards
+        assertEquals("after 1", LogFormatter.format("after {}", 1));
+    }
+
+    public void testLoggingFromToString() {
+        Object arg = new Object() {
+
+            @Override
+            public String toString() {
+                LogUtils.d("inner", "state {} of {}", 42, "inner object");
+                return "arg";
+            }
+        };
+        LogUtils.d("outer", "value {} and {}", arg, 7);
+
+        List<LogRecord> records = sink.getRecords();
+        assertEquals(2, records.size());
+        assertEquals("inner", records.get(0).getTag());
+        assertEquals("state 42 of inner object", records.get(0).getMessage());
+        assertEquals("outer", records.get(1).getTag());
+        assertEquals("value arg and 7", records.get(1).getMessage());
+    }
+}